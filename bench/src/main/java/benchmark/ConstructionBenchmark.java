@@ -0,0 +1,37 @@
+package benchmark;
+
+import domain.City;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Mide la creación de ciudades: la ciudad por defecto con sus ítems iniciales,
+ * una ciudad vacía y una ciudad poblada al 30%.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx12g")
+public class ConstructionBenchmark {
+    @Param({"25", "1000"})
+    public int size;
+
+    @Benchmark
+    public City defaultCity() {
+        return new City();
+    }
+
+    @Benchmark
+    public City emptyCity() {
+        return new City(size, size);
+    }
+
+    @Benchmark
+    public City populatedCity() {
+        return City.random(size, size, 0.3, 42);
+    }
+}
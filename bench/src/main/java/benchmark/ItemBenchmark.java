@@ -0,0 +1,62 @@
+package benchmark;
+
+import domain.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Mide por separado las consultas de vecindario y el decide() de cada tipo de agente,
+ * sobre un ítem rodeado por una ciudad al 50% de densidad.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ItemBenchmark {
+    private static final int SIZE = 64, ROW = 32, COLUMN = 32;
+
+    // Con los conteos de vecinos activos neighbors() y neighborsEquals() son O(1)
+    @Param({"false", "true"})
+    public boolean neighborCounting;
+
+    private City city;
+    private SchellingPerson schelling;
+    private Walker walker;
+    private Cheerful cheerful;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        city = City.random(SIZE, SIZE, 0.5, 7);
+        city.setNeighborCounting(neighborCounting);
+        schelling = new SchellingPerson(city, ROW, COLUMN);
+        walker = new Walker(city, ROW, COLUMN + 8);
+        cheerful = new Cheerful(city, ROW, COLUMN + 16);
+    }
+
+    @Benchmark
+    public int neighborsEquals() {
+        return city.neighborsEquals(ROW, COLUMN);
+    }
+
+    @Benchmark
+    public SchellingPerson schellingDecide() {
+        schelling.decide();
+        return schelling;
+    }
+
+    @Benchmark
+    public Walker walkerDecide() {
+        walker.decide();
+        return walker;
+    }
+
+    @Benchmark
+    public Cheerful cheerfulDecide() {
+        cheerful.decide();
+        return cheerful;
+    }
+}
@@ -0,0 +1,43 @@
+package benchmark;
+
+import domain.City;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Mide un turno completo de la ciudad (City.ticTac()) según el tamaño, la densidad y el modo de avance.
+ * La ciudad de 10000x10000 tiene 10^8 celdas: al 90% necesita varios GB de memoria (ver -jvmArgs).
+ * Cada iteración parte de una ciudad nueva para que los turnos no lleguen a un estado estable.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx12g")
+public class TickBenchmark {
+    @Param({"25", "1000", "10000"})
+    public int size;
+
+    @Param({"0.01", "0.3", "0.9"})
+    public double density;
+
+    @Param({"0", "2"}) // City.SEQUENTIAL y City.PARALLEL
+    public int mode;
+
+    private City city;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        city = City.random(size, size, density, 42);
+        city.setTickMode(mode);
+    }
+
+    @Benchmark
+    public City ticTac() {
+        city.ticTac();
+        return city;
+    }
+}
@@ -33,12 +33,22 @@ public abstract class Agent {
         steps++;
     }
 
+    /**
+     * Restablece el contador de pasos del agente.
+     * Se usa al reconstruir agentes a partir de una representación compacta de la ciudad.
+     *
+     * @param steps El número de pasos que ya había dado el agente.
+     */
+    protected void setSteps(int steps) {
+        this.steps = steps;
+    }
+
     /**
      * Devuelve el número de pasos que ha dado el agente.
      *
      * @return El número de pasos del agente.
      */
-    public final int getSteps() {
+    public int getSteps() {
         return steps;
     }
 
@@ -57,7 +67,7 @@ public abstract class Agent {
      *
      * @return true si el agente está feliz, false en caso contrario.
      */
-    public final boolean isHappy() {
+    public boolean isHappy() {
         return (state == Agent.HAPPY);
     }
 
@@ -66,7 +76,7 @@ public abstract class Agent {
      *
      * @return true si el agente está indiferente, false en caso contrario.
      */
-    public final boolean isIndifferent() {
+    public boolean isIndifferent() {
         return (state == Agent.INDIFFERENT);
     }
 
@@ -75,7 +85,7 @@ public abstract class Agent {
      *
      * @return true si el agente está insatisfecho, false en caso contrario.
      */
-    public final boolean isDissatisfied() {
+    public boolean isDissatisfied() {
         return (state == Agent.DISSATISFIED);
     }
 
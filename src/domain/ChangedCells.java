@@ -0,0 +1,105 @@
+package domain;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Celdas de una ciudad que cambiaron desde la última limpieza (ver City.setChangeTracking()).
+ * Un bit por celda, por índice plano (fila * ancho + columna), para que una vista redibuje solo esas celdas.
+ * <p>
+ * Un resumen guarda un bit por palabra con alguna marca, de modo que buscar salta de a 4096 celdas sin cambios
+ * y limpiar solo recorre las palabras marcadas: ambas cosas dependen de los cambios y no del tamaño de la ciudad
+ * (salvo el resumen, 1/4096 de bit por celda).
+ * </p>
+ */
+final class ChangedCells {
+    // Permite marcar bits desde varios hilos durante un turno PARALLEL
+    private static final VarHandle WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final long[] words;
+
+    // Bit w: la palabra w de words tiene alguna marca
+    private final long[] summary;
+    private final int cells;
+
+    /**
+     * Crea el registro sin celdas marcadas para <b>cells</b> celdas.
+     */
+    ChangedCells(int cells) {
+        this.cells = cells;
+        words = new long[(cells + 63) >>> 6];
+        summary = new long[(words.length + 63) >>> 6];
+    }
+
+    /**
+     * Marca la celda con índice plano <b>cell</b>.
+     */
+    void mark(int cell) {
+        int w = cell >>> 6;
+        long bit = 1L << cell;
+        if (((long) WORDS.getOpaque(words, w) & bit) == 0 && (long) WORDS.getAndBitwiseOr(words, w, bit) == 0) {
+            WORDS.getAndBitwiseOr(summary, w >>> 6, 1L << w); // Primera marca de la palabra
+        }
+    }
+
+    /**
+     * Busca la siguiente celda marcada con índice plano mayor o igual a <b>cell</b>.
+     *
+     * @return El índice plano de la celda, o -1 si no hay más.
+     */
+    int next(int cell) {
+        return next(cell, cells);
+    }
+
+    /**
+     * Busca la siguiente celda marcada con índice plano entre <b>cell</b> (incluido) y <b>limit</b> (excluido).
+     *
+     * @return El índice plano de la celda, o -1 si no hay ninguna en ese rango.
+     */
+    int next(int cell, int limit) {
+        limit = Math.min(limit, cells);
+        if (cell >= limit) {
+            return -1;
+        }
+        int w = cell >>> 6, last = (limit - 1) >>> 6;
+        long bits = words[w] & (-1L << cell);
+        while (bits == 0) {
+            w = nextWord(w + 1, last);
+            if (w < 0) {
+                return -1;
+            }
+            bits = words[w];
+        }
+        int found = (w << 6) + Long.numberOfTrailingZeros(bits);
+        return (found < limit) ? found : -1;
+    }
+
+    // Siguiente palabra con marcas entre from y last (incluidas) según el resumen, o -1
+    private int nextWord(int from, int last) {
+        if (from > last) {
+            return -1;
+        }
+        int s = from >>> 6;
+        long bits = summary[s] & (-1L << from);
+        while (bits == 0) {
+            if (++s > (last >>> 6)) {
+                return -1;
+            }
+            bits = summary[s];
+        }
+        int w = (s << 6) + Long.numberOfTrailingZeros(bits);
+        return (w <= last) ? w : -1;
+    }
+
+    /**
+     * Quita todas las marcas, visitando solo las palabras marcadas.
+     */
+    void clear() {
+        for (int s = 0; s < summary.length; s++) {
+            for (long bits = summary[s]; bits != 0; bits &= bits - 1) {
+                words[(s << 6) + Long.numberOfTrailingZeros(bits)] = 0L;
+            }
+            summary[s] = 0L;
+        }
+    }
+}
@@ -7,6 +7,8 @@ import java.awt.Color;
  * haciéndolos felices temporalmente. Su color es rosa y su forma es triangular.
  */
 public class Cheerful extends Person {
+    // Valor calculado para la clase original, para seguir leyendo los archivos .dat ya guardados
+    private static final long serialVersionUID = 2422161829859487721L;
 
     /**
      * Constructor de la clase Cheerful.
@@ -26,10 +28,25 @@ public class Cheerful extends Person {
     /**
      * Método que define la lógica de decisión de la persona alegre.
      * Hace felices a todos sus vecinos temporalmente.
+     * En un turno de dos fases el efecto se aplica en change(), cuando todos ya decidieron.
      */
     @Override
     public void decide() {
-        makeNeighborsHappy();
+        if (!city.isTwoPhaseTick()) {
+            makeNeighborsHappy();
+        }
+    }
+
+    /**
+     * Método que cambia el estado de la persona alegre.
+     * Incrementa el contador de pasos y, en un turno de dos fases, hace felices a sus vecinos.
+     */
+    @Override
+    public void change() {
+        super.change();
+        if (city.isTwoPhaseTick()) {
+            makeNeighborsHappy();
+        }
     }
 
     /**
@@ -59,21 +76,19 @@ public class Cheerful extends Person {
      * Cambia el estado de los vecinos a feliz y marca que fueron influenciados.
      */
     private void makeNeighborsHappy() {
-        for (int dr = -1; dr <= 1; dr++) {
-            for (int dc = -1; dc <= 1; dc++) {
-                if (dr != 0 || dc != 0) { // Evita la posición actual
-                    int newRow = row + dr;
-                    int newColumn = column + dc;
-
-                    if (city.inLocations(newRow, newColumn)) {
-                        Item neighbor = city.getItem(newRow, newColumn);
+        int width = city.getWidth();
+        for (int k = 0; k < city.getNeighborhoodSize(); k++) { // Vecinas según la topología de la ciudad
+            int cell = city.neighbor(row, column, k);
+            if (cell >= 0) {
+                int newRow = cell / width;
+                int newColumn = cell % width;
+                Item neighbor = city.getItem(newRow, newColumn);
 
-                        if (neighbor instanceof Person) {
-                            Person personNeighbor = (Person) neighbor;
-                            personNeighbor.setState(Agent.HAPPY);
-                            personNeighbor.wasMadeHappy = true; // Marcar que fue influenciada
-                        }
-                    }
+                if (neighbor instanceof Person) {
+                    Person personNeighbor = (Person) neighbor;
+                    personNeighbor.setState(Agent.HAPPY);
+                    personNeighbor.wasMadeHappy = true; // Marcar que fue influenciada
+                    city.touch(newRow, newColumn); // Debe volver a evaluarse
                 }
             }
         }
@@ -3,50 +3,448 @@ package domain;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.FileInputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.ObjectOutputStream;
 import java.io.ObjectInputStream;
 import java.io.Serializable;
-import java.io.FileWriter;
+import java.io.OutputStream;
 import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputFilter;
 import java.io.BufferedReader;
 import java.io.FileReader;
-import java.lang.reflect.Constructor;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Clase que representa una ciudad en la simulación.
- * La ciudad es una cuadrícula de tamaño fijo (SIZE x SIZE) donde se ubican diferentes ítems,
+ * La ciudad es una cuadrícula de height x width celdas (SIZE x SIZE por defecto) donde se ubican diferentes ítems,
  * como personas, semáforos, postes de luz y otros agentes.
  */
 public class City implements Serializable {
     private static final long serialVersionUID = 1L; // Versión para la serialización
 
-    // Tamaño de la ciudad (número de filas y columnas)
-    static private int SIZE = 25;
+    // Tamaño por defecto de la ciudad (número de filas y columnas)
+    static private final int SIZE = 25;
 
-    // Matriz que representa las ubicaciones de los ítems en la ciudad
+    // Dimensiones de esta ciudad (número de filas y de columnas)
+    private int height, width;
+
+    // Matriz que representa las ubicaciones de los ítems en la ciudad (null si se guardan por bloques)
     protected Item[][] locations;
 
+    // Ubicaciones por bloques de 64x64 celdas que se crean al usarse (ver chunked())
+    private boolean chunked;
+    private transient ItemChunks chunks;
+
+    // Índice de las celdas ocupadas, para recorrer solo los ítems existentes
+    private transient Occupancy occupancy;
+
+    // Archivo .city abierto con openMapped() del que aún faltan bloques por leer (null si no hay)
+    private transient MappedSnapshot mapped;
+
+    // Omite los ítems cuyo vecindario no cambió (ver setDirtyScheduling)
+    private boolean dirtyScheduling;
+    private transient DirtyCells dirtyCells;
+
+    // Conteos de vecinos por celda (ver setNeighborCounting)
+    private boolean neighborCounting;
+    private transient NeighborCounts neighborCounts;
+
+    // Índice de celdas vacías (ver setVacancyIndexing)
+    private boolean vacancyIndexing;
+    private transient Vacancies vacancies;
+
+    // Celdas que cambiaron desde la última llamada a clearChanges(), o null si no se siguen
+    private transient ChangedCells changedCells;
+
+    // Bitácora de cambios en la que se registra cada turno (null si no hay, ver CityJournal)
+    private transient CityJournal journal;
+
+    // Semilla y número de turnos jugados, que determinan las elecciones al azar de los ítems
+    private long seed;
+    private long ticks;
+
+    // Modos de avance de un turno
+    public static final int SEQUENTIAL = 0;   // Cada ítem decide y cambia antes del siguiente, en orden de filas
+    public static final int SYNCHRONOUS = 1;  // Todos deciden sobre la misma ciudad y luego todos cambian
+    public static final int PARALLEL = 2;     // Como SYNCHRONOUS, repartiendo las filas entre varios hilos
+
+    // Topologías de la cuadrícula, que definen las vecinas de cada celda (ver setTopology)
+    public static final int MOORE = 0;        // Las 8 celdas adyacentes, sin salir de la ciudad
+    public static final int VON_NEUMANN = 1;  // Las 4 celdas adyacentes por los lados
+    public static final int TORUS = 2;        // Las 8 celdas adyacentes, con los bordes opuestos unidos
+    public static final int HEX = 3;          // Cuadrícula hexagonal: 6 vecinas, filas impares desplazadas
+
+    // Topología de esta ciudad y las tablas de vecinas que le corresponden
+    private int topology = MOORE;
+    private transient Topology neighborhood;
+
+    // Radio de los vecindarios de neighbors() y neighborsEquals(), y sus conteos si es mayor que 1
+    private int neighborhoodRadius = 1;
+    private transient RadiusCounts radiusCounts;
+
+    // Número mínimo de celdas que procesa cada tarea en modo PARALLEL
+    private static final int BAND_CELLS = 16384;
+
+    // Modo de avance de esta ciudad
+    private int tickMode = SEQUENTIAL;
+
+    // Fases de un turno de dos fases (modos SYNCHRONOUS y PARALLEL)
+    private static final int IDLE = 0, DECIDING = 1, CHANGING = 2;
+    private transient int phase = IDLE;
+
+    // Permite reservar celdas desde varios hilos durante un turno PARALLEL
+    private static final VarHandle RESERVATIONS = MethodHandles.arrayElementVarHandle(int[].class);
+
+    // Reservas del turno por celda destino: 1 + la celda origen con prioridad (la de menor índice), o 0 si no hay
+    private transient int[] reservations;
+
+    // Filas de cada banda y lo que registra cada banda durante el turno (ver Band)
+    private transient int bandRows;
+    private transient Band[] bands;
+
+    // Grupo de hilos del modo PARALLEL (null para usar el común)
+    private transient ForkJoinPool pool;
+
+    // Clases que puede contener un archivo .dat: las del dominio y los colores de las personas (con sus arreglos de float)
+    private static final ObjectInputFilter DAT_FILTER =
+        ObjectInputFilter.Config.createFilter("maxdepth=32;domain.*;java.awt.Color;!*");
+
     /**
      * Constructor de la clase City.
-     * Inicializa la ciudad con una cuadrícula vacía y agrega algunos ítems iniciales.
+     * Inicializa la ciudad con una cuadrícula vacía de tamaño SIZE x SIZE y agrega algunos ítems iniciales.
      */
     public City() {
-        locations = new Item[SIZE][SIZE];
-        for (int r = 0; r < SIZE; r++) {
-            for (int c = 0; c < SIZE; c++) {
-                locations[r][c] = null;
+        this(SIZE, SIZE);
+        someItems();
+    }
+
+    /**
+     * Crea una ciudad vacía de <b>height</b> filas por <b>width</b> columnas.
+     * La matriz recién creada ya está vacía, por lo que no se recorre celda por celda.
+     *
+     * @param height El número de filas de la ciudad.
+     * @param width  El número de columnas de la ciudad.
+     * @throws IllegalArgumentException si alguna de las dimensiones no es positiva.
+     */
+    public City(int height, int width) {
+        this(height, width, false);
+    }
+
+    /**
+     * Crea una ciudad vacía de <b>height</b> filas por <b>width</b> columnas cuyos ítems se guardan por bloques
+     * de 64x64 celdas: un bloque se crea con su primer ítem y se libera cuando queda vacío, y los recorridos
+     * (turnos, exportaciones, dibujo) saltan las franjas de 64 filas sin ítems. Así las ubicaciones de una ciudad
+     * enorme y casi vacía solo ocupan memoria por sus bloques poblados. Solo las ubicaciones son por bloques:
+     * el índice de ocupación sigue ocupando un bit por celda, igual que el seguimiento de cambios
+     * (setChangeTracking()) y las celdas candidatas de una bitácora (CityJournal). Los conteos de vecinos, el índice
+     * de vacantes, la planificación por celdas sucias, los vecindarios de radio mayor que 1 y el resumen de
+     * CityPyramid ocupan memoria por celda, por lo que conviene no activarlos en estas ciudades. Las celdas se
+     * siguen identificando con un índice plano int, así que el tamaño máximo no cambia.
+     *
+     * @param height El número de filas de la ciudad.
+     * @param width  El número de columnas de la ciudad.
+     * @return La ciudad vacía.
+     * @throws IllegalArgumentException si alguna de las dimensiones no es positiva o si la ciudad tiene más
+     *         celdas que Integer.MAX_VALUE (las celdas se identifican con un índice plano int).
+     */
+    public static City chunked(int height, int width) {
+        return new City(height, width, true);
+    }
+
+    /**
+     * Genera una ciudad en la que cada celda está ocupada con probabilidad <b>density</b> por un ítem de cualquiera
+     * de los tipos de la ciudad (los identificadores PERSON a STREET_LIGHT de ItemTypes), elegido con la misma
+     * probabilidad. La misma semilla genera siempre la misma ciudad, y es también la semilla de sus elecciones al
+     * azar (ver setSeed()). Es la ciudad al azar de CityConsole, de las pruebas y de los benchmarks.
+     *
+     * @param height  El número de filas.
+     * @param width   El número de columnas.
+     * @param density La fracción de celdas ocupadas, entre 0 y 1.
+     * @param seed    La semilla.
+     * @return La ciudad generada.
+     * @throws IllegalArgumentException si las dimensiones o la densidad son inválidas.
+     */
+    public static City random(int height, int width, double density, long seed) {
+        if (!(density >= 0 && density <= 1)) {
+            throw new IllegalArgumentException("Densidad inválida: " + density);
+        }
+        City city = new City(height, width);
+        city.setSeed(seed);
+        Random random = new Random(seed);
+        for (int r = 0; r < height; r++) {
+            for (int c = 0; c < width; c++) {
+                if (random.nextDouble() < density) {
+                    ItemTypes.create(PackedSimulator.PERSON + random.nextInt(6), city, r, c); // Uno de los 6 tipos
+                }
             }
         }
-        someItems();
+        return city;
+    }
+
+    // Crea una ciudad vacía con las ubicaciones en una matriz o por bloques
+    private City(int height, int width, boolean chunked) {
+        if (height <= 0 || width <= 0 || (long) height * width > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Dimensiones inválidas: " + height + "x" + width);
+        }
+        this.height = height;
+        this.width = width;
+        this.chunked = chunked;
+        allocateLocations();
+        occupancy = new Occupancy(height, width);
+        neighborhood = new Topology(MOORE, height, width);
+    }
+
+    /**
+     * Crea una ciudad cuyos ítems se leen por bloques del archivo <b>mapped</b>.
+     * Las filas de la matriz de ubicaciones se crean a medida que se leen los bloques (ver allocateRow()).
+     */
+    City(int height, int width, MappedSnapshot mapped, boolean chunked) {
+        this.height = height;
+        this.width = width;
+        this.chunked = chunked;
+        if (chunked) {
+            chunks = new ItemChunks(height, width);
+        } else {
+            locations = new Item[height][];
+        }
+        occupancy = new Occupancy(height, width);
+        neighborhood = new Topology(MOORE, height, width);
+        this.mapped = mapped;
+    }
+
+    // Crea las tablas de vecinas de la topología leída de un archivo .dat
+    private void createNeighborhood() throws InvalidObjectException {
+        try {
+            neighborhood = new Topology(topology, height, width);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidObjectException(e.getMessage());
+        }
+    }
+
+    // Crea las ubicaciones vacías
+    private void allocateLocations() {
+        if (chunked) {
+            locations = null;
+            chunks = new ItemChunks(height, width);
+        } else {
+            locations = new Item[height][width];
+        }
+    }
+
+    // Una ciudad abierta con openMapped() se guarda completa.
+    // Si todos los ítems tienen representación compacta, la matriz de ubicaciones no se serializa objeto por objeto:
+    // se escribe locations = null y después, como datos adicionales, los registros de CitySnapshot de las celdas
+    // ocupadas en orden de filas, cada uno precedido por el número de celdas vacías desde la anterior
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        materialize();
+        byte[] records = compactRecords();
+        if (records == null) {
+            // Hay ítems de otros tipos: formato original, que necesita la matriz completa
+            if (chunks != null) {
+                locations = new Item[height][width];
+                for (int cell = nextOccupied(0); cell >= 0; cell = nextOccupied(cell + 1)) {
+                    locations[cell / width][cell % width] = chunks.get(cell / width, cell % width);
+                }
+            }
+            try {
+                out.defaultWriteObject();
+            } finally {
+                if (chunks != null) {
+                    locations = null;
+                }
+            }
+            return;
+        }
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("height", height);
+        fields.put("width", width);
+        fields.put("locations", null);
+        fields.put("chunked", chunked);
+        fields.put("topology", topology);
+        fields.put("neighborhoodRadius", neighborhoodRadius);
+        fields.put("dirtyScheduling", dirtyScheduling);
+        fields.put("neighborCounting", neighborCounting);
+        fields.put("vacancyIndexing", vacancyIndexing);
+        fields.put("seed", seed);
+        fields.put("ticks", ticks);
+        fields.put("tickMode", tickMode);
+        out.writeFields();
+        out.writeInt(occupancy.count());
+        out.writeInt(records.length);
+        out.write(records);
+    }
+
+    // Registros compactos de los ítems, o null si alguno no tiene representación compacta
+    private byte[] compactRecords() {
+        ByteBuffer buffer = ByteBuffer.allocate(Math.max(64, 4 * occupancy.count()));
+        int previous = -1;
+        for (int cell = nextOccupied(0); cell >= 0; cell = nextOccupied(cell + 1)) {
+            if (buffer.remaining() < CitySnapshot.MAX_RECORD + 5) {
+                buffer = ByteBuffer.allocate(2 * buffer.capacity()).put(buffer.flip());
+            }
+            CitySnapshot.putVarint(buffer, cell - previous - 1);
+            try {
+                CitySnapshot.writeItem(buffer, getItem(cell / width, cell % width));
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+            previous = cell;
+        }
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    // Las ciudades guardadas antes de tener dimensiones propias no traen height ni width,
+    // y las guardadas con registros compactos traen locations = null
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        locations = (Item[][]) fields.get("locations", null);
+        height = fields.get("height", 0);
+        width = fields.get("width", 0);
+        dirtyScheduling = fields.get("dirtyScheduling", false);
+        neighborCounting = fields.get("neighborCounting", false);
+        vacancyIndexing = fields.get("vacancyIndexing", false);
+        seed = fields.get("seed", 0L);
+        ticks = fields.get("ticks", 0L);
+        tickMode = fields.get("tickMode", SEQUENTIAL);
+        chunked = fields.get("chunked", false);
+        topology = fields.get("topology", MOORE);
+        neighborhoodRadius = fields.get("neighborhoodRadius", 1);
+        if (locations == null) {
+            readCompact(in);
+            return;
+        }
+        if (height == 0 || width == 0) {
+            height = locations.length;
+            width = (height > 0) ? locations[0].length : 0;
+        }
+        createNeighborhood();
+        if (chunked) {
+            // La matriz completa solo se usa en el archivo
+            Item[][] saved = locations;
+            allocateLocations();
+            for (int r = 0; r < height; r++) {
+                for (int c = 0; c < width; c++) {
+                    chunks.set(r, c, saved[r][c]);
+                }
+            }
+        }
+        occupancy = new Occupancy(height, width);
+        for (int r = 0; r < height; r++) {
+            for (int c = 0; c < width; c++) {
+                if (getItem(r, c) != null) {
+                    occupancy.set(r, c, true);
+                }
+            }
+        }
+        if (dirtyScheduling) {
+            dirtyCells = new DirtyCells(occupancy, this);
+        }
+        if (neighborCounting) {
+            neighborCounts = new NeighborCounts(this);
+        }
+        if (vacancyIndexing) {
+            vacancies = new Vacancies(occupancy);
+        }
+        createRadiusCounts();
+    }
+
+    // Crea los ítems a partir de los registros compactos escritos por writeObject()
+    private void readCompact(ObjectInputStream in) throws IOException {
+        if (height <= 0 || width <= 0 || (long) height * width > Integer.MAX_VALUE
+            || tickMode < SEQUENTIAL || tickMode > PARALLEL) {
+            throw new InvalidObjectException("Dimensiones o modo de avance inválidos");
+        }
+        int count = in.readInt();
+        int length = in.readInt();
+        if (count < 0 || count > (long) height * width || length < 0 || length > (long) count * (CitySnapshot.MAX_RECORD + 5)) {
+            throw new InvalidObjectException("Número de ítems inválido: " + count);
+        }
+        createNeighborhood();
+        byte[] records = new byte[length];
+        in.readFully(records);
+        allocateLocations();
+        occupancy = new Occupancy(height, width);
+        // Los índices se crean vacíos y se completan con cada setItem()
+        if (dirtyScheduling) {
+            dirtyCells = new DirtyCells(occupancy, this);
+        }
+        if (neighborCounting) {
+            neighborCounts = new NeighborCounts(this);
+        }
+        if (vacancyIndexing) {
+            vacancies = new Vacancies(occupancy);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(records);
+        try {
+            int cell = -1;
+            for (int i = 0; i < count; i++) {
+                cell += CitySnapshot.getVarint(buffer) + 1;
+                if (cell < 0 || cell >= height * width) {
+                    throw new InvalidObjectException("Celda fuera de la ciudad: " + cell);
+                }
+                CitySnapshot.readItem(buffer, this, cell / width, cell % width);
+            }
+        } catch (BufferUnderflowException e) {
+            throw new InvalidObjectException("Registros incompletos");
+        }
+        if (buffer.hasRemaining()) {
+            throw new InvalidObjectException("Registros inválidos");
+        }
+        createRadiusCounts();
+    }
+
+    // Crea los conteos del radio leído de un archivo .dat, con todos los ítems ya ubicados
+    private void createRadiusCounts() throws InvalidObjectException {
+        if (neighborhoodRadius != 1) {
+            try {
+                checkRadius(topology, neighborhoodRadius);
+            } catch (IllegalArgumentException e) {
+                throw new InvalidObjectException(e.getMessage());
+            }
+            radiusCounts = new RadiusCounts(this, neighborhoodRadius);
+        }
     }
 
     /**
      * Devuelve el tamaño de la ciudad.
+     * En una ciudad rectangular corresponde al número de filas; use getHeight() y getWidth().
      *
-     * @return El tamaño de la ciudad (número de filas y columnas).
+     * @return El tamaño de la ciudad (número de filas).
      */
     public int getSize() {
-        return SIZE;
+        return height;
+    }
+
+    /**
+     * Devuelve el número de filas de la ciudad.
+     *
+     * @return El número de filas.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Devuelve el número de columnas de la ciudad.
+     *
+     * @return El número de columnas.
+     */
+    public int getWidth() {
+        return width;
     }
 
     /**
@@ -57,7 +455,10 @@ public class City implements Serializable {
      * @return El ítem en la posición (r, c), o null si no hay ningún ítem.
      */
     public Item getItem(int r, int c) {
-        return locations[r][c];
+        if (mapped != null) {
+            mapped.ensure(r, c);
+        }
+        return (chunks != null) ? chunks.get(r, c) : locations[r][c];
     }
 
     /**
@@ -68,7 +469,297 @@ public class City implements Serializable {
      * @param e El ítem a colocar.
      */
     public void setItem(int r, int c, Item e) {
-        locations[r][c] = e;
+        if (mapped != null) {
+            mapped.ensure(r, c);
+        }
+        if (chunks != null) {
+            chunks.set(r, c, e);
+        } else {
+            locations[r][c] = e;
+        }
+        occupancy.set(r, c, e != null);
+        if (dirtyCells != null) {
+            dirtyCells.setItem(r, c, e);
+        }
+        if (neighborCounts != null) {
+            neighborCounts.setItem(r, c, e);
+        }
+        if (vacancies != null) {
+            vacancies.set(r * width + c, e != null);
+        }
+        if (changedCells != null) {
+            changedCells.mark(r * width + c);
+        }
+        if (radiusCounts != null) {
+            radiusCounts.setItem(r, c, e);
+        }
+        if (journal != null) {
+            journal.changed(r * width + c);
+        }
+    }
+
+    /**
+     * Activa o desactiva los conteos de vecinos por celda.
+     * Con ellos activos, neighbors() y neighborsEquals() son consultas O(1) a cambio de
+     * actualizar 8 celdas en cada setItem y de unos 4 bytes más por celda.
+     *
+     * @param enabled true para mantener los conteos, false para calcularlos en cada consulta.
+     */
+    public void setNeighborCounting(boolean enabled) {
+        neighborCounting = enabled;
+        neighborCounts = enabled ? new NeighborCounts(this) : null;
+    }
+
+    /**
+     * Indica si los conteos de vecinos por celda están activos.
+     *
+     * @return true si están activos, false en caso contrario.
+     */
+    public boolean isNeighborCounting() {
+        return neighborCounting;
+    }
+
+    /**
+     * Activa o desactiva el índice de celdas vacías.
+     * Con él activo, randomEmptyCell() elige una celda vacía de toda la ciudad en O(1),
+     * a cambio de unos 8 bytes más por celda y de una actualización O(1) en cada setItem.
+     *
+     * @param enabled true para mantener el índice, false para descartarlo.
+     */
+    public void setVacancyIndexing(boolean enabled) {
+        vacancyIndexing = enabled;
+        vacancies = enabled ? new Vacancies(occupancy) : null;
+    }
+
+    /**
+     * Indica si el índice de celdas vacías está activo.
+     *
+     * @return true si está activo, false en caso contrario.
+     */
+    public boolean isVacancyIndexing() {
+        return vacancyIndexing;
+    }
+
+    /**
+     * Activa o desactiva el seguimiento de las celdas que cambian, para que una vista redibuje solo esas celdas
+     * (ver nextChanged). Se marcan las celdas cuyo ítem se coloca o se quita, las de los ítems que al evaluarse
+     * en un turno cambian de color, de actividad o de felicidad, y las de los vecinos a los que otro ítem les
+     * cambia el estado. Cuesta un bit por celda y no se
+     * guarda con la ciudad.
+     *
+     * @param enabled true para seguir los cambios (sin ninguna celda marcada), false para dejar de hacerlo.
+     */
+    public void setChangeTracking(boolean enabled) {
+        changedCells = enabled ? new ChangedCells(height * width) : null;
+    }
+
+    /**
+     * Indica si el seguimiento de las celdas que cambian está activo.
+     *
+     * @return true si está activo, false en caso contrario.
+     */
+    public boolean isChangeTracking() {
+        return changedCells != null;
+    }
+
+    /**
+     * Busca la siguiente celda que cambió desde la última llamada a clearChanges(), en orden de filas y con el
+     * mismo índice plano que nextOccupied().
+     *
+     * @param cell El índice plano desde el que se busca (incluido).
+     * @return El índice plano de la siguiente celda que cambió, o -1 si no hay más o el seguimiento no está activo.
+     */
+    public int nextChanged(int cell) {
+        return (changedCells != null) ? changedCells.next(cell) : -1;
+    }
+
+    /**
+     * Busca la siguiente celda que cambió desde la última llamada a clearChanges() con índice plano menor que
+     * <b>limit</b>, por ejemplo dentro de un tramo de fila visible. La búsqueda no pasa de <b>limit</b>.
+     *
+     * @param cell  El índice plano desde el que se busca (incluido).
+     * @param limit El índice plano hasta el que se busca (excluido).
+     * @return El índice plano de la siguiente celda que cambió, o -1 si no hay más en el rango o el seguimiento
+     *         no está activo.
+     */
+    public int nextChanged(int cell, int limit) {
+        return (changedCells != null) ? changedCells.next(cell, limit) : -1;
+    }
+
+    /**
+     * Olvida las celdas que cambiaron hasta ahora, por ejemplo después de redibujarlas.
+     */
+    public void clearChanges() {
+        if (changedCells != null) {
+            changedCells.clear();
+        }
+    }
+
+    /**
+     * Devuelve la bitácora de cambios asociada a la ciudad.
+     *
+     * @return La bitácora, o null si no hay (ver CityJournal.start).
+     */
+    public CityJournal getJournal() {
+        return journal;
+    }
+
+    // Asocia o separa la bitácora (lo llama CityJournal)
+    void setJournal(CityJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Elige al azar una celda vacía de toda la ciudad para el ítem en (r, c).
+     * La elección depende solo de la semilla, del número de turnos jugados y de la celda (r, c),
+     * por lo que se repite igual en cada ejecución y no depende del orden en que deciden los ítems
+     * (durante la fase de decisión de un turno de dos fases las celdas vacías no cambian).
+     *
+     * @param r La fila del ítem.
+     * @param c La columna del ítem.
+     * @return El índice plano (fila * getWidth() + columna) de la celda elegida, o -1 si no hay celdas vacías.
+     * @throws IllegalStateException si el índice de celdas vacías no está activo.
+     */
+    public int randomEmptyCell(int r, int c) {
+        if (vacancies == null) {
+            throw new IllegalStateException("El índice de celdas vacías no está activo");
+        }
+        int size = vacancies.size();
+        if (size == 0) {
+            return -1;
+        }
+        long hash = mix(seed ^ mix(ticks ^ mix(r * (long) width + c)));
+        return vacancies.get((int) ((hash >>> 1) % size));
+    }
+
+    // Mezcla los bits de un valor (función final de SplitMix64)
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Define la semilla de las elecciones al azar de los ítems (ver randomEmptyCell()).
+     *
+     * @param seed La semilla.
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Devuelve la semilla de las elecciones al azar de los ítems.
+     *
+     * @return La semilla.
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Devuelve el número de turnos jugados desde que se creó la ciudad.
+     *
+     * @return El número de turnos.
+     */
+    public long getTicks() {
+        return ticks;
+    }
+
+    // Restaura el número de turnos jugados al abrir una ciudad guardada
+    void setTicks(long ticks) {
+        this.ticks = ticks;
+    }
+
+    /**
+     * Activa o desactiva la planificación por celdas sucias.
+     * Con ella activa, un ítem que solo depende de sus vecinos (Item.dependsOnlyOnNeighbors())
+     * se evalúa solo si alguna celda de su vecindario cambió o si otro ítem lo marcó con touch().
+     * Los demás ítems se siguen evaluando en cada turno, y el resultado es el mismo que sin planificación.
+     *
+     * @param enabled true para activar la planificación, false para desactivarla.
+     */
+    public void setDirtyScheduling(boolean enabled) {
+        dirtyScheduling = enabled;
+        dirtyCells = enabled ? new DirtyCells(occupancy, this) : null;
+    }
+
+    /**
+     * Indica si la planificación por celdas sucias está activa.
+     *
+     * @return true si está activa, false en caso contrario.
+     */
+    public boolean isDirtyScheduling() {
+        return dirtyScheduling;
+    }
+
+    /**
+     * Marca la celda (r, c) para que su ítem se vuelva a evaluar en la planificación por celdas sucias
+     * y, si se siguen los cambios, como cambiada. Lo usan los ítems que cambian el estado de un vecino sin moverse.
+     *
+     * @param r La fila de la ubicación.
+     * @param c La columna de la ubicación.
+     */
+    protected void touch(int r, int c) {
+        if (dirtyCells != null && inLocations(r, c)) {
+            dirtyCells.touch(r, c);
+        }
+        if (changedCells != null && inLocations(r, c)) {
+            changedCells.mark(r * width + c);
+        }
+        if (journal != null && inLocations(r, c)) {
+            journal.changed(r * width + c);
+        }
+    }
+
+    // Siguiente celda ocupada que hay que evaluar en este turno
+    private int nextToEvaluate(int cell) {
+        return (dirtyCells != null) ? dirtyCells.next(cell) : occupancy.next(cell);
+    }
+
+    /**
+     * Devuelve el número de ítems en la ciudad.
+     * Se mantiene al día en cada setItem, por lo que no recorre la cuadrícula.
+     *
+     * @return El número de celdas ocupadas.
+     */
+    public int countItems() {
+        return occupancy.count();
+    }
+
+    /**
+     * Indica si los ítems se guardan por bloques de 64x64 celdas (ver chunked()).
+     *
+     * @return true si la ciudad se creó con chunked() o se abrió de un archivo guardado así.
+     */
+    public boolean isChunked() {
+        return chunked;
+    }
+
+    /**
+     * Devuelve el número de bloques de 64x64 celdas creados en una ciudad por bloques.
+     *
+     * @return El número de bloques con ítems, o 0 si la ciudad no se guarda por bloques.
+     */
+    public int countChunks() {
+        return (chunks != null) ? chunks.allocated() : 0;
+    }
+
+    /**
+     * Busca la siguiente celda ocupada en orden de filas.
+     * Las celdas se identifican con el índice plano <code>fila * getWidth() + columna</code>;
+     * para recorrer todos los ítems basta con empezar en 0 y seguir desde el índice encontrado más uno.
+     *
+     * @param cell El índice plano desde el que se busca (incluido).
+     * @return El índice plano de la siguiente celda ocupada, o -1 si no hay más.
+     */
+    public int nextOccupied(int cell) {
+        return occupancy.next(cell);
+    }
+
+    // Índice de ocupación, para leer y escribir archivos .city
+    Occupancy occupancy() {
+        return occupancy;
     }
 
     /**
@@ -96,27 +787,229 @@ public class City implements Serializable {
     }
 
     /**
-     * Cuenta el número de vecinos iguales al ítem en la posición (r, c).
-     * Un vecino es igual si es del mismo tipo (clase) que el ítem en (r, c).
+     * Devuelve la topología de la ciudad.
+     *
+     * @return MOORE, VON_NEUMANN, TORUS o HEX.
+     */
+    public int getTopology() {
+        return topology;
+    }
+
+    /**
+     * Cambia la topología de la ciudad, que define las vecinas de cada celda para todos los ítems.
+     * <p>
+     * - MOORE: las 8 celdas adyacentes, sin salir de la ciudad (la topología por defecto).
+     * - VON_NEUMANN: las 4 celdas adyacentes por arriba, abajo, izquierda y derecha.
+     * - TORUS: las 8 celdas adyacentes; los bordes opuestos están unidos, así que todas las celdas tienen 8 vecinas.
+     * - HEX: cuadrícula hexagonal en la que las filas impares están desplazadas media celda a la derecha; 6 vecinas.
+     * </p>
+     * Los conteos de vecinos y la planificación por celdas sucias, si están activos, se recalculan.
+     *
+     * @param topology La nueva topología.
+     * @throws IllegalArgumentException si la topología no existe, si es TORUS y la ciudad tiene menos de 3 filas o
+     *         columnas, o si el radio del vecindario (ver setNeighborhoodRadius) no es válido en ella.
+     */
+    public void setTopology(int topology) {
+        Topology created = new Topology(topology, height, width);
+        checkRadius(topology, neighborhoodRadius);
+        neighborhood = created;
+        this.topology = topology;
+        if (radiusCounts != null) {
+            radiusCounts = new RadiusCounts(this, neighborhoodRadius);
+        }
+        if (neighborCounts != null) {
+            neighborCounts = new NeighborCounts(this);
+        }
+        if (dirtyCells != null) {
+            dirtyCells = new DirtyCells(occupancy, this);
+        }
+    }
+
+    /**
+     * Devuelve el número de vecinas de cada celda en la topología de la ciudad (8, 4 o 6).
+     * Las celdas del borde de una ciudad sin vuelta tienen menos vecinas: neighbor() devuelve -1 para las que faltan.
+     *
+     * @return El número de vecinas.
+     */
+    public int getNeighborhoodSize() {
+        return neighborhood.size;
+    }
+
+    /**
+     * Devuelve la vecina número <b>k</b> de la celda (r, c) según la topología de la ciudad.
+     * Para recorrer las vecinas de una celda sin crear objetos:
+     * <pre>
+     * for (int k = 0; k &lt; city.getNeighborhoodSize(); k++) {
+     *     int cell = city.neighbor(r, c, k);
+     *     if (cell &gt;= 0) { ... cell / city.getWidth(), cell % city.getWidth() ... }
+     * }
+     * </pre>
+     *
+     * @param r La fila de la celda, dentro de la ciudad.
+     * @param c La columna de la celda, dentro de la ciudad.
+     * @param k El número de la vecina, entre 0 y getNeighborhoodSize() - 1.
+     * @return El índice plano (fila * getWidth() + columna) de la vecina, o -1 si queda fuera de la ciudad.
+     */
+    public int neighbor(int r, int c, int k) {
+        return neighborhood.neighbor(r, c, k);
+    }
+
+    // Tablas de vecinas, para los índices que dependen del vecindario
+    Topology topology() {
+        return neighborhood;
+    }
+
+    /**
+     * Devuelve el radio de los vecindarios que cuentan neighbors() y neighborsEquals().
+     *
+     * @return El radio; 1 son las vecinas de la topología.
+     */
+    public int getNeighborhoodRadius() {
+        return neighborhoodRadius;
+    }
+
+    /**
+     * Cambia el radio de los vecindarios que cuentan neighbors() y neighborsEquals(), y por lo tanto la tolerancia
+     * de las personas Schelling. Con radio R mayor que 1 se cuentan las celdas a distancia de Chebyshev entre 1 y R
+     * (un cuadrado de (2R + 1) x (2R + 1) celdas sin la del centro) a partir de árboles de Fenwick, en
+     * O(log filas * log columnas) por consulta y por cambio sea cual sea el radio (ver RadiusCounts). Los árboles
+     * se mantienen al día con cada cambio y ocupan un int por celda por cada clase de ítem, más uno.
+     * Las demás consultas de vecinas (neighbor(), hasNeighbors(), los movimientos) siguen usando la topología.
+     * Activarlo en una ciudad abierta con openMapped() crea todos los ítems.
+     *
+     * @param radius El nuevo radio, mayor o igual a 1.
+     * @throws IllegalArgumentException si el radio no es positivo, si es mayor que 1 y la topología no es MOORE
+     *         ni TORUS, o si en el toro el cuadrado no cabe en la ciudad.
+     */
+    public void setNeighborhoodRadius(int radius) {
+        checkRadius(topology, radius);
+        neighborhoodRadius = radius;
+        radiusCounts = (radius > 1) ? new RadiusCounts(this, radius) : null;
+        if (dirtyCells != null) {
+            dirtyCells = new DirtyCells(occupancy, this);
+        }
+    }
+
+    // Verifica que el radio sea válido en la topología
+    private void checkRadius(int topology, int radius) {
+        if (radius < 1) {
+            throw new IllegalArgumentException("Radio de vecindario inválido: " + radius);
+        }
+        if (radius > 1 && topology != MOORE && topology != TORUS) {
+            throw new IllegalArgumentException("Un radio mayor que 1 solo se admite con las topologías MOORE y TORUS");
+        }
+        if (topology == TORUS && (2L * radius + 1 > height || 2L * radius + 1 > width)) {
+            throw new IllegalArgumentException("El vecindario de radio " + radius + " no cabe en el toro");
+        }
+    }
+
+    /**
+     * Cuenta el número de vecinos iguales al ítem en la posición (r, c).
+     * Un vecino es igual si es del mismo tipo (clase) que el ítem en (r, c).
+     * Con un radio mayor que 1 (ver setNeighborhoodRadius) se cuentan todas las celdas del radio.
+     *
+     * @param r La fila de la ubicación.
+     * @param c La columna de la ubicación.
+     * @return El número de vecinos iguales.
+     */
+    public int neighborsEquals(int r, int c) {
+        if (radiusCounts != null) {
+            return inLocations(r, c) ? radiusCounts.same(r, c) : 0;
+        }
+        if (neighborCounts != null) {
+            return (inLocations(r, c) && occupancy.get(r, c)) ? neighborCounts.same(r, c) : 0;
+        }
+        if (!inLocations(r, c) || !occupancy.get(r, c)) {
+            return 0;
+        }
+        Class<?> type = getItem(r, c).getClass();
+        int num = 0;
+        for (int k = 0; k < neighborhood.size; k++) {
+            int n = neighborhood.neighbor(r, c, k);
+            if (n >= 0 && occupancy.get(n) && getItem(n / width, n % width).getClass() == type) {
+                num++;
+            }
+        }
+        return num;
+    }
+
+    /**
+     * Cuenta el número de vecinos (celdas ocupadas entre las vecinas) de la posición (r, c).
+     * En la topología MOORE se resuelve con unas pocas operaciones sobre las palabras del índice de ocupación.
+     * Con un radio mayor que 1 (ver setNeighborhoodRadius) se cuentan todas las celdas del radio.
+     *
+     * @param r La fila de la ubicación.
+     * @param c La columna de la ubicación.
+     * @return El número de vecinos, o 0 si la posición está fuera de la ciudad.
+     */
+    public int neighbors(int r, int c) {
+        if (!inLocations(r, c)) {
+            return 0;
+        }
+        if (radiusCounts != null) {
+            return radiusCounts.total(r, c);
+        }
+        if (neighborCounts != null) {
+            return neighborCounts.total(r, c);
+        }
+        if (topology == MOORE) {
+            return occupancy.countAround(r, c);
+        }
+        int num = 0;
+        for (int k = 0; k < neighborhood.size; k++) {
+            int n = neighborhood.neighbor(r, c, k);
+            if (n >= 0 && occupancy.get(n)) {
+                num++;
+            }
+        }
+        return num;
+    }
+
+    /**
+     * Indica si alguna de las vecinas de (r, c) está ocupada.
+     * En la topología MOORE se resuelve con unas pocas operaciones sobre las palabras del índice de ocupación.
      *
      * @param r La fila de la ubicación.
      * @param c La columna de la ubicación.
-     * @return El número de vecinos iguales.
+     * @return true si hay algún vecino, false en caso contrario o si la posición está fuera de la ciudad.
      */
-    public int neighborsEquals(int r, int c) {
-        int num = 0;
-        if (inLocations(r, c) && locations[r][c] != null) {
-            for (int dr = -1; dr < 2; dr++) {
-                for (int dc = -1; dc < 2; dc++) {
-                    if ((dr != 0 || dc != 0) && inLocations(r + dr, c + dc) && 
-                        (locations[r + dr][c + dc] != null) &&  
-                        (locations[r][c].getClass() == locations[r + dr][c + dc].getClass())) {
-                        num++;
-                    }
+    public boolean hasNeighbors(int r, int c) {
+        if (!inLocations(r, c)) {
+            return false;
+        }
+        if (topology == MOORE) {
+            return occupancy.anyAround(r, c);
+        }
+        for (int k = 0; k < neighborhood.size; k++) {
+            int n = neighborhood.neighbor(r, c, k);
+            if (n >= 0 && occupancy.get(n)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Cuenta los vecinos de todas las celdas de la ciudad en una sola pasada.
+     * En la topología MOORE trabaja sobre el índice de ocupación, 64 celdas por operación; en las demás,
+     * cada ítem suma uno a sus vecinas (las vecindades son simétricas).
+     *
+     * @return Un arreglo con el número de vecinos de cada celda, indexado por fila * getWidth() + columna.
+     */
+    public byte[] neighborCounts() {
+        if (topology == MOORE) {
+            return occupancy.countAll();
+        }
+        byte[] counts = new byte[height * width];
+        for (int cell = nextOccupied(0); cell >= 0; cell = nextOccupied(cell + 1)) {
+            for (int k = 0; k < neighborhood.size; k++) {
+                int n = neighborhood.neighbor(cell / width, cell % width, k);
+                if (n >= 0) {
+                    counts[n]++;
                 }
             }
         }
-        return num;
+        return counts;
     }
 
     /**
@@ -127,7 +1020,7 @@ public class City implements Serializable {
      * @return true si la posición está vacía, false en caso contrario.
      */
     public boolean isEmpty(int r, int c) {
-        return (inLocations(r, c) && locations[r][c] == null);
+        return (inLocations(r, c) && !occupancy.get(r, c));
     }    
 
     /**
@@ -138,22 +1031,337 @@ public class City implements Serializable {
      * @return true si la posición es válida, false en caso contrario.
      */
     protected boolean inLocations(int r, int c) {
-        return ((0 <= r) && (r < SIZE) && (0 <= c) && (c < SIZE));
+        return ((0 <= r) && (r < height) && (0 <= c) && (c < width));
+    }
+
+    /**
+     * Devuelve el modo de avance de la ciudad.
+     *
+     * @return SEQUENTIAL, SYNCHRONOUS o PARALLEL.
+     */
+    public int getTickMode() {
+        return tickMode;
+    }
+
+    /**
+     * Cambia el modo de avance de la ciudad.
+     * <p>
+     * - SEQUENTIAL: cada ítem decide y cambia antes de pasar al siguiente, en orden de filas,
+     *   por lo que los ítems posteriores ven una ciudad a medio actualizar.
+     * - SYNCHRONOUS: todos los ítems deciden sobre la misma ciudad y luego todos cambian;
+     *   los movimientos se acumulan y se aplican juntos al final del turno.
+     * - PARALLEL: igual que SYNCHRONOUS, pero cada fase se reparte por bandas de filas entre los
+     *   hilos de un ForkJoinPool. El resultado es idéntico al del modo SYNCHRONOUS.
+     * </p>
+     *
+     * @param mode El nuevo modo de avance.
+     * @throws IllegalArgumentException si el modo no existe.
+     */
+    public void setTickMode(int mode) {
+        if (mode != SEQUENTIAL && mode != SYNCHRONOUS && mode != PARALLEL) {
+            throw new IllegalArgumentException("Modo de avance inválido: " + mode);
+        }
+        tickMode = mode;
+    }
+
+    /**
+     * Define el grupo de hilos que usa el modo PARALLEL.
+     *
+     * @param pool El grupo de hilos, o null para usar ForkJoinPool.commonPool().
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    // Grupo de hilos para el modo PARALLEL y la importación y exportación en paralelo
+    ForkJoinPool workers() {
+        return (pool != null) ? pool : ForkJoinPool.commonPool();
+    }
+
+    /**
+     * Indica si se está ejecutando un turno de dos fases.
+     * Durante ese turno la ciudad no cambia hasta el final, por lo que los efectos sobre otros ítems
+     * deben hacerse en change() y no en decide().
+     *
+     * @return true si hay un turno SYNCHRONOUS o PARALLEL en curso, false en caso contrario.
+     */
+    public boolean isTwoPhaseTick() {
+        return phase != IDLE;
+    }
+
+    /**
+     * Reserva la celda vacía (nr, nc) para el ítem en (r, c).
+     * Solo tiene efecto durante la fase de decisión de un turno de dos fases: si varios ítems
+     * reservan la misma celda, la obtiene el de menor posición en orden de filas.
+     *
+     * @param r  La fila del ítem.
+     * @param c  La columna del ítem.
+     * @param nr La fila de destino.
+     * @param nc La columna de destino.
+     */
+    protected void reserve(int r, int c, int nr, int nc) {
+        if (phase != DECIDING || !isEmpty(nr, nc)) {
+            return;
+        }
+        int target = nr * width + nc, claim = r * width + c + 1;
+        int current = (int) RESERVATIONS.getVolatile(reservations, target);
+        // Mínimo atómico: se reintenta solo si otro hilo cambió la reserva entretanto
+        while (current == 0 || claim < current) {
+            int witness = (int) RESERVATIONS.compareAndExchange(reservations, target, current, claim);
+            if (witness == current) {
+                if (current == 0) {
+                    bands[r / bandRows].reserved(target); // La primera reserva de la celda la anota para limpiarla
+                }
+                return;
+            }
+            current = witness;
+        }
+    }
+
+    /**
+     * Mueve el ítem en (r, c) a la celda (nr, nc) si está disponible.
+     * Fuera de un turno de dos fases el movimiento es inmediato si el destino está vacío.
+     * Durante la fase de cambios solo se acepta si el ítem ganó la reserva del destino, y se aplica al final del turno.
+     *
+     * @param r  La fila del ítem.
+     * @param c  La columna del ítem.
+     * @param nr La fila de destino.
+     * @param nc La columna de destino.
+     * @return true si el movimiento fue aceptado, false en caso contrario.
+     */
+    protected boolean move(int r, int c, int nr, int nc) {
+        if (phase == CHANGING) {
+            if (reservations[nr * width + nc] != r * width + c + 1) {
+                return false;
+            }
+            bands[r / bandRows].moved(((long) (r * width + c) << 32) | (nr * width + nc));
+            return true;
+        }
+        if (!isEmpty(nr, nc)) {
+            return false;
+        }
+        if (journal != null) {
+            journal.moved(r * width + c, nr * width + nc);
+        }
+        Item item = getItem(r, c);
+        setItem(r, c, null);
+        setItem(nr, nc, item);
+        return true;
     }
 
     /**
-     * Avanza un turno en la simulación.
+     * Avanza un turno en la simulación según el modo de avance de la ciudad.
      * Todos los ítems en la ciudad deciden su próximo estado y realizan cambios.
      */
     public void ticTac() {
-        for (int r = 0; r < SIZE; r++) {
-            for (int c = 0; c < SIZE; c++) {
-                Item item = locations[r][c];
-                if (item != null) {
-                    item.decide(); // Decide el estado
-                    item.change();  // Incrementa steps
+        run(1);
+    }
+
+    /**
+     * Avanza varios turnos seguidos, con el mismo resultado que llamar ticTac() <b>ticks</b> veces.
+     * El modo de avance, el grupo de hilos y el tamaño de las bandas se resuelven una sola vez
+     * para todos los turnos, lo que conviene en simulaciones largas sin interfaz.
+     *
+     * @param ticks El número de turnos a avanzar.
+     * @throws IllegalArgumentException si el número de turnos es negativo.
+     */
+    public void run(int ticks) {
+        if (ticks < 0) {
+            throw new IllegalArgumentException("Número de turnos inválido: " + ticks);
+        }
+        if (tickMode == SEQUENTIAL) {
+            for (int i = 0; i < ticks; i++) {
+                ticTacSequential();
+                this.ticks++;
+                if (journal != null) {
+                    journal.ticked();
                 }
             }
+            return;
+        }
+        if (reservations == null) {
+            reservations = new int[height * width];
+            bandRows = Math.max(1, BAND_CELLS / width);
+            bands = new Band[(height + bandRows - 1) / bandRows];
+            for (int b = 0; b < bands.length; b++) {
+                bands[b] = new Band();
+            }
+        }
+        ForkJoinPool workers = (tickMode == PARALLEL) ? workers() : null;
+        if (workers != null) {
+            materialize(); // Los bloques se leen en un solo hilo
+        }
+        for (int i = 0; i < ticks; i++) {
+            ticTacSynchronous(workers);
+            this.ticks++;
+            if (journal != null) {
+                journal.ticked();
+            }
+        }
+    }
+
+    // Turno secuencial: cada ítem decide y cambia antes del siguiente
+    private void ticTacSequential() {
+        // Se vuelve a consultar el índice tras cada ítem, como si se recorriera celda por celda
+        for (int cell = nextToEvaluate(0); cell >= 0; cell = nextToEvaluate(cell + 1)) {
+            Item item = getItem(cell / width, cell % width);
+            if (dirtyCells != null) {
+                dirtyCells.clear(cell / width, cell % width);
+            }
+            if (journal != null) {
+                journal.changed(cell); // Cambios que no se ven, como los pasos
+            }
+            long before = (changedCells != null) ? look(item) : 0;
+            item.decide(); // Decide el estado
+            item.change();  // Incrementa steps
+            if (changedCells != null && look(item) != before) {
+                changedCells.mark(cell); // Los movimientos ya marcaron sus celdas en setItem
+            }
+        }
+    }
+
+    // Lo que se dibuja de un ítem que no se mueve: color, si está activo y, si es agente, si está feliz o insatisfecho
+    private static long look(Item item) {
+        long look = item.getColor().getRGB() & 0xffffffffL;
+        if (item.isActive()) {
+            look |= 1L << 32;
+        }
+        if (item.isAgent()) {
+            Agent agent = (Agent) item;
+            look |= (agent.isHappy() ? 1L << 33 : 0) | (agent.isDissatisfied() ? 1L << 34 : 0);
+        }
+        return look;
+    }
+
+    // Turno de dos fases: todos deciden sobre la ciudad actual, todos cambian y al final se aplican los movimientos.
+    // Con workers null las fases se ejecutan en el hilo actual
+    private void ticTacSynchronous(ForkJoinPool workers) {
+        boolean parallel = (workers != null);
+        if (dirtyCells != null) {
+            dirtyCells.beginTwoPhase();
+        }
+        try {
+            phase = DECIDING;
+            if (parallel) {
+                workers.invoke(new BandTask(0, bands.length, true));
+            } else {
+                runBand(0, height, true);
+            }
+            phase = CHANGING;
+            if (parallel) {
+                workers.invoke(new BandTask(0, bands.length, false));
+            } else {
+                runBand(0, height, false);
+            }
+        } finally {
+            phase = IDLE;
+        }
+        commitMoves();
+        if (dirtyCells != null) {
+            dirtyCells.endTwoPhase();
+        }
+    }
+
+    // Ejecuta decide() o change() sobre los ítems de las filas [from, to)
+    private void runBand(int from, int to, boolean deciding) {
+        int end = to * width;
+        for (int cell = nextToEvaluate(from * width); cell >= 0 && cell < end; cell = nextToEvaluate(cell + 1)) {
+            Item item = getItem(cell / width, cell % width);
+            if (journal != null && deciding) {
+                journal.changed(cell); // Cambios que no se ven, como los pasos
+            }
+            long before = (changedCells != null) ? look(item) : 0;
+            if (deciding) {
+                item.decide();
+            } else {
+                item.change();
+            }
+            // Si cambió en alguna de las dos fases, cambió en el turno
+            if (changedCells != null && look(item) != before) {
+                changedCells.mark(cell);
+            }
+        }
+    }
+
+    /**
+     * Lo que registran los ítems de una banda de filas durante un turno de dos fases: las celdas que reservaron
+     * primero y los movimientos aceptados, codificados como (origen << 32) | destino.
+     * Cada banda la procesa un solo hilo, así que no hace falta sincronizar; la banda de un ítem es su fila / bandRows.
+     */
+    private static final class Band {
+        int[] reserved = new int[16];
+        int reservedCount;
+        long[] moves = new long[16];
+        int moveCount;
+
+        void reserved(int cell) {
+            if (reservedCount == reserved.length) {
+                reserved = Arrays.copyOf(reserved, 2 * reservedCount);
+            }
+            reserved[reservedCount++] = cell;
+        }
+
+        void moved(long move) {
+            if (moveCount == moves.length) {
+                moves = Arrays.copyOf(moves, 2 * moveCount);
+            }
+            moves[moveCount++] = move;
+        }
+    }
+
+    /**
+     * Tarea que divide un rango de bandas por la mitad hasta llegar a una sola banda y las procesa en paralelo.
+     * Durante una fase la cuadrícula no cambia, así que las bandas son independientes entre sí.
+     */
+    private class BandTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L; // Versión para la serialización
+        private final int first, last;
+        private final boolean deciding;
+
+        BandTask(int first, int last, boolean deciding) {
+            this.first = first;
+            this.last = last;
+            this.deciding = deciding;
+        }
+
+        @Override
+        protected void compute() {
+            if (last - first == 1) {
+                runBand(first * bandRows, Math.min(height, (first + 1) * bandRows), deciding);
+            } else {
+                int middle = (first + last) >>> 1;
+                invokeAll(new BandTask(first, middle, deciding), new BandTask(middle, last, deciding));
+            }
+        }
+    }
+
+    // Aplica los movimientos aceptados en el turno, en orden de origen; orígenes y destinos son todos distintos
+    private void commitMoves() {
+        int count = 0;
+        for (Band band : bands) {
+            count += band.moveCount;
+        }
+        long[] moves = new long[count];
+        count = 0;
+        for (Band band : bands) {
+            System.arraycopy(band.moves, 0, moves, count, band.moveCount);
+            count += band.moveCount;
+            band.moveCount = 0;
+            for (int i = 0; i < band.reservedCount; i++) {
+                reservations[band.reserved[i]] = 0;
+            }
+            band.reservedCount = 0;
+        }
+        Arrays.sort(moves);
+        for (long move : moves) {
+            int from = (int) (move >>> 32);
+            int to = (int) move;
+            if (journal != null) {
+                journal.moved(from, to);
+            }
+            Item item = getItem(from / width, from % width);
+            setItem(from / width, from % width, null);
+            setItem(to / width, to % width, item);
         }
     }
 
@@ -165,23 +1373,97 @@ public class City implements Serializable {
 
     public static City open01(File file) throws CityException {
         try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(file))) {
+            ois.setObjectInputFilter(DAT_FILTER);
             return (City) ois.readObject(); // Deserializa el objeto City
         } catch (Exception e) { // Captura cualquier excepción
             throw new CityException(CityException.OPEN_ERROR); // Mensaje de error general
         }
     }
 
+    /**
+     * Abre una ciudad guardada con save().
+     * Los archivos .city usan el formato binario compacto; los .dat, la serialización de Java.
+     *
+     * @param file El archivo a abrir.
+     * @return La ciudad guardada en el archivo.
+     * @throws CityException si la extensión no es .city ni .dat o si no se puede leer el archivo.
+     */
     public static City open(File file) throws CityException {
+        if (file.getName().endsWith(".city")) {
+            try {
+                return CitySnapshot.read(file);
+            } catch (Exception e) {
+                throw new CityException(CityException.OPEN_ERROR + e.getMessage());
+            }
+        }
         if (!file.getName().endsWith(".dat")) {
             throw new CityException(CityException.WRONG_FILE_TIPE);
         }
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(file))) {
+        try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            ois.setObjectInputFilter(DAT_FILTER); // Solo clases de la ciudad
             return (City) ois.readObject(); // Deserializa el objeto City
         } catch (Exception e) {
             throw new CityException(CityException.OPEN_ERROR + e.getMessage());
         }
     }
 
+    /**
+     * Abre una ciudad .city sin crear todavía sus ítems.
+     * El archivo se proyecta en memoria y solo se copia el índice de ocupación, por lo que el tiempo de apertura
+     * no depende del número de ítems. Los ítems de cada bloque de 64x64 celdas se crean la primera vez que se
+     * consulta o modifica una de sus celdas, por ejemplo al dibujar una parte de la ciudad o al avanzar un turno.
+     * countItems(), nextOccupied(), isEmpty() y neighbors() no necesitan crear ítems.
+     * Activar los conteos de vecinos o la planificación por celdas sucias (o abrir una ciudad guardada con ellos)
+     * crea todos los ítems; un turno PARALLEL también.
+     *
+     * @param file El archivo .city a abrir.
+     * @return La ciudad guardada en el archivo.
+     * @throws CityException si la extensión no es .city o si no se puede leer el archivo.
+     */
+    public static City openMapped(File file) throws CityException {
+        if (!file.getName().endsWith(".city")) {
+            throw new CityException(CityException.WRONG_FILE_TIPE);
+        }
+        try {
+            return CitySnapshot.map(file);
+        } catch (Exception e) {
+            throw new CityException(CityException.OPEN_ERROR + e.getMessage());
+        }
+    }
+
+    /**
+     * Indica si todos los ítems de la ciudad ya están creados.
+     * Solo puede ser false en una ciudad abierta con openMapped().
+     *
+     * @return true si no quedan bloques por leer, false en caso contrario.
+     */
+    public boolean isMaterialized() {
+        return mapped == null;
+    }
+
+    /**
+     * Crea todos los ítems que falten de una ciudad abierta con openMapped().
+     *
+     * @throws java.io.UncheckedIOException si alguno de los bloques que faltaban está dañado.
+     */
+    public void materialize() {
+        if (mapped != null) {
+            mapped.loadAll();
+        }
+    }
+
+    // Crea la fila r de la matriz de ubicaciones si todavía no existe
+    void allocateRow(int r) {
+        if (locations != null && locations[r] == null) {
+            locations[r] = new Item[width];
+        }
+    }
+
+    // Todos los bloques del archivo ya se leyeron
+    void detach() {
+        mapped = null;
+    }
+
     //Diferentes saves
     public void save00(File file) throws CityException {
         throw new CityException(CityException.OPTION_IN_CONSTRUCTION, "Guardar", file.getName());
@@ -195,13 +1477,35 @@ public class City implements Serializable {
         }
     }
 
+    /**
+     * Guarda la ciudad en un archivo.
+     * Con extensión .city usa el formato binario compacto, mucho más rápido y pequeño;
+     * con extensión .dat, la serialización de Java.
+     * Una ciudad abierta con openMapped() primero crea todos sus ítems, de modo que se puede guardar en el mismo
+     * archivo del que se abrió. La ciudad se escribe en un archivo aparte que después reemplaza al de destino, así
+     * que un error al escribir no daña el archivo que ya existía.
+     *
+     * @param file El archivo de destino.
+     * @throws CityException si la extensión no es .city ni .dat o si no se puede escribir el archivo.
+     */
     public void save(File file) throws CityException {
-        if (!file.getName().endsWith(".dat")) {
+        boolean compact = file.getName().endsWith(".city");
+        if (!compact && !file.getName().endsWith(".dat")) {
             throw new CityException(CityException.WRONG_FILE_TIPE);
         }
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(file))) {
-            oos.writeObject(this); // Serializa el objeto City
+        File next = new File(file.getPath() + ".tmp");
+        try {
+            materialize(); // Los bloques que falten se leen antes de reemplazar el archivo
+            if (compact) {
+                CitySnapshot.write(this, next);
+            } else {
+                try (ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(next)))) {
+                    oos.writeObject(this); // Serializa el objeto City
+                }
+            }
+            Files.move(next.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
         } catch (Exception e) {
+            next.delete();
             throw new CityException(CityException.SAVE_ERROR + e.getMessage());
         }
     }
@@ -231,19 +1535,17 @@ public class City implements Serializable {
                         int c = Integer.parseInt(parts[2]);
 
                         // Verifica que las coordenadas estén dentro de los límites
-                        if (r >= 0 && r < SIZE && c >= 0 && c < SIZE) {
+                        if (inLocations(r, c)) {
+                            // Busca la fábrica del tipo en el registro
+                            ItemTypes.Factory factory = ItemTypes.factory(className);
+                            if (factory == null) {
+                                throw new CityException(CityException.LINE_ERROR + "Clase no encontrada '" + className + "'.");
+                            }
                             try {
-                                // Usa reflexión para crear una instancia de la clase
-                                Class<?> itemClass = Class.forName("domain." + className);
-                                Constructor<?> constructor = itemClass.getDeclaredConstructor(City.class, int.class, int.class);
-                                Item item = (Item) constructor.newInstance(this, r, c);
+                                Item item = factory.create(this, r, c);
 
-                                locations[r][c] = item;
-                            } catch (ClassNotFoundException e) {
-                                throw new CityException(CityException.LINE_ERROR + "Clase no encontrada '" + className + "'.");
-                            } catch (NoSuchMethodException e) {
-                                throw new CityException(CityException.LINE_ERROR + "Constructor no encontrado para la clase '" + className + "'.");
-                            } catch (Exception e) {
+                                setItem(r, c, item);
+                            } catch (RuntimeException e) {
                                 throw new CityException(CityException.LINE_ERROR + "No se pudo crear una instancia de la clase '" + className + "' - " + e.getMessage());
                             }
                         } else {
@@ -277,10 +1579,8 @@ public class City implements Serializable {
                     int c = Integer.parseInt(parts[2]);
 
                     // Crear el ítem y colocarlo en la ciudad
-                    Class<?> itemClass = Class.forName("domain." + className);
-                    Constructor<?> constructor = itemClass.getDeclaredConstructor(City.class, int.class, int.class);
-                    Item item = (Item) constructor.newInstance(this, r, c);
-                    locations[r][c] = item;
+                    Item item = ItemTypes.create(ItemTypes.idOf(className), this, r, c);
+                    setItem(r, c, item);
                 }
             }
         } catch (Exception e) { // Captura cualquier excepción
@@ -288,6 +1588,13 @@ public class City implements Serializable {
         }
     }
 
+    /**
+     * Importa ítems desde un archivo de texto con una línea "Clase fila columna" por ítem.
+     * El archivo se lee por bloques y se analiza byte a byte (ver PlacementReader); puede estar comprimido con gzip.
+     *
+     * @param file El archivo a importar.
+     * @throws CityException si el archivo es nulo o vacío, no se puede leer, o alguna línea no es válida.
+     */
     public void importData(File file) throws CityException {
         if (file == null) {
             throw new CityException("El archivo no puede ser nulo.");
@@ -297,51 +1604,55 @@ public class City implements Serializable {
             throw new CityException("El archivo está vacío.");
         }
 
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-            String line;
-            int lineNumber = 0; // Contador de líneas
-            while ((line = reader.readLine()) != null) {
-                lineNumber++; // Incrementa el número de línea
-                line = line.trim(); // Elimina espacios en blanco al inicio y al final
-                if (line.isEmpty()) {
-                    continue; // Ignora líneas vacías
-                }
-                String[] parts = line.split("\\s+"); // Divide la línea por espacios
-                if (parts.length == 3) {
-                    String className = parts[0];
-                    try {
-                        int r = Integer.parseInt(parts[1]);
-                        int c = Integer.parseInt(parts[2]);
-    
-                        // Verifica que las coordenadas estén dentro de los límites
-                        if (r >= 0 && r < SIZE && c >= 0 && c < SIZE) {
-                            try {
-                                // Usa reflexión para crear una instancia de la clase
-                                Class<?> itemClass = Class.forName("domain." + className);
-                                Constructor<?> constructor = itemClass.getDeclaredConstructor(City.class, int.class, int.class);
-                                Item item = (Item) constructor.newInstance(this, r, c);
-    
-                                locations[r][c] = item;
-                            } catch (ClassNotFoundException e) {
-                                throw new CityException("Error en la línea " + lineNumber + ": Clase no encontrada '" + className + "'.");
-                            } catch (NoSuchMethodException e) {
-                                throw new CityException("Error en la línea " + lineNumber + ": Constructor no encontrado para la clase '" + className + "'.");
-                            } catch (Exception e) {
-                                throw new CityException("Error en la línea " + lineNumber + ": No se pudo crear una instancia de la clase '" + className + "' - " + e.getMessage());
-                            }
-                        } else {
-                            throw new CityException("Error en la línea " + lineNumber + ": Coordenadas fuera de los límites (r=" + r + ", c=" + c + ").");
-                        }
-                    } catch (NumberFormatException e) {
-                        throw new CityException("Error en la línea " + lineNumber + ": Formato de número inválido en '" + parts[1] + "' o '" + parts[2] + "'.");
-                    }
-                } else {
-                    throw new CityException("Error en la línea " + lineNumber + ": Formato de línea inválido. Se esperaban 3 elementos, pero se encontraron " + parts.length + ".");
-                }
-            }
-        } catch (IOException e) {
-            throw new CityException("Error al leer el archivo: " + e.getMessage());
+        PlacementReader.read(this, file);
+    }
+
+    /**
+     * Importa ítems como importData(), analizando el archivo en paralelo con los hilos de setPool().
+     * El archivo se parte en trozos que empiezan al comienzo de una línea; los ítems se crean en el orden del archivo
+     * y los errores se informan igual que en importData(). Los archivos gzip, o con un solo hilo, se importan de forma secuencial.
+     *
+     * @param file El archivo a importar.
+     * @throws CityException si el archivo es nulo o vacío, no se puede leer, o alguna línea no es válida.
+     */
+    public void importParallel(File file) throws CityException {
+        if (file == null) {
+            throw new CityException("El archivo no puede ser nulo.");
+        }
+        if (file.length() == 0) {
+            throw new CityException("El archivo está vacío.");
+        }
+        PlacementShards.importParallel(this, file, workers());
+    }
+
+    /**
+     * Importa una ciudad exportada con exportShards(), analizando todas sus bandas en paralelo.
+     *
+     * @param manifest El manifiesto de las bandas.
+     * @throws CityException si el manifiesto no es válido, no se puede leer algún archivo o alguna línea no es válida.
+     *         Los errores de línea llevan delante el nombre de la banda.
+     */
+    public void importShards(File manifest) throws CityException {
+        if (manifest == null) {
+            throw new CityException("El archivo no puede ser nulo.");
+        }
+        PlacementShards.importShards(this, manifest, workers());
+    }
+
+    /**
+     * Exporta la ciudad en <b>shards</b> archivos, uno por banda de filas, escritos en paralelo,
+     * y un manifiesto que los enumera (ver PlacementShards).
+     *
+     * @param manifest El manifiesto; las bandas se escriben en su carpeta.
+     * @param shards   El número de bandas.
+     * @throws CityException si no se puede escribir algún archivo.
+     * @throws IllegalArgumentException si el número de bandas no es positivo.
+     */
+    public void exportShards(File manifest, int shards) throws CityException {
+        if (manifest == null) {
+            throw new CityException("El archivo no puede ser nulo.");
         }
+        PlacementShards.exportShards(this, manifest, shards, workers());
     }
 
     
@@ -351,37 +1662,91 @@ public class City implements Serializable {
         throw new CityException(CityException.OPTION_IN_CONSTRUCTION, "Exportar", file.getName());
     }
 
+    /**
+     * Exporta los ítems de la ciudad a un archivo de texto con una línea "Clase fila columna" por ítem.
+     * Equivale a exportData(file, false).
+     *
+     * @param file El archivo; si su nombre termina en ".gz" se comprime con gzip.
+     * @throws CityException si el archivo es nulo o no se puede escribir.
+     */
     public void exportData(File file) throws CityException {
+        exportData(file, false);
+    }
+
+    /**
+     * Exporta los ítems de la ciudad a un archivo de texto que importData() puede leer.
+     *
+     * @param file      El archivo; si su nombre termina en ".gz" se comprime con gzip.
+     * @param runLength true para escribir cada tramo de ítems iguales de una fila en una línea "Clase fila columna xN".
+     * @throws CityException si el archivo es nulo o no se puede escribir.
+     */
+    public void exportData(File file, boolean runLength) throws CityException {
         if (file == null) {
             throw new CityException("El archivo no puede ser nulo.");
         }
 
-        try (FileWriter writer = new FileWriter(file)) {
-            for (int r = 0; r < SIZE; r++) {
-                for (int c = 0; c < SIZE; c++) {
-                    Item item = locations[r][c];
-                    if (item != null) {
-                        writer.write(item.getClass().getSimpleName() + " " + r + " " + c + "\n");
-                    }
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            if (file.getName().endsWith(".gz")) {
+                try (GZIPOutputStream gzip = new GZIPOutputStream(out, 1 << 16)) {
+                    writePlacements(Channels.newChannel(gzip), runLength);
                 }
+            } else {
+                writePlacements(out.getChannel(), runLength);
             }
         } catch (IOException e) {
             throw new CityException("Error al exportar la ciudad: " + e.getMessage());
         }
     }
 
+    /**
+     * Exporta los ítems de la ciudad a un flujo, en el formato de exportData(File, boolean).
+     *
+     * @param out       El flujo; no se cierra.
+     * @param runLength true para escribir tramos "xN".
+     * @throws CityException si no se puede escribir en el flujo.
+     */
+    public void exportData(OutputStream out, boolean runLength) throws CityException {
+        if (out == null) {
+            throw new CityException("El flujo no puede ser nulo.");
+        }
+        try {
+            writePlacements(Channels.newChannel(out), runLength);
+            out.flush();
+        } catch (IOException e) {
+            throw new CityException("Error al exportar la ciudad: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Exporta los ítems de la ciudad a un canal, en el formato de exportData(File, boolean).
+     *
+     * @param channel   El canal; no se cierra.
+     * @param runLength true para escribir tramos "xN".
+     * @throws CityException si no se puede escribir en el canal.
+     */
+    public void exportData(WritableByteChannel channel, boolean runLength) throws CityException {
+        if (channel == null) {
+            throw new CityException("El canal no puede ser nulo.");
+        }
+        try {
+            writePlacements(channel, runLength);
+        } catch (IOException e) {
+            throw new CityException("Error al exportar la ciudad: " + e.getMessage());
+        }
+    }
+
+    // Escribe todos los ítems en el canal (ver PlacementWriter)
+    private void writePlacements(WritableByteChannel channel, boolean runLength) throws IOException {
+        PlacementWriter writer = new PlacementWriter(channel, runLength);
+        writer.write(this, 0, height);
+        writer.flush();
+    }
+
     public void exportData01(File file) throws CityException {
         try {
-            FileWriter writer = new FileWriter(file);
-            for (int r = 0; r < SIZE; r++) {
-                for (int c = 0; c < SIZE; c++) {
-                    Item item = locations[r][c];
-                    if (item != null) {
-                        writer.write(item.getClass().getSimpleName() + " " + r + " " + c + "\n");
-                    }
-                }
-            }
-            writer.close();
+            FileOutputStream out = new FileOutputStream(file);
+            writePlacements(out.getChannel(), false);
+            out.close();
         } catch (Exception e) { // Captura cualquier excepción
             throw new CityException(CityException.EXPORT_ERROR); // Mensaje de error general
         }
@@ -389,20 +1754,12 @@ public class City implements Serializable {
 
     public void exportData02(File file) throws CityException {
         try {
-            FileWriter writer = new FileWriter(file);
-            for (int r = 0; r < SIZE; r++) {
-                for (int c = 0; c < SIZE; c++) {
-                    Item item = locations[r][c];
-                    if (item != null) {
-                        writer.write(item.getClass().getSimpleName() + " " + r + " " + c + "\n");
-                    }
-                }
-            }
-            writer.close();
+            FileOutputStream out = new FileOutputStream(file);
+            writePlacements(out.getChannel(), false);
+            out.close();
         } catch (Exception e) { // Captura cualquier excepción
             throw new CityException("Error al exportar la ciudad."); // Mensaje de error general
         }
     }
 
-
 }
\ No newline at end of file
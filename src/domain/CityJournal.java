@@ -0,0 +1,633 @@
+package domain;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Bitácora de cambios de una ciudad para guardar su avance sin reescribirla completa.
+ * Parte de una copia completa (.city) y, turno a turno, agrega al final de un archivo solo las celdas que
+ * cambiaron: ítems movidos, celdas vaciadas e ítems nuevos o con otro estado. Si el programa se detiene,
+ * recover() abre la copia completa y le aplica la bitácora.
+ * <p>
+ * Solo se revisan las celdas que la ciudad informa como posiblemente cambiadas (changed(): las de setItem, touch()
+ * y los ítems evaluados en cada turno), así que el costo de un turno en la bitácora es proporcional al del turno
+ * y no al número de ítems. Cambiar el estado de un ítem por otro camino fuera de un turno no se registra.
+ * La última imagen escrita de cada celda se guarda por bloques de 64x64 celdas que se crean con su primer ítem.
+ * </p>
+ * <p>
+ * Cada ítem evaluado avanza una vez por turno, así que lo que cambia solo por avanzar se guarda de modo que no varíe
+ * de un turno a otro y se deduce de los turnos jugados al recuperar: los pasos de los agentes y el contador de los
+ * postes de luz, relativos al número de turnos; el color de los semáforos, relativo a los turnos (o, en los postes, a
+ * los cambios de su contador); el estado de las personas comunes, como "el que corresponde a sus pasos" mientras lo
+ * sea; y la fila deseada de los caminantes, relativa a su fila. Así solo se registran las ubicaciones y los cambios de
+ * estado reales. Las personas Schelling no cuentan pasos, así que los suyos se guardan tal cual; los únicos ítems que
+ * la planificación por celdas sucias deja sin evaluar son personas Schelling que no cambiarían, así que tampoco
+ * necesitan registros.
+ * </p>
+ * <p>
+ * Los cambios se acumulan en memoria y se escriben juntos cada cierto número de turnos (commit de grupo): cada grupo
+ * es un marco con su longitud y su CRC32, escrito y sincronizado con el disco de una vez. Un marco incompleto al final
+ * del archivo se descarta al recuperar.
+ * </p>
+ * <p>
+ * Registros de un marco: TICK (turnos jugados al terminar un turno), CLEAR (celda vaciada), SET (celda con un ítem
+ * nuevo o cambiado: tipo, banderas, estado, pasos relativos y fila deseada relativa de los caminantes o color relativo
+ * de los semáforos, los dos últimos en zigzag) y MOVE (ítem movido de una celda a otra). La versión 2 es la de estos
+ * valores relativos.
+ * </p>
+ */
+public class CityJournal implements AutoCloseable {
+    // Identificación y versión del archivo
+    private static final int MAGIC = 0x434a4e4c; // "CJNL"
+    private static final byte VERSION = 2;
+    private static final int HEADER = 21;
+
+    // Tipos de registro
+    private static final byte TICK = 0, CLEAR = 1, SET = 2, MOVE = 3;
+
+    // Bandera de la imagen de una persona común cuyo estado es el que corresponde a sus pasos (ver expectedState())
+    private static final byte DERIVED_STATE = 4;
+
+    // Tamaño a partir del cual se escribe el grupo aunque no haya completado sus turnos
+    private static final int MAX_GROUP_BYTES = 1 << 20;
+
+    private final City city;
+    private final File snapshot;
+    private final FileChannel channel;
+    private final int groupTicks;
+    private final int width;
+
+    // Última imagen escrita de cada celda
+    private final Images images;
+
+    // Celdas por revisar en el próximo turno escrito
+    private final ChangedCells candidates;
+
+    // Registros del grupo en curso y turnos que contiene
+    private ByteBuffer group = ByteBuffer.allocate(1 << 12);
+    private int pendingTicks;
+
+    /**
+     * Crea la bitácora sobre el estado actual de la ciudad.
+     */
+    private CityJournal(City city, File snapshot, File journal, int groupTicks) throws IOException {
+        this.city = city;
+        this.snapshot = snapshot;
+        this.groupTicks = groupTicks;
+        width = city.getWidth();
+        images = new Images(city.getHeight(), width);
+        candidates = new ChangedCells(city.getHeight() * width);
+        for (int cell = city.nextOccupied(0); cell >= 0; cell = city.nextOccupied(cell + 1)) {
+            capture(cell, city.getItem(cell / width, cell % width));
+        }
+        channel = FileChannel.open(journal.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ);
+        truncate();
+    }
+
+    /**
+     * Guarda una copia completa de la ciudad y empieza una bitácora vacía sobre ella.
+     * Desde ese momento cada turno de la ciudad se registra en la bitácora.
+     *
+     * @param city       La ciudad.
+     * @param snapshot   El archivo .city de la copia completa.
+     * @param journal    El archivo de la bitácora.
+     * @param groupTicks El número de turnos que se escriben juntos en disco.
+     * @return La bitácora, asociada a la ciudad.
+     * @throws CityException si no se pueden escribir los archivos.
+     * @throws IllegalArgumentException si groupTicks no es positivo o la ciudad ya tiene una bitácora.
+     */
+    public static CityJournal start(City city, File snapshot, File journal, int groupTicks) throws CityException {
+        if (groupTicks <= 0) {
+            throw new IllegalArgumentException("Número de turnos por grupo inválido: " + groupTicks);
+        }
+        if (city.getJournal() != null) {
+            throw new IllegalArgumentException("La ciudad ya tiene una bitácora");
+        }
+        city.save(snapshot);
+        try {
+            CityJournal result = new CityJournal(city, snapshot, journal, groupTicks);
+            city.setJournal(result);
+            return result;
+        } catch (IOException | IllegalArgumentException e) {
+            throw new CityException(CityException.SAVE_ERROR + e.getMessage());
+        }
+    }
+
+    /**
+     * Recupera una ciudad a partir de su copia completa y de su bitácora.
+     * Se aplican los grupos completos de la bitácora; un grupo incompleto o dañado al final se descarta.
+     *
+     * @param snapshot El archivo .city de la copia completa.
+     * @param journal  El archivo de la bitácora (si no existe, se devuelve la copia completa).
+     * @return La ciudad con los cambios registrados.
+     * @throws CityException si no se puede leer la copia, o la bitácora no corresponde a ella.
+     */
+    public static City recover(File snapshot, File journal) throws CityException {
+        City base = City.open(snapshot);
+        if (!journal.exists()) {
+            return base;
+        }
+        try (FileChannel in = FileChannel.open(journal.toPath(), StandardOpenOption.READ)) {
+            // Se lee un marco a la vez, así que el tamaño de la bitácora no está limitado por la memoria
+            ByteBuffer header = ByteBuffer.allocate(HEADER);
+            read(in, header);
+            if (header.remaining() < HEADER || header.getInt() != MAGIC || header.get() != VERSION) {
+                throw new IOException("el archivo no es una bitácora");
+            }
+            long baseTicks = header.getLong();
+            if (header.getInt() != base.getHeight() || header.getInt() != base.getWidth()) {
+                throw new IOException("la bitácora es de otra ciudad");
+            }
+            if (baseTicks < base.getTicks()) {
+                return base; // La copia completa es posterior a la bitácora (checkpoint interrumpido)
+            }
+            if (baseTicks != base.getTicks()) {
+                throw new IOException("la bitácora no corresponde a la copia completa");
+            }
+            CityJournal images = new CityJournal(base);
+            long ticks = base.getTicks();
+            CRC32 crc = new CRC32();
+            ByteBuffer head = ByteBuffer.allocate(8);
+            while (true) {
+                head.clear();
+                if (read(in, head) < 8) {
+                    break; // Sin más marcos, o cabecera de marco incompleta
+                }
+                int length = head.getInt();
+                int checksum = head.getInt();
+                if (length < 0 || length > in.size() - in.position()) {
+                    break; // Grupo incompleto
+                }
+                ByteBuffer frame = ByteBuffer.allocate(length);
+                read(in, frame);
+                crc.reset();
+                crc.update(frame.duplicate());
+                if ((int) crc.getValue() != checksum) {
+                    break; // Grupo dañado
+                }
+                ticks = images.replay(frame, ticks);
+            }
+            return images.rebuild(base, ticks);
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+            throw new CityException(CityException.OPEN_ERROR + e.getMessage());
+        }
+    }
+
+    // Llena el búfer desde la posición actual del canal, hasta el final del archivo; lo deja listo para leer
+    private static int read(FileChannel in, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining() && in.read(buffer) >= 0) {
+            // Sigue leyendo
+        }
+        buffer.flip();
+        return buffer.remaining();
+    }
+
+    // Imágenes de las celdas de una ciudad, sin archivo, para recuperarla
+    private CityJournal(City city) {
+        this.city = city;
+        snapshot = null;
+        channel = null;
+        groupTicks = 0;
+        width = city.getWidth();
+        images = new Images(city.getHeight(), width);
+        candidates = null;
+        for (int cell = city.nextOccupied(0); cell >= 0; cell = city.nextOccupied(cell + 1)) {
+            capture(cell, city.getItem(cell / width, cell % width));
+        }
+    }
+
+    /**
+     * Escribe en disco los cambios pendientes, incluidos los hechos fuera de un turno.
+     *
+     * @throws CityException si no se puede escribir la bitácora.
+     */
+    public void commit() throws CityException {
+        try {
+            diff();
+            writeGroup();
+        } catch (IOException e) {
+            throw new CityException(CityException.SAVE_ERROR + e.getMessage());
+        }
+    }
+
+    /**
+     * Reemplaza la copia completa por el estado actual de la ciudad y vacía la bitácora.
+     * La copia nueva se escribe aparte y luego reemplaza a la anterior (ver City.save()), de modo que siempre hay
+     * una copia válida.
+     *
+     * @throws CityException si no se pueden escribir los archivos.
+     */
+    public void checkpoint() throws CityException {
+        commit();
+        city.save(snapshot);
+        try {
+            truncate();
+        } catch (IOException e) {
+            throw new CityException(CityException.SAVE_ERROR + e.getMessage());
+        }
+    }
+
+    /**
+     * Escribe los cambios pendientes, cierra la bitácora y la separa de la ciudad.
+     *
+     * @throws CityException si no se puede escribir la bitácora.
+     */
+    @Override
+    public void close() throws CityException {
+        try {
+            commit();
+        } finally {
+            city.setJournal(null);
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new CityException(CityException.SAVE_ERROR + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Registra que la celda puede haber cambiado: se coloca o se quita un ítem, otro ítem le cambia el estado o
+     * su ítem se evalúa en un turno (lo llama City, también desde varios hilos durante un turno PARALLEL).
+     */
+    void changed(int cell) {
+        candidates.mark(cell);
+    }
+
+    /**
+     * Registra que el ítem de la celda <b>from</b> se movió a la celda vacía <b>to</b> (lo llama City antes de moverlo).
+     */
+    void moved(int from, int to) {
+        ensureGroup(12);
+        group.put(MOVE);
+        CitySnapshot.putVarint(group, from);
+        CitySnapshot.putVarint(group, to);
+        images.move(from, to);
+    }
+
+    /**
+     * Registra el final de un turno y escribe el grupo si ya completó sus turnos (lo llama City.run).
+     *
+     * @throws UncheckedIOException si no se puede escribir la bitácora.
+     */
+    void ticked() {
+        diff();
+        ensureGroup(10);
+        group.put(TICK);
+        putVarlong(group, city.getTicks());
+        if (++pendingTicks >= groupTicks || group.position() >= MAX_GROUP_BYTES) {
+            try {
+                writeGroup();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    // Agrega al grupo las celdas vaciadas y los ítems nuevos o cambiados, revisando solo las celdas candidatas
+    private void diff() {
+        for (int cell = candidates.next(0); cell >= 0; cell = candidates.next(cell + 1)) {
+            int r = cell / width, c = cell % width;
+            if (city.isEmpty(r, c)) {
+                if (images.type(cell) != PackedSimulator.EMPTY) {
+                    images.clear(cell);
+                    ensureGroup(6);
+                    group.put(CLEAR);
+                    CitySnapshot.putVarint(group, cell);
+                }
+            } else if (capture(cell, city.getItem(r, c))) {
+                ensureGroup(24);
+                group.put(SET);
+                CitySnapshot.putVarint(group, cell);
+                group.put(images.type(cell));
+                group.put(images.flag(cell));
+                group.put((byte) images.state(cell));
+                CitySnapshot.putVarint(group, zigzag(images.steps(cell)));
+                CitySnapshot.putVarint(group, zigzag(images.aux(cell)));
+            }
+        }
+        candidates.clear();
+    }
+
+    // Guarda la imagen de un ítem, con lo que cambia al avanzar relativo a los turnos jugados; indica si cambió
+    private boolean capture(int cell, Item item) {
+        byte type = PackedSimulator.typeOf(item);
+        int ticks = (int) city.getTicks();
+        if (item instanceof Person) {
+            Person person = (Person) item;
+            byte flag = person.wasMadeHappy ? PackedSimulator.MADE_HAPPY : 0;
+            if (type == PackedSimulator.SCHELLING && ((SchellingPerson) person).getRelocation() == SchellingPerson.ANYWHERE) {
+                flag |= CitySnapshot.RELOCATE_ANYWHERE;
+            }
+            char state = person.state;
+            if (type == PackedSimulator.PERSON) {
+                // Se conserva la forma de la imagen anterior mientras siga siendo válida: una persona que sigue feliz
+                // por un Cheerful no alterna entre estado propio y deducido
+                boolean literal = images.type(cell) == type && (images.flag(cell) & DERIVED_STATE) == 0
+                                  && images.state(cell) == state;
+                if (!literal && state == expectedState(person.getSteps())) {
+                    flag |= DERIVED_STATE;
+                    state = 0;
+                }
+            }
+            int steps = (type == PackedSimulator.SCHELLING) ? person.getSteps() : person.getSteps() - ticks;
+            int desiredRow = (type == PackedSimulator.WALKER) ? cell / width - ((Walker) person).desiredRow : 0;
+            return images.set(cell, type, flag, state, steps, desiredRow);
+        }
+        TrafficLight light = (TrafficLight) item;
+        if (type == PackedSimulator.STREET_LIGHT) {
+            int counter = ((StreetLight) light).turnCounter;
+            int color = Math.floorMod(light.colorIndex - Math.floorDiv(counter, 3), StreetLight.COLORS.length);
+            return images.set(cell, type, (byte) 0, (char) 0, counter - ticks, color);
+        }
+        int color = Math.floorMod(light.colorIndex - ticks, TrafficLight.COLORS.length);
+        return images.set(cell, type, (byte) 0, (char) 0, 0, color);
+    }
+
+    // Estado de una persona común después de un turno sin Cheerful cerca, según sus pasos (ver Person.decide())
+    private static char expectedState(int steps) {
+        int phase = Math.floorMod(steps - 1, 3);
+        return (phase == 0) ? Agent.HAPPY : (phase == 1) ? Agent.INDIFFERENT : Agent.DISSATISFIED;
+    }
+
+    // Codifica un int con signo para que los valores cercanos a cero ocupen pocos bytes como varint
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    // Decodifica un int codificado con zigzag()
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    // Aplica a las imágenes los registros de un grupo y devuelve los turnos jugados al final
+    private long replay(ByteBuffer frame, long ticks) throws IOException {
+        while (frame.hasRemaining()) {
+            byte record = frame.get();
+            switch (record) {
+                case TICK:
+                    ticks = getVarlong(frame);
+                    break;
+                case CLEAR:
+                    images.clear(cell(frame));
+                    break;
+                case MOVE:
+                    int from = cell(frame);
+                    images.move(from, cell(frame));
+                    break;
+                case SET:
+                    int cell = cell(frame);
+                    byte type = frame.get(), flag = frame.get();
+                    char state = (char) (frame.get() & 0xff);
+                    int step = unzigzag(CitySnapshot.getVarint(frame)), extra = unzigzag(CitySnapshot.getVarint(frame));
+                    if (type < PackedSimulator.PERSON || type > PackedSimulator.STREET_LIGHT) {
+                        throw new IOException("tipo de ítem desconocido en la bitácora");
+                    }
+                    int colors = (type == PackedSimulator.TRAFFIC_LIGHT) ? TrafficLight.COLORS.length
+                               : (type == PackedSimulator.STREET_LIGHT) ? StreetLight.COLORS.length : 0;
+                    if (colors > 0 && (extra < 0 || extra >= colors)) {
+                        throw new IOException("color inválido en la bitácora");
+                    }
+                    images.set(cell, type, flag, state, step, extra);
+                    break;
+                default:
+                    throw new IOException("registro desconocido en la bitácora: " + record);
+            }
+        }
+        return ticks;
+    }
+
+    // Lee un índice de celda y verifica que esté dentro de la ciudad
+    private int cell(ByteBuffer frame) throws IOException {
+        int cell = CitySnapshot.getVarint(frame);
+        if (cell < 0 || cell >= images.cells) {
+            throw new IOException("celda fuera de la ciudad en la bitácora");
+        }
+        return cell;
+    }
+
+    // Construye la ciudad recuperada a partir de las imágenes, con la configuración de la copia completa
+    private City rebuild(City base, long ticks) {
+        City result = base.isChunked() ? City.chunked(base.getHeight(), width) : new City(base.getHeight(), width);
+        result.setTopology(base.getTopology());
+        result.setNeighborhoodRadius(base.getNeighborhoodRadius());
+        for (int cell = images.next(0); cell >= 0; cell = images.next(cell + 1)) {
+            byte type = images.type(cell), flag = images.flag(cell);
+            int steps = images.steps(cell) + ((type == PackedSimulator.SCHELLING) ? 0 : (int) ticks);
+            char state = ((flag & DERIVED_STATE) != 0) ? expectedState(steps) : images.state(cell);
+            int aux = images.aux(cell);
+            if (type == PackedSimulator.WALKER) {
+                aux = cell / width - aux;
+            } else if (type == PackedSimulator.TRAFFIC_LIGHT) {
+                aux = Math.floorMod(aux + (int) ticks, TrafficLight.COLORS.length);
+            } else if (type == PackedSimulator.STREET_LIGHT) {
+                aux = Math.floorMod(aux + Math.floorDiv(steps, 3), StreetLight.COLORS.length);
+            }
+            Item item = PackedSimulator.create(result, cell / width, cell % width, type, state, steps, aux, flag);
+            if ((flag & CitySnapshot.RELOCATE_ANYWHERE) != 0 && item instanceof SchellingPerson) {
+                ((SchellingPerson) item).setRelocation(SchellingPerson.ANYWHERE);
+            }
+        }
+        result.setTickMode(base.getTickMode());
+        result.setSeed(base.getSeed());
+        result.setTicks(ticks);
+        if (base.isVacancyIndexing()) {
+            result.setVacancyIndexing(true);
+        }
+        if (base.isNeighborCounting()) {
+            result.setNeighborCounting(true);
+        }
+        if (base.isDirtyScheduling()) {
+            result.setDirtyScheduling(true);
+        }
+        return result;
+    }
+
+    // Escribe el grupo en curso como un marco y lo sincroniza con el disco
+    private void writeGroup() throws IOException {
+        if (group.position() == 0) {
+            return;
+        }
+        group.flip();
+        CRC32 crc = new CRC32();
+        crc.update(group.duplicate());
+        ByteBuffer head = ByteBuffer.allocate(8);
+        head.putInt(group.remaining());
+        head.putInt((int) crc.getValue());
+        head.flip();
+        ByteBuffer[] frame = {head, group};
+        while (group.hasRemaining()) {
+            channel.write(frame);
+        }
+        channel.force(false);
+        group.clear();
+        pendingTicks = 0;
+    }
+
+    // Deja la bitácora vacía, con una cabecera que apunta a la copia completa actual
+    private void truncate() throws IOException {
+        channel.truncate(0);
+        ByteBuffer header = ByteBuffer.allocate(HEADER);
+        header.putInt(MAGIC);
+        header.put(VERSION);
+        header.putLong(city.getTicks());
+        header.putInt(city.getHeight());
+        header.putInt(width);
+        header.flip();
+        channel.write(header, 0);
+        channel.position(HEADER);
+        channel.force(true);
+    }
+
+    // Asegura espacio en el grupo para un registro
+    private void ensureGroup(int bytes) {
+        if (group.remaining() < bytes) {
+            group = ByteBuffer.allocate(2 * group.capacity()).put(group.flip());
+        }
+    }
+
+    // Escribe un long sin signo en 7 bits por byte
+    private static void putVarlong(ByteBuffer buffer, long value) {
+        while ((value & ~0x7fL) != 0) {
+            buffer.put((byte) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    // Lee un long escrito con putVarlong
+    private static long getVarlong(ByteBuffer buffer) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7f) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("entero mal codificado");
+    }
+
+    /**
+     * Última imagen escrita de cada celda, por bloques de 64x64 celdas que se crean con su primer ítem:
+     * tipo (EMPTY si está vacía), banderas, estado, pasos (o contador de turnos) y fila deseada de los caminantes
+     * o índice de color de los semáforos, con los valores relativos de los registros SET.
+     */
+    private static final class Images {
+        private static final int SHIFT = CitySnapshot.CHUNK_SHIFT, SIDE = 1 << SHIFT, MASK = SIDE - 1;
+
+        // Imágenes de las celdas de un bloque, en orden de filas dentro del bloque
+        private static final class Chunk {
+            final byte[] types = new byte[SIDE * SIDE];
+            final byte[] flags = new byte[SIDE * SIDE];
+            final char[] states = new char[SIDE * SIDE];
+            final int[] steps = new int[SIDE * SIDE];
+            final int[] aux = new int[SIDE * SIDE];
+        }
+
+        final int cells;
+        private final int width, chunkColumns;
+        private final Chunk[] chunks;
+
+        Images(int height, int width) {
+            this.cells = height * width;
+            this.width = width;
+            chunkColumns = (width + MASK) >>> SHIFT;
+            chunks = new Chunk[((height + MASK) >>> SHIFT) * chunkColumns];
+        }
+
+        // Bloque de la celda, o null si todavía no tiene
+        private Chunk chunk(int cell) {
+            return chunks[((cell / width) >>> SHIFT) * chunkColumns + ((cell % width) >>> SHIFT)];
+        }
+
+        // Posición de la celda dentro de su bloque
+        private int offset(int cell) {
+            return (((cell / width) & MASK) << SHIFT) | ((cell % width) & MASK);
+        }
+
+        byte type(int cell) {
+            Chunk chunk = chunk(cell);
+            return (chunk == null) ? PackedSimulator.EMPTY : chunk.types[offset(cell)];
+        }
+
+        byte flag(int cell) {
+            return chunk(cell).flags[offset(cell)];
+        }
+
+        char state(int cell) {
+            return chunk(cell).states[offset(cell)];
+        }
+
+        int steps(int cell) {
+            return chunk(cell).steps[offset(cell)];
+        }
+
+        int aux(int cell) {
+            return chunk(cell).aux[offset(cell)];
+        }
+
+        // Guarda la imagen de un ítem en la celda; indica si era distinta de la anterior
+        boolean set(int cell, byte type, byte flag, char state, int step, int extra) {
+            int index = ((cell / width) >>> SHIFT) * chunkColumns + ((cell % width) >>> SHIFT);
+            Chunk chunk = chunks[index];
+            if (chunk == null) {
+                chunk = new Chunk();
+                chunks[index] = chunk;
+            }
+            int i = offset(cell);
+            if (chunk.types[i] == type && chunk.flags[i] == flag && chunk.states[i] == state
+                && chunk.steps[i] == step && chunk.aux[i] == extra) {
+                return false;
+            }
+            chunk.types[i] = type;
+            chunk.flags[i] = flag;
+            chunk.states[i] = state;
+            chunk.steps[i] = step;
+            chunk.aux[i] = extra;
+            return true;
+        }
+
+        // Deja la celda vacía
+        void clear(int cell) {
+            Chunk chunk = chunk(cell);
+            if (chunk != null) {
+                chunk.types[offset(cell)] = PackedSimulator.EMPTY;
+            }
+        }
+
+        // Mueve la imagen de una celda a otra
+        void move(int from, int to) {
+            byte type = type(from);
+            if (type == PackedSimulator.EMPTY) {
+                clear(to);
+                return;
+            }
+            Chunk source = chunk(from);
+            int i = offset(from);
+            set(to, type, source.flags[i], source.states[i], source.steps[i], source.aux[i]);
+            source.types[i] = PackedSimulator.EMPTY;
+        }
+
+        // Siguiente celda con un ítem en orden de filas, o -1 si no hay más
+        int next(int cell) {
+            for (; cell < cells; cell++) {
+                Chunk chunk = chunk(cell);
+                if (chunk == null) {
+                    // Salta hasta el siguiente bloque de la fila
+                    int c = cell % width;
+                    cell += Math.min(width, ((c >>> SHIFT) + 1) << SHIFT) - c - 1;
+                } else if (chunk.types[offset(cell)] != PackedSimulator.EMPTY) {
+                    return cell;
+                }
+            }
+            return -1;
+        }
+    }
+}
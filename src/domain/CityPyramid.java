@@ -0,0 +1,295 @@
+package domain;
+
+import java.awt.Color;
+import java.util.Arrays;
+
+/**
+ * Resumen de una ciudad a varias resoluciones, para dibujarla alejada sin recorrer sus ítems.
+ * El nivel 0 son las celdas de la ciudad; cada bloque del nivel L agrupa 2x2 bloques del nivel L - 1, es decir
+ * 2^L x 2^L celdas, hasta un último nivel de un solo bloque.
+ * <p>
+ * De cada bloque se guarda, en un byte cada uno (0 a 255): la fracción de celdas ocupadas, la fracción de celdas
+ * con agentes y la fracción de esos agentes que están felices, además del tipo mayoritario (el de más ocupación
+ * entre los tipos mayoritarios de sus cuatro bloques). El nivel 0 se lee de la ciudad, así que el resumen ocupa
+ * 4 bytes por bloque (en total, algo más de 4/3 de byte por celda), y un bloque se calcula con sus cuatro hijos.
+ * </p>
+ * <p>
+ * Los tipos son los identificadores de ItemTypes entre 1 y OTHER - 1; los demás tipos cuentan como OTHER.
+ * update() incorpora las celdas que la ciudad informa como cambiadas (ver City.setChangeTracking()) marcando sus
+ * bloques del nivel 1 y recalculando los bloques marcados, una vez cada uno. update(int) recalcula como mucho un
+ * número dado de bloques por nivel y deja los demás para la próxima llamada, para que el costo de un cuadro no
+ * dependa de cuántas celdas cambiaron; mientras tanto los niveles superiores pueden estar algo atrasados.
+ * </p>
+ */
+public final class CityPyramid {
+    /**
+     * Tipo de las celdas vacías.
+     */
+    public static final int EMPTY = 0;
+
+    /**
+     * Tipo de los ítems cuyo identificador de ItemTypes no tiene tipo propio en el resumen.
+     */
+    public static final int OTHER = 15;
+
+    private final City city;
+    private final int height, width;
+
+    // Niveles 1 en adelante: filas y columnas de bloques, y los datos de cada bloque en orden de filas
+    private final int[] rows, columns;
+    private final byte[][] occupancy, agents, happiness, majority;
+
+    // Bloques por recalcular de cada nivel, cuántos son y desde qué palabra se sigue buscando
+    private final long[][] dirty;
+    private final int[] dirtyCount, cursor;
+
+    // Color de un ítem de cada tipo (el último visto)
+    private final Color[] colors = new Color[OTHER + 1];
+
+    // Ocupación de cada tipo entre los hijos del bloque que se está calculando
+    private final int[] weights = new int[OTHER + 1];
+
+    /**
+     * Construye el resumen de todos los ítems de una ciudad.
+     *
+     * @param city La ciudad.
+     */
+    public CityPyramid(City city) {
+        this.city = city;
+        this.height = city.getHeight();
+        this.width = city.getWidth();
+        int levels = 1;
+        for (int side = 1; side < Math.max(height, width); side <<= 1) {
+            levels++;
+        }
+        rows = new int[levels];
+        columns = new int[levels];
+        occupancy = new byte[levels][];
+        agents = new byte[levels][];
+        happiness = new byte[levels][];
+        majority = new byte[levels][];
+        dirty = new long[levels][];
+        dirtyCount = new int[levels];
+        cursor = new int[levels];
+        rows[0] = height;
+        columns[0] = width;
+        for (int level = 1; level < levels; level++) {
+            rows[level] = (rows[level - 1] + 1) >>> 1;
+            columns[level] = (columns[level - 1] + 1) >>> 1;
+            int blocks = rows[level] * columns[level];
+            occupancy[level] = new byte[blocks];
+            agents[level] = new byte[blocks];
+            happiness[level] = new byte[blocks];
+            majority[level] = new byte[blocks];
+            dirty[level] = new long[(blocks + 63) >>> 6];
+        }
+        // Los bloques sin ítems ya están en cero
+        for (int cell = city.nextOccupied(0); cell >= 0; cell = city.nextOccupied(cell + 1)) {
+            markCell(cell);
+        }
+        recalculate(Integer.MAX_VALUE);
+    }
+
+    // Tipo del resumen de un ítem (EMPTY si no hay), anotando su color
+    private int typeOf(Item item) {
+        if (item == null) {
+            return EMPTY;
+        }
+        int type = ItemTypes.idOf(item);
+        if (type <= EMPTY || type >= OTHER) {
+            type = OTHER;
+        }
+        colors[type] = item.getColor();
+        return type;
+    }
+
+    /**
+     * Incorpora todas las celdas que cambiaron según City.nextChanged(). No olvida los cambios
+     * (ver City.clearChanges()).
+     */
+    public void update() {
+        update(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Incorpora las celdas que cambiaron según City.nextChanged(), recalculando como mucho <b>budget</b> bloques
+     * de cada nivel; los demás quedan marcados para la próxima llamada. No olvida los cambios
+     * (ver City.clearChanges()).
+     *
+     * @param budget El número máximo de bloques que se recalculan en cada nivel.
+     * @return true si quedaron bloques por recalcular, false si el resumen está al día.
+     */
+    public boolean update(int budget) {
+        for (int cell = city.nextChanged(0); cell >= 0; cell = city.nextChanged(cell + 1)) {
+            markCell(cell);
+        }
+        return recalculate(budget);
+    }
+
+    // Marca para recalcular el bloque del nivel 1 que contiene la celda
+    private void markCell(int cell) {
+        if (rows.length > 1) {
+            mark(1, ((cell / width) >>> 1) * columns[1] + ((cell % width) >>> 1));
+        }
+    }
+
+    // Marca para recalcular un bloque del nivel dado
+    private void mark(int level, int block) {
+        long[] marks = dirty[level];
+        long bit = 1L << block;
+        if ((marks[block >>> 6] & bit) == 0) {
+            marks[block >>> 6] |= bit;
+            dirtyCount[level]++;
+        }
+    }
+
+    // Recalcula hasta budget bloques marcados de cada nivel, de abajo hacia arriba; indica si quedan marcados
+    private boolean recalculate(int budget) {
+        boolean pending = false;
+        for (int level = 1; level < rows.length; level++) {
+            long[] marks = dirty[level];
+            int done = 0;
+            int w = cursor[level];
+            // Sigue desde donde quedó la llamada anterior, para que ningún bloque espere indefinidamente
+            for (int seen = 0; dirtyCount[level] > 0 && done < budget && seen <= marks.length; seen++) {
+                for (long bits = marks[w]; bits != 0 && done < budget; bits &= bits - 1) {
+                    int block = (w << 6) + Long.numberOfTrailingZeros(bits);
+                    marks[w] &= ~(1L << block);
+                    dirtyCount[level]--;
+                    done++;
+                    if (combine(level, block) && level + 1 < rows.length) {
+                        mark(level + 1, ((block / columns[level]) >>> 1) * columns[level + 1]
+                                        + ((block % columns[level]) >>> 1));
+                    }
+                }
+                if (marks[w] != 0) {
+                    break; // Se acabó el presupuesto en esta palabra
+                }
+                w = (w + 1 == marks.length) ? 0 : w + 1;
+            }
+            cursor[level] = w;
+            pending |= dirtyCount[level] > 0;
+        }
+        return pending;
+    }
+
+    // Recalcula un bloque del nivel dado a partir de sus hijos; indica si cambió
+    private boolean combine(int level, int block) {
+        int br = block / columns[level], bc = block % columns[level];
+        int children = 0, occupied = 0, agentSum = 0, happySum = 0;
+        Arrays.fill(weights, 0);
+        for (int i = 0; i < 2; i++) {
+            for (int j = 0; j < 2; j++) {
+                int r = 2 * br + i, c = 2 * bc + j;
+                if (r >= rows[level - 1] || c >= columns[level - 1]) {
+                    continue;
+                }
+                children++;
+                if (level == 1) {
+                    int cell = r * width + c;
+                    if (city.nextOccupied(cell) != cell) {
+                        continue; // Vacía: no se lee el ítem, por si la ciudad está proyectada
+                    }
+                    Item item = city.getItem(r, c);
+                    occupied += 255;
+                    weights[typeOf(item)] += 255;
+                    if (item.isAgent()) {
+                        agentSum += 255;
+                        happySum += ((Agent) item).isHappy() ? 255 * 255 : 0;
+                    }
+                    continue;
+                }
+                int child = r * columns[level - 1] + c;
+                int occ = occupancy[level - 1][child] & 0xff, a = agents[level - 1][child] & 0xff;
+                occupied += occ;
+                agentSum += a;
+                happySum += (happiness[level - 1][child] & 0xff) * a;
+                weights[majority[level - 1][child]] += occ;
+            }
+        }
+        int type = EMPTY;
+        for (int t = 1; t <= OTHER; t++) {
+            if (weights[t] > weights[type]) {
+                type = t;
+            }
+        }
+        byte newOccupancy = (byte) ((occupied + children / 2) / children);
+        byte newAgents = (byte) ((agentSum + children / 2) / children);
+        byte newHappiness = (byte) ((agentSum == 0) ? 0 : (happySum + agentSum / 2) / agentSum);
+        boolean changed = newOccupancy != occupancy[level][block] || newAgents != agents[level][block]
+                          || newHappiness != happiness[level][block] || type != majority[level][block];
+        occupancy[level][block] = newOccupancy;
+        agents[level][block] = newAgents;
+        happiness[level][block] = newHappiness;
+        majority[level][block] = (byte) type;
+        return changed;
+    }
+
+    /**
+     * Devuelve el número de niveles, incluido el nivel 0 de las celdas.
+     */
+    public int levels() {
+        return rows.length;
+    }
+
+    /**
+     * Devuelve el número de filas de bloques del nivel dado.
+     */
+    public int rows(int level) {
+        return rows[level];
+    }
+
+    /**
+     * Devuelve el número de columnas de bloques del nivel dado.
+     */
+    public int columns(int level) {
+        return columns[level];
+    }
+
+    /**
+     * Devuelve la fracción de celdas ocupadas del bloque (br, bc) del nivel dado.
+     *
+     * @return Un valor entre 0 y 1.
+     */
+    public double occupancy(int level, int br, int bc) {
+        if (level == 0) {
+            return (city.nextOccupied(br * width + bc) == br * width + bc) ? 1 : 0;
+        }
+        return (occupancy[level][br * columns[level] + bc] & 0xff) / 255.0;
+    }
+
+    /**
+     * Devuelve la fracción de agentes felices del bloque (br, bc) del nivel dado.
+     *
+     * @return Un valor entre 0 y 1, o -1 si el bloque no tiene agentes.
+     */
+    public double happiness(int level, int br, int bc) {
+        if (level == 0) {
+            Item item = (occupancy(0, br, bc) > 0) ? city.getItem(br, bc) : null;
+            return (item == null || !item.isAgent()) ? -1 : ((Agent) item).isHappy() ? 1 : 0;
+        }
+        int block = br * columns[level] + bc;
+        return (agents[level][block] == 0) ? -1 : (happiness[level][block] & 0xff) / 255.0;
+    }
+
+    /**
+     * Devuelve el tipo mayoritario del bloque (br, bc) del nivel dado.
+     *
+     * @return El tipo (un identificador de ItemTypes, OTHER), o EMPTY si el bloque está vacío.
+     */
+    public int majority(int level, int br, int bc) {
+        if (level == 0) {
+            return typeOf((occupancy(0, br, bc) > 0) ? city.getItem(br, bc) : null);
+        }
+        return majority[level][br * columns[level] + bc];
+    }
+
+    /**
+     * Devuelve el color con que se dibuja un tipo: el del último ítem de ese tipo visto.
+     *
+     * @return El color, o null si no se vio ningún ítem del tipo.
+     */
+    public Color color(int type) {
+        return colors[type];
+    }
+}
@@ -0,0 +1,378 @@
+package domain;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Formato binario .city para guardar y abrir ciudades.
+ * A diferencia de la serialización de Java, no guarda el grafo de objetos (la referencia de cada ítem
+ * a la ciudad, los colores, los nombres de clase) sino una cabecera y un registro compacto por celda ocupada.
+ * <p>
+ * Cabecera: "CITY", versión (1 byte), filas y columnas (int), modo de avance (1 byte), opciones (1 byte:
+ * planificación por celdas sucias, conteos de vecinos, índice de celdas vacías, ítems por bloques y, en los bits
+ * 4 y 5, la topología), semilla y turnos jugados (long) y número de ítems (int): 35 bytes en la versión 1. La versión 2
+ * agrega el logaritmo en base 2 del lado de los bloques (1 byte, 36 en total) y la versión 3, la que se escribe, el
+ * radio del vecindario (int, 40 en total); al leer las versiones 1 y 2 el radio es 1.
+ * </p>
+ * <p>
+ * Registro de cada ítem: un byte con el tipo (bits 0 a 2, los identificadores de PackedSimulator), un código de 2 bits
+ * (bits 3 y 4: el estado de las personas o el índice de color de los semáforos) y las banderas de las personas
+ * (bits 5 y 6). Siguen los campos del tipo: los pasos (varint) de las personas, más la fila deseada (varint) de los
+ * caminantes, y el contador de turnos (varint) de los postes de luz. Un estado fuera de los tres conocidos se
+ * escribe con el código 3 y un byte más.
+ * </p>
+ * <p>
+ * Versión 1: tras la cabecera, los registros en orden de filas, cada uno precedido por la distancia a la celda
+ * ocupada anterior (varint). Versiones 2 y 3: tras la cabecera, las palabras del índice de ocupación
+ * (Occupancy), la posición en el archivo de los registros de cada bloque de 64x64 celdas más la posición final,
+ * y los registros de cada bloque en orden de filas dentro del bloque. Así un bloque se puede leer sin leer los demás
+ * (ver MappedSnapshot).
+ * </p>
+ * Se lee y se escribe por bloques a través de un FileChannel.
+ */
+final class CitySnapshot {
+    // Identificación y versiones del formato
+    private static final int MAGIC = 0x43495459; // "CITY"
+    private static final byte STREAM = 1;        // Registros seguidos
+    private static final byte CHUNKED = 2;       // Índice de ocupación y registros por bloques
+    private static final byte RADIUS = 3;        // Como la versión 2, con el radio del vecindario
+
+    // Tamaño de la cabecera de cada versión
+    private static final int STREAM_HEADER = 35, CHUNKED_HEADER = 36, RADIUS_HEADER = 40;
+
+    // Lado de los bloques de las versiones 2 y 3 (64 celdas: una palabra del índice de ocupación por fila)
+    static final int CHUNK_SHIFT = 6;
+
+    // Opciones de la ciudad guardadas en la cabecera
+    private static final byte DIRTY_SCHEDULING = 1, NEIGHBOR_COUNTING = 2, VACANCY_INDEXING = 4;
+    static final byte CHUNKED_STORAGE = 8; // Ítems por bloques (ver City.chunked())
+    private static final int TOPOLOGY_SHIFT = 4; // Bits 4 y 5: la topología (City.MOORE, ...)
+
+    // Banderas de persona guardadas además de PackedSimulator.MADE_HAPPY
+    static final byte RELOCATE_ANYWHERE = 2;
+
+    // Estados con código propio; el código 3 indica que el estado va en un byte aparte
+    private static final char[] STATES = {Agent.HAPPY, Agent.INDIFFERENT, Agent.DISSATISFIED};
+    private static final int OTHER_STATE = 3;
+
+    // Tamaño del bloque de lectura y escritura, y tamaño máximo de un registro
+    private static final int BLOCK = 1 << 16;
+    static final int MAX_RECORD = 32;
+
+    /**
+     * Datos de la cabecera de un archivo .city.
+     */
+    static final class Header {
+        byte version;
+        int height, width, tickMode, count;
+        byte options;
+        int radius = 1;
+        long seed, ticks;
+    }
+
+    private CitySnapshot() {
+    }
+
+    /**
+     * Escribe la ciudad en el archivo en formato .city (versión 3).
+     *
+     * @param city La ciudad.
+     * @param file El archivo de destino.
+     * @throws IOException si no se puede escribir el archivo.
+     * @throws IllegalArgumentException si la ciudad contiene un tipo de ítem que el formato no conoce.
+     */
+    static void write(City city, File file) throws IOException {
+        int height = city.getHeight(), width = city.getWidth();
+        long[] words = city.occupancy().words;
+        int chunkRows = (height + (1 << CHUNK_SHIFT) - 1) >>> CHUNK_SHIFT;
+        int chunkColumns = (width + (1 << CHUNK_SHIFT) - 1) >>> CHUNK_SHIFT;
+        long[] offsets = new long[chunkRows * chunkColumns + 1];
+        long indexOffset = RADIUS_HEADER + 8L * words.length;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BLOCK);
+            buffer.putInt(MAGIC);
+            buffer.put(RADIUS);
+            buffer.putInt(height);
+            buffer.putInt(width);
+            buffer.put((byte) city.getTickMode());
+            buffer.put((byte) ((city.isDirtyScheduling() ? DIRTY_SCHEDULING : 0)
+                             | (city.isNeighborCounting() ? NEIGHBOR_COUNTING : 0)
+                             | (city.isVacancyIndexing() ? VACANCY_INDEXING : 0)
+                             | (city.isChunked() ? CHUNKED_STORAGE : 0)
+                             | (city.getTopology() << TOPOLOGY_SHIFT)));
+            buffer.putLong(city.getSeed());
+            buffer.putLong(city.getTicks());
+            buffer.putInt(city.countItems());
+            buffer.put((byte) CHUNK_SHIFT);
+            buffer.putInt(city.getNeighborhoodRadius());
+            for (long word : words) {
+                if (buffer.remaining() < 8) {
+                    flush(channel, buffer);
+                }
+                buffer.putLong(word);
+            }
+            flush(channel, buffer);
+
+            // Los registros van después del índice de bloques, que se escribe al final
+            long position = indexOffset + 8L * offsets.length;
+            channel.position(position);
+            int chunk = 0;
+            for (int cr = 0; cr < chunkRows; cr++) {
+                for (int cc = 0; cc < chunkColumns; cc++) {
+                    offsets[chunk++] = position + buffer.position();
+                    int last = Math.min(height, (cr + 1) << CHUNK_SHIFT);
+                    for (int r = cr << CHUNK_SHIFT; r < last; r++) {
+                        long bits = words[r * city.occupancy().wordsPerRow + cc];
+                        while (bits != 0) {
+                            if (buffer.remaining() < MAX_RECORD) {
+                                position += buffer.position();
+                                flush(channel, buffer);
+                            }
+                            int c = (cc << CHUNK_SHIFT) + Long.numberOfTrailingZeros(bits);
+                            writeItem(buffer, city.getItem(r, c));
+                            bits &= bits - 1;
+                        }
+                    }
+                }
+            }
+            offsets[chunk] = position + buffer.position();
+            flush(channel, buffer);
+
+            channel.position(indexOffset);
+            for (long offset : offsets) {
+                if (buffer.remaining() < 8) {
+                    flush(channel, buffer);
+                }
+                buffer.putLong(offset);
+            }
+            flush(channel, buffer);
+        }
+    }
+
+    /**
+     * Escribe el registro de un ítem.
+     */
+    static void writeItem(ByteBuffer buffer, Item item) {
+        byte type = PackedSimulator.typeOf(item);
+        if (item instanceof Person) {
+            Person person = (Person) item;
+            int code = stateCode(person.state);
+            int flags = person.wasMadeHappy ? PackedSimulator.MADE_HAPPY : 0;
+            if (type == PackedSimulator.SCHELLING && ((SchellingPerson) person).getRelocation() == SchellingPerson.ANYWHERE) {
+                flags |= RELOCATE_ANYWHERE;
+            }
+            buffer.put((byte) (type | (code << 3) | (flags << 5)));
+            if (code == OTHER_STATE) {
+                buffer.put((byte) person.state);
+            }
+            putVarint(buffer, person.getSteps());
+            if (type == PackedSimulator.WALKER) {
+                putVarint(buffer, ((Walker) person).desiredRow);
+            }
+        } else {
+            TrafficLight light = (TrafficLight) item;
+            buffer.put((byte) (type | (light.colorIndex << 3)));
+            if (type == PackedSimulator.STREET_LIGHT) {
+                putVarint(buffer, ((StreetLight) light).turnCounter);
+            }
+        }
+    }
+
+    /**
+     * Lee el registro de un ítem y lo crea en la posición (r, c) de la ciudad.
+     *
+     * @throws IOException si el registro no es válido.
+     */
+    static void readItem(ByteBuffer buffer, City city, int r, int c) throws IOException {
+        int head = buffer.get();
+        byte type = (byte) (head & 7);
+        int code = (head >>> 3) & 3;
+        byte flags = (byte) ((head >>> 5) & 3);
+        if (type == PackedSimulator.TRAFFIC_LIGHT || type == PackedSimulator.STREET_LIGHT) {
+            int colors = (type == PackedSimulator.TRAFFIC_LIGHT) ? TrafficLight.COLORS.length : StreetLight.COLORS.length;
+            if (code >= colors) {
+                throw new IOException("color inválido en (" + r + ", " + c + ")");
+            }
+            int turnCounter = (type == PackedSimulator.STREET_LIGHT) ? getVarint(buffer) : 0;
+            PackedSimulator.create(city, r, c, type, Agent.INDIFFERENT, turnCounter, code, (byte) 0);
+        } else if (type >= PackedSimulator.PERSON && type <= PackedSimulator.CHEERFUL) {
+            char state = (code == OTHER_STATE) ? (char) (buffer.get() & 0xff) : STATES[code];
+            int steps = getVarint(buffer);
+            int desiredRow = (type == PackedSimulator.WALKER) ? getVarint(buffer) : 0;
+            Item item = PackedSimulator.create(city, r, c, type, state, steps, desiredRow, flags);
+            if (type == PackedSimulator.SCHELLING && (flags & RELOCATE_ANYWHERE) != 0) {
+                ((SchellingPerson) item).setRelocation(SchellingPerson.ANYWHERE);
+            }
+        } else {
+            throw new IOException("tipo de ítem desconocido " + type + " en (" + r + ", " + c + ")");
+        }
+    }
+
+    /**
+     * Lee una ciudad guardada en formato .city, creando todos sus ítems.
+     *
+     * @param file El archivo.
+     * @return La ciudad leída, con sus ítems, su modo de avance y sus opciones.
+     * @throws IOException si no se puede leer el archivo o su contenido no es válido.
+     */
+    static City read(File file) throws IOException {
+        City city = map(file);
+        city.materialize();
+        return city;
+    }
+
+    /**
+     * Abre una ciudad guardada en formato .city sin crear sus ítems (ver MappedSnapshot).
+     * Los archivos de la versión 1 no tienen bloques y se leen completos.
+     *
+     * @param file El archivo.
+     * @return La ciudad, cuyos ítems se crean por bloques a medida que se consultan.
+     * @throws IOException si no se puede leer el archivo o su cabecera no es válida.
+     */
+    static City map(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(RADIUS_HEADER);
+            fill(channel, buffer);
+            Header header = readHeader(buffer);
+            City city;
+            if (header.version == STREAM) {
+                channel.position(STREAM_HEADER);
+                city = readStream(channel, header);
+            } else {
+                int size = (header.version == CHUNKED) ? CHUNKED_HEADER : RADIUS_HEADER;
+                city = new MappedSnapshot(channel, size, header).city();
+            }
+            city.setTickMode(header.tickMode);
+            city.setSeed(header.seed);
+            city.setTicks(header.ticks);
+            city.setTopology((header.options >>> TOPOLOGY_SHIFT) & 3);
+            if (header.radius != 1) {
+                city.setNeighborhoodRadius(header.radius);
+            }
+            // Los índices opcionales se construyen una vez, con todos los ítems ya ubicados
+            if ((header.options & VACANCY_INDEXING) != 0 && !city.isVacancyIndexing()) {
+                city.setVacancyIndexing(true);
+            }
+            if ((header.options & NEIGHBOR_COUNTING) != 0) {
+                city.setNeighborCounting(true);
+            }
+            if ((header.options & DIRTY_SCHEDULING) != 0) {
+                city.setDirtyScheduling(true);
+            }
+            return city;
+        } catch (IllegalArgumentException | BufferUnderflowException | UncheckedIOException e) {
+            throw new IOException("archivo .city dañado", e);
+        }
+    }
+
+    // Lee y valida la cabecera
+    private static Header readHeader(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < STREAM_HEADER || buffer.getInt() != MAGIC) {
+            throw new IOException("el archivo no tiene formato .city");
+        }
+        Header header = new Header();
+        header.version = buffer.get();
+        if (header.version < STREAM || header.version > RADIUS) {
+            throw new IOException("versión de formato .city no soportada: " + header.version);
+        }
+        header.height = buffer.getInt();
+        header.width = buffer.getInt();
+        if (header.height <= 0 || header.width <= 0 || (long) header.height * header.width > Integer.MAX_VALUE) {
+            throw new IOException("dimensiones inválidas: " + header.height + "x" + header.width);
+        }
+        header.tickMode = buffer.get();
+        header.options = buffer.get();
+        header.seed = buffer.getLong();
+        header.ticks = buffer.getLong();
+        header.count = buffer.getInt();
+        if (header.count < 0 || header.count > (long) header.height * header.width) {
+            throw new IOException("número de ítems inválido: " + header.count);
+        }
+        if (header.version >= CHUNKED && buffer.get() != CHUNK_SHIFT) {
+            throw new IOException("tamaño de bloque no soportado");
+        }
+        if (header.version == RADIUS) {
+            header.radius = buffer.getInt();
+        }
+        return header;
+    }
+
+    // Lee los registros de la versión 1, cada uno precedido por la distancia a la celda ocupada anterior
+    private static City readStream(FileChannel channel, Header header) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BLOCK);
+        fill(channel, buffer);
+        City city = new City(header.height, header.width);
+        long cells = (long) header.height * header.width;
+        long cell = -1;
+        for (int i = 0; i < header.count; i++) {
+            if (buffer.remaining() < MAX_RECORD) {
+                buffer.compact();
+                fill(channel, buffer);
+            }
+            cell += Integer.toUnsignedLong(getVarint(buffer)) + 1;
+            if (cell >= cells) {
+                throw new IOException("celda fuera de la ciudad en el ítem " + i);
+            }
+            readItem(buffer, city, (int) (cell / header.width), (int) (cell % header.width));
+        }
+        if (buffer.hasRemaining() || channel.position() != channel.size()) {
+            throw new IOException("datos sobrantes al final del archivo");
+        }
+        return city;
+    }
+
+    // Código de 2 bits de un estado
+    private static int stateCode(char state) {
+        for (int code = 0; code < STATES.length; code++) {
+            if (STATES[code] == state) {
+                return code;
+            }
+        }
+        return OTHER_STATE;
+    }
+
+    // Escribe el contenido del bloque en el canal y lo deja listo para seguir escribiendo
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    // Completa el bloque con datos del canal y lo deja listo para leer
+    private static void fill(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+            // Sigue leyendo hasta llenar el bloque o llegar al final del archivo
+        }
+        buffer.flip();
+    }
+
+    // Escribe un int sin signo en 7 bits por byte (de 1 a 5 bytes)
+    static void putVarint(ByteBuffer buffer, int value) {
+        while ((value & ~0x7f) != 0) {
+            buffer.put((byte) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    // Lee un int escrito con putVarint
+    static int getVarint(ByteBuffer buffer) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("entero mal codificado");
+    }
+}
@@ -0,0 +1,163 @@
+package domain;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+/**
+ * Planificador de celdas sucias de una ciudad.
+ * Los ítems que solo dependen de su vecindario (Item.dependsOnlyOnNeighbors()) se evalúan únicamente
+ * si algo cambió en su vecindario (según la topología de la ciudad, o en su radio si es mayor que 1) desde la
+ * última vez; los demás se evalúan en cada turno.
+ * Usa la misma distribución de bits por fila que Occupancy para combinar ambos índices palabra a palabra.
+ */
+class DirtyCells {
+    // Permite marcar bits desde varios hilos durante un turno PARALLEL
+    private static final VarHandle WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final Occupancy occupancy;
+    private final int height, width, wordsPerRow;
+
+    // Vecinas de cada celda
+    private final Topology topology;
+
+    // Radio del vecindario (ver City.setNeighborhoodRadius()), y si el cuadrado da la vuelta (toro)
+    private final int radius;
+    private final boolean wraps;
+
+    // Celdas cuyo vecindario cambió y que deben evaluarse
+    private long[] dirty;
+
+    // Marcas hechas durante un turno de dos fases, que valen para el turno siguiente
+    private long[] next;
+
+    // Celdas con ítems que deben evaluarse en cada turno
+    private final long[] driven;
+
+    // Indica si las marcas van al turno siguiente (turno de dos fases en curso)
+    private boolean deferred;
+
+    /**
+     * Crea el planificador con todas las celdas sucias, de modo que el primer turno evalúa todo.
+     *
+     * @param occupancy El índice de celdas ocupadas de la ciudad.
+     * @param city      La ciudad, para saber qué ítems se evalúan siempre.
+     */
+    DirtyCells(Occupancy occupancy, City city) {
+        this.occupancy = occupancy;
+        this.height = occupancy.height;
+        this.width = occupancy.width;
+        this.wordsPerRow = occupancy.wordsPerRow;
+        this.topology = city.topology();
+        this.radius = city.getNeighborhoodRadius();
+        this.wraps = (topology.kind == City.TORUS);
+        dirty = new long[occupancy.words.length];
+        next = new long[dirty.length];
+        driven = new long[dirty.length];
+        Arrays.fill(dirty, -1L);
+        for (int cell = occupancy.next(0); cell >= 0; cell = occupancy.next(cell + 1)) {
+            setItem(cell / width, cell % width, city.getItem(cell / width, cell % width));
+        }
+    }
+
+    /**
+     * Registra el ítem que ocupa la celda (r, c) y marca su vecindario como sucio.
+     */
+    void setItem(int r, int c, Item e) {
+        int w = r * wordsPerRow + (c >>> 6);
+        if (e != null && !e.dependsOnlyOnNeighbors()) {
+            driven[w] |= 1L << c;
+        } else {
+            driven[w] &= ~(1L << c);
+        }
+        if (radius > 1) {
+            touchSquare(r, c);
+            return;
+        }
+        touch(r, c);
+        for (int k = 0; k < topology.size; k++) {
+            int n = topology.neighbor(r, c, k);
+            if (n >= 0) {
+                touch(n / width, n % width);
+            }
+        }
+    }
+
+    // Marca el cuadrado de radio radius centrado en (r, c), recortado a la ciudad o dando la vuelta en el toro
+    private void touchSquare(int r, int c) {
+        for (int dr = -radius; dr <= radius; dr++) {
+            int nr = r + dr;
+            if (wraps) {
+                nr = Math.floorMod(nr, height);
+            } else if (nr < 0 || nr >= height) {
+                continue;
+            }
+            for (int dc = -radius; dc <= radius; dc++) {
+                int nc = c + dc;
+                if (wraps) {
+                    nc = Math.floorMod(nc, width);
+                } else if (nc < 0 || nc >= width) {
+                    continue;
+                }
+                touch(nr, nc);
+            }
+        }
+    }
+
+    /**
+     * Marca la celda (r, c) como sucia para que su ítem se evalúe.
+     */
+    void touch(int r, int c) {
+        long[] target = deferred ? next : dirty;
+        WORDS.getAndBitwiseOr(target, r * wordsPerRow + (c >>> 6), 1L << c);
+    }
+
+    /**
+     * Limpia la marca de la celda (r, c) justo antes de evaluar su ítem en un turno secuencial.
+     */
+    void clear(int r, int c) {
+        dirty[r * wordsPerRow + (c >>> 6)] &= ~(1L << c);
+    }
+
+    /**
+     * Busca la siguiente celda ocupada que deba evaluarse, con índice plano mayor o igual a <b>cell</b>.
+     *
+     * @param cell El índice plano desde el que se busca.
+     * @return El índice plano de la celda, o -1 si no hay más.
+     */
+    int next(int cell) {
+        int r = cell / width;
+        if (r >= height) {
+            return -1;
+        }
+        long[] occupied = occupancy.words;
+        int c = cell - r * width;
+        int w = r * wordsPerRow + (c >>> 6);
+        long bits = occupied[w] & (dirty[w] | driven[w]) & (-1L << c);
+        while (bits == 0) {
+            if (++w == occupied.length) {
+                return -1;
+            }
+            bits = occupied[w] & (dirty[w] | driven[w]);
+        }
+        return (w / wordsPerRow) * width + ((w % wordsPerRow) << 6) + Long.numberOfTrailingZeros(bits);
+    }
+
+    /**
+     * Empieza un turno de dos fases: las marcas nuevas se guardan para el turno siguiente.
+     */
+    void beginTwoPhase() {
+        deferred = true;
+    }
+
+    /**
+     * Termina un turno de dos fases: todas las celdas sucias ya se evaluaron y pasan a valer las marcas nuevas.
+     */
+    void endTwoPhase() {
+        long[] done = dirty;
+        Arrays.fill(done, 0L);
+        dirty = next;
+        next = done;
+        deferred = false;
+    }
+}
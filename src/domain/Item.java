@@ -63,6 +63,17 @@ public interface Item {
         return true;
     }
 
+    /**
+     * Método por defecto que indica si el comportamiento del ítem depende solo de su vecindario.
+     * Si es así, la ciudad puede dejar de evaluarlo mientras nada cambie a su alrededor.
+     * Por defecto, los ítems se evalúan en cada turno.
+     *
+     * @return true si el ítem solo depende de su vecindario, false en caso contrario (false por defecto).
+     */
+    public default boolean dependsOnlyOnNeighbors() {
+        return false;
+    }
+
     /**
      * Método por defecto que indica si el ítem es un agente.
      * Por defecto, los ítems no son agentes.
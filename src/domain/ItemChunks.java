@@ -0,0 +1,93 @@
+package domain;
+
+/**
+ * Ubicaciones de los ítems de una ciudad grande y poco poblada, por bloques de 64x64 celdas.
+ * Un bloque se crea con el primer ítem que se coloca en él y se libera cuando queda vacío, de modo que la memoria
+ * de las ubicaciones depende del número de bloques con ítems y no del área de la ciudad (los índices de City siguen
+ * siendo densos; ver City.chunked()). Los bloques coinciden con los de CitySnapshot:
+ * la columna de bloques k de una fila es la palabra k de esa fila en Occupancy.
+ * <p>
+ * El último bloque liberado se conserva (vacío) para reutilizarlo, así un ítem solo en su bloque que se mueve
+ * dentro de él no libera y vuelve a crear el bloque en cada movimiento.
+ * </p>
+ */
+final class ItemChunks {
+    // Lado de los bloques
+    static final int SHIFT = CitySnapshot.CHUNK_SHIFT;
+    private static final int SIDE = 1 << SHIFT, MASK = SIDE - 1;
+
+    // Bloques por fila de bloques
+    private final int chunkColumns;
+
+    // Ítems de cada bloque en orden de filas, o null si el bloque está vacío
+    private final Item[][] chunks;
+
+    // Número de ítems de cada bloque
+    private final int[] counts;
+
+    // Número de bloques creados, y un bloque vacío para reutilizar
+    private int allocated;
+    private Item[] spare;
+
+    /**
+     * Crea las ubicaciones vacías de una cuadrícula de <b>height</b> x <b>width</b> celdas.
+     */
+    ItemChunks(int height, int width) {
+        chunkColumns = (width + MASK) >>> SHIFT;
+        int chunkRows = (height + MASK) >>> SHIFT;
+        chunks = new Item[chunkRows * chunkColumns][];
+        counts = new int[chunks.length];
+    }
+
+    // Bloque de la celda (r, c)
+    private int chunk(int r, int c) {
+        return (r >>> SHIFT) * chunkColumns + (c >>> SHIFT);
+    }
+
+    // Posición de la celda (r, c) dentro de su bloque
+    private static int offset(int r, int c) {
+        return ((r & MASK) << SHIFT) | (c & MASK);
+    }
+
+    /**
+     * Devuelve el ítem de la celda (r, c), o null si está vacía.
+     */
+    Item get(int r, int c) {
+        Item[] chunk = chunks[chunk(r, c)];
+        return (chunk == null) ? null : chunk[offset(r, c)];
+    }
+
+    /**
+     * Coloca un ítem (o null) en la celda (r, c), creando o liberando su bloque si hace falta.
+     */
+    void set(int r, int c, Item e) {
+        int k = chunk(r, c);
+        Item[] chunk = chunks[k];
+        if (chunk == null) {
+            if (e == null) {
+                return;
+            }
+            chunk = (spare != null) ? spare : new Item[SIDE * SIDE];
+            spare = null;
+            chunks[k] = chunk;
+            allocated++;
+        }
+        int i = offset(r, c);
+        Item previous = chunk[i];
+        chunk[i] = e;
+        if (previous == null && e != null) {
+            counts[k]++;
+        } else if (previous != null && e == null && --counts[k] == 0) {
+            chunks[k] = null;
+            spare = chunk; // Ya no tiene ítems
+            allocated--;
+        }
+    }
+
+    /**
+     * Devuelve el número de bloques que tienen ítems.
+     */
+    int allocated() {
+        return allocated;
+    }
+}
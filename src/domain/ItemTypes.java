@@ -0,0 +1,177 @@
+package domain;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registro de los tipos de ítems de la ciudad.
+ * Cada tipo tiene un nombre (el de los archivos de importación y exportación), un identificador numérico
+ * (el de PackedSimulator y de los archivos .city), su clase y una fábrica que crea el ítem sin reflexión.
+ * <p>
+ * Los tipos de la ciudad se registran con los identificadores de PackedSimulator (PERSON a STREET_LIGHT).
+ * Otros tipos de ítems se agregan con register() y desde ese momento se pueden importar por su nombre;
+ * como su estado no tiene representación compacta, no se pueden guardar en archivos .city.
+ * </p>
+ */
+public final class ItemTypes {
+
+    /**
+     * Fábrica que crea un ítem de un tipo en la posición (<b>row</b>, <b>column</b>) de la ciudad.
+     * Como los constructores de los ítems, debe ubicar el ítem en la ciudad.
+     */
+    @FunctionalInterface
+    public interface Factory {
+        Item create(City city, int row, int column);
+    }
+
+    // Datos de un tipo registrado
+    private static final class Entry {
+        final String name;
+        final Factory factory;
+
+        Entry(String name, Factory factory) {
+            this.name = name;
+            this.factory = factory;
+        }
+    }
+
+    // Tipos por identificador (el arreglo se reemplaza completo al registrar un tipo; la posición EMPTY queda en null)
+    private static volatile Entry[] entries = new Entry[1];
+
+    // Identificador por nombre y por clase
+    private static final Map<String, Integer> byName = new ConcurrentHashMap<>();
+    private static final Map<Class<?>, Integer> byClass = new ConcurrentHashMap<>();
+
+    static {
+        register(PackedSimulator.PERSON, "Person", Person.class, Person::new);
+        register(PackedSimulator.WALKER, "Walker", Walker.class, Walker::new);
+        register(PackedSimulator.SCHELLING, "SchellingPerson", SchellingPerson.class, SchellingPerson::new);
+        register(PackedSimulator.CHEERFUL, "Cheerful", Cheerful.class, Cheerful::new);
+        register(PackedSimulator.TRAFFIC_LIGHT, "TrafficLight", TrafficLight.class, TrafficLight::new);
+        register(PackedSimulator.STREET_LIGHT, "StreetLight", StreetLight.class, StreetLight::new);
+    }
+
+    private ItemTypes() {
+    }
+
+    /**
+     * Registra un nuevo tipo de ítem.
+     *
+     * @param name    El nombre del tipo en los archivos de importación (sin espacios).
+     * @param type    La clase de los ítems del tipo.
+     * @param factory La fábrica que crea los ítems.
+     * @return El identificador asignado al tipo.
+     * @throws IllegalArgumentException si algún argumento es inválido, o el nombre o la clase ya están registrados.
+     */
+    public static synchronized int register(String name, Class<? extends Item> type, Factory factory) {
+        if (name == null || name.isEmpty() || name.chars().anyMatch(Character::isWhitespace)) {
+            throw new IllegalArgumentException("Nombre de tipo inválido: '" + name + "'");
+        }
+        if (type == null || factory == null) {
+            throw new IllegalArgumentException("El tipo " + name + " necesita una clase y una fábrica");
+        }
+        if (byName.containsKey(name) || byClass.containsKey(type)) {
+            throw new IllegalArgumentException("El tipo " + name + " ya está registrado");
+        }
+        int id = entries.length;
+        register(id, name, type, factory);
+        return id;
+    }
+
+    // Agrega el tipo con el identificador dado, que debe ser el siguiente
+    private static void register(int id, String name, Class<?> type, Factory factory) {
+        Entry[] grown = Arrays.copyOf(entries, id + 1);
+        grown[id] = new Entry(name, factory);
+        entries = grown;
+        byName.put(name, id);
+        byClass.put(type, id);
+    }
+
+    /**
+     * Devuelve el identificador del tipo con el nombre dado.
+     *
+     * @param name El nombre del tipo.
+     * @return El identificador, o -1 si no hay un tipo con ese nombre.
+     */
+    public static int idOf(String name) {
+        Integer id = byName.get(name);
+        return (id != null) ? id : -1;
+    }
+
+    /**
+     * Devuelve el identificador del tipo de un ítem (solo su clase exacta, no sus superclases).
+     *
+     * @param item El ítem.
+     * @return El identificador, o -1 si su clase no está registrada.
+     */
+    public static int idOf(Item item) {
+        Integer id = byClass.get(item.getClass());
+        return (id != null) ? id : -1;
+    }
+
+    /**
+     * Devuelve el nombre de un tipo.
+     *
+     * @param id El identificador del tipo.
+     * @return El nombre del tipo.
+     * @throws IllegalArgumentException si no hay un tipo con ese identificador.
+     */
+    public static String nameOf(int id) {
+        return entry(id).name;
+    }
+
+    /**
+     * Devuelve el nombre con que se exporta un ítem: el de su tipo, o el de su clase si no está registrado.
+     *
+     * @param item El ítem.
+     * @return El nombre.
+     */
+    public static String nameOf(Item item) {
+        int id = idOf(item);
+        return (id > 0) ? entries[id].name : item.getClass().getSimpleName();
+    }
+
+    /**
+     * Devuelve la fábrica del tipo con el nombre dado.
+     *
+     * @param name El nombre del tipo.
+     * @return La fábrica, o null si no hay un tipo con ese nombre.
+     */
+    public static Factory factory(String name) {
+        int id = idOf(name);
+        return (id > 0) ? entries[id].factory : null;
+    }
+
+    /**
+     * Crea un ítem del tipo dado en la posición (r, c) de la ciudad.
+     *
+     * @param id   El identificador del tipo.
+     * @param city La ciudad.
+     * @param r    La fila.
+     * @param c    La columna.
+     * @return El ítem creado.
+     * @throws IllegalArgumentException si no hay un tipo con ese identificador.
+     */
+    public static Item create(int id, City city, int r, int c) {
+        return entry(id).factory.create(city, r, c);
+    }
+
+    /**
+     * Devuelve el número de identificadores asignados, incluido el de las celdas vacías (PackedSimulator.EMPTY).
+     *
+     * @return El identificador que recibirá el próximo tipo registrado.
+     */
+    public static int count() {
+        return entries.length;
+    }
+
+    // Datos del tipo con el identificador dado
+    private static Entry entry(int id) {
+        Entry[] current = entries;
+        if (id <= PackedSimulator.EMPTY || id >= current.length) {
+            throw new IllegalArgumentException("Tipo de ítem desconocido: " + id);
+        }
+        return current[id];
+    }
+}
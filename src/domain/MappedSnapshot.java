@@ -0,0 +1,151 @@
+package domain;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Archivo .city (versión 2 o 3) proyectado en memoria cuyos ítems se crean por bloques a medida que se usan.
+ * Al abrirlo solo se copia el índice de ocupación; los bloques de 64x64 celdas se leen la primera vez que
+ * se consulta o modifica una de sus celdas (getItem, setItem, un turno, el dibujo), de modo que abrir una
+ * ciudad enorme no depende de cuántos ítems tenga. Las filas de la matriz de ubicaciones también se crean
+ * con el primer bloque que las usa.
+ * <p>
+ * El archivo se proyecta por segmentos de 1 GB que se solapan en el tamaño máximo de un bloque,
+ * para que los registros de cualquier bloque queden dentro de un mismo segmento.
+ * </p>
+ */
+class MappedSnapshot {
+    // Tamaño de los segmentos proyectados y solapamiento entre segmentos consecutivos
+    private static final long SEGMENT = 1L << 30;
+    private static final long OVERLAP = (long) CitySnapshot.MAX_RECORD << (2 * CitySnapshot.CHUNK_SHIFT);
+
+    private final ByteBuffer[] segments;
+    private final City city;
+    private final Occupancy occupancy;
+    private final int height, width, chunkColumns;
+
+    // Posición en el archivo de la tabla de bloques
+    private final long indexOffset;
+
+    // Bloques ya leídos y número de bloques por leer
+    private final long[] loaded;
+    private int pending;
+
+    /**
+     * Proyecta el archivo y crea una ciudad vacía con su índice de ocupación.
+     *
+     * @param channel     El canal del archivo (puede cerrarse después: las proyecciones siguen válidas).
+     * @param wordsOffset La posición de las palabras del índice de ocupación.
+     * @param header      La cabecera ya leída.
+     * @throws IOException si no se puede proyectar el archivo o su contenido no es válido.
+     */
+    MappedSnapshot(FileChannel channel, long wordsOffset, CitySnapshot.Header header) throws IOException {
+        long size = channel.size();
+        segments = new ByteBuffer[(int) ((size + SEGMENT - 1) / SEGMENT)];
+        for (int k = 0; k < segments.length; k++) {
+            long start = k * SEGMENT;
+            segments[k] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(size - start, SEGMENT + OVERLAP));
+        }
+        height = header.height;
+        width = header.width;
+        int chunkRows = (height + (1 << CitySnapshot.CHUNK_SHIFT) - 1) >>> CitySnapshot.CHUNK_SHIFT;
+        chunkColumns = (width + (1 << CitySnapshot.CHUNK_SHIFT) - 1) >>> CitySnapshot.CHUNK_SHIFT;
+        pending = chunkRows * chunkColumns;
+        loaded = new long[(pending + 63) >>> 6];
+        city = new City(height, width, this, (header.options & CitySnapshot.CHUNKED_STORAGE) != 0);
+        occupancy = city.occupancy();
+
+        long[] words = occupancy.words;
+        indexOffset = wordsOffset + 8L * words.length;
+        if (indexOffset + 8L * (pending + 1) > size) {
+            throw new IOException("archivo .city incompleto");
+        }
+        int wordsPerRow = occupancy.wordsPerRow;
+        long tail = (width % 64 == 0) ? 0 : -1L << width; // Bits fuera de la ciudad en la última palabra de cada fila
+        for (int i = 0; i < words.length; i++) {
+            words[i] = buffer(wordsOffset + 8L * i).getLong();
+            if (i % wordsPerRow == wordsPerRow - 1 && (words[i] & tail) != 0) {
+                throw new IOException("celdas ocupadas fuera de la ciudad en la fila " + (i / wordsPerRow));
+            }
+        }
+        occupancy.recount();
+        if (occupancy.count() != header.count) {
+            throw new IOException("el número de ítems no coincide con el índice de ocupación");
+        }
+    }
+
+    /**
+     * Devuelve la ciudad asociada al archivo.
+     */
+    City city() {
+        return city;
+    }
+
+    // Vista del segmento que contiene la posición, situada en ella
+    private ByteBuffer buffer(long offset) {
+        int k = (int) (offset / SEGMENT);
+        if (k == segments.length) {
+            k--; // La posición final del archivo
+        }
+        ByteBuffer view = segments[k].duplicate();
+        view.position((int) (offset - k * SEGMENT));
+        return view;
+    }
+
+    /**
+     * Asegura que el bloque de la celda (r, c) esté leído antes de consultarla o modificarla.
+     */
+    void ensure(int r, int c) {
+        int chunk = (r >>> CitySnapshot.CHUNK_SHIFT) * chunkColumns + (c >>> CitySnapshot.CHUNK_SHIFT);
+        if ((loaded[chunk >>> 6] & (1L << chunk)) == 0) {
+            load(chunk);
+        }
+    }
+
+    /**
+     * Lee todos los bloques que faltan.
+     */
+    void loadAll() {
+        for (int chunk = 0; pending > 0; chunk++) {
+            if ((loaded[chunk >>> 6] & (1L << chunk)) == 0) {
+                load(chunk);
+            }
+        }
+    }
+
+    // Crea los ítems de un bloque; se marca como leído antes, porque crear cada ítem llama a setItem
+    private void load(int chunk) {
+        loaded[chunk >>> 6] |= 1L << chunk;
+        int cr = chunk / chunkColumns, cc = chunk % chunkColumns;
+        try {
+            long start = buffer(indexOffset + 8L * chunk).getLong();
+            long end = buffer(indexOffset + 8L * (chunk + 1)).getLong();
+            if (start < indexOffset || end < start || end - start > OVERLAP) {
+                throw new IOException("posición inválida del bloque " + chunk);
+            }
+            ByteBuffer records = buffer(start);
+            int first = records.position();
+            int last = Math.min(height, (cr + 1) << CitySnapshot.CHUNK_SHIFT);
+            for (int r = cr << CitySnapshot.CHUNK_SHIFT; r < last; r++) {
+                city.allocateRow(r);
+                long bits = occupancy.words[r * occupancy.wordsPerRow + cc];
+                while (bits != 0) {
+                    CitySnapshot.readItem(records, city, r, (cc << CitySnapshot.CHUNK_SHIFT) + Long.numberOfTrailingZeros(bits));
+                    bits &= bits - 1;
+                }
+            }
+            if (records.position() - first != end - start) {
+                throw new IOException("registros inválidos en el bloque " + chunk);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (RuntimeException e) {
+            throw new UncheckedIOException(new IOException("archivo .city dañado en el bloque " + chunk, e));
+        }
+        if (--pending == 0) {
+            city.detach();
+        }
+    }
+}
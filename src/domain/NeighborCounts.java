@@ -0,0 +1,109 @@
+package domain;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Conteos de vecinos de cada celda, mantenidos al día en cada cambio de la ciudad.
+ * Para cada celda guarda cuántas de sus vecinas (según la topología de la ciudad) están ocupadas y cuántas
+ * tienen un ítem de la misma clase que el ítem de la celda, de modo que ambas consultas cuestan O(1).
+ * Cada cambio en una celda actualiza sus vecinas y recalcula la propia; como las vecindades son simétricas,
+ * las vecinas de una celda son justamente las celdas que la cuentan.
+ */
+class NeighborCounts {
+    private final int width;
+
+    // Vecinas de cada celda
+    private final Topology topology;
+
+    // Clase del ítem de cada celda, como identificador pequeño (0 si está vacía)
+    private final short[] types;
+
+    // Vecinas ocupadas de cada celda
+    private final byte[] total;
+
+    // Vecinas con un ítem de la misma clase que el de la celda
+    private final byte[] same;
+
+    // Identificadores asignados a cada clase de ítem
+    private final Map<Class<?>, Short> ids = new HashMap<>();
+
+    /**
+     * Crea los conteos de una ciudad a partir de los ítems que ya contiene.
+     *
+     * @param city La ciudad.
+     */
+    NeighborCounts(City city) {
+        width = city.getWidth();
+        topology = city.topology();
+        int cells = city.getHeight() * width;
+        types = new short[cells];
+        total = new byte[cells];
+        same = new byte[cells];
+        for (int cell = city.nextOccupied(0); cell >= 0; cell = city.nextOccupied(cell + 1)) {
+            setItem(cell / width, cell % width, city.getItem(cell / width, cell % width));
+        }
+    }
+
+    // Identificador de la clase de un ítem
+    private short idOf(Item e) {
+        if (e == null) {
+            return 0;
+        }
+        Short id = ids.get(e.getClass());
+        if (id == null) {
+            id = (short) (ids.size() + 1);
+            ids.put(e.getClass(), id);
+        }
+        return id;
+    }
+
+    /**
+     * Registra que la celda (r, c) pasa a contener el ítem <b>e</b> (o queda vacía si es null).
+     */
+    void setItem(int r, int c, Item e) {
+        int i = r * width + c;
+        short before = types[i];
+        short after = idOf(e);
+        if (before == after) {
+            return;
+        }
+        types[i] = after;
+        int similar = 0;
+        for (int k = 0; k < topology.size; k++) {
+            int n = topology.neighbor(r, c, k);
+            if (n < 0) {
+                continue;
+            }
+            short neighbor = types[n];
+            if (before != 0) {
+                total[n]--;
+                if (neighbor == before) {
+                    same[n]--;
+                }
+            }
+            if (after != 0) {
+                total[n]++;
+                if (neighbor == after) {
+                    same[n]++;
+                    similar++;
+                }
+            }
+        }
+        same[i] = (byte) similar;
+    }
+
+    /**
+     * Devuelve el número de vecinas ocupadas de la celda (r, c).
+     */
+    int total(int r, int c) {
+        return total[r * width + c];
+    }
+
+    /**
+     * Devuelve el número de vecinas con un ítem de la misma clase que el de la celda (r, c).
+     */
+    int same(int r, int c) {
+        return same[r * width + c];
+    }
+}
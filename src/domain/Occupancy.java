@@ -0,0 +1,226 @@
+package domain;
+
+import java.util.Arrays;
+
+/**
+ * Índice de celdas ocupadas de una ciudad.
+ * Guarda un bit por celda en un arreglo de long donde cada fila empieza en una palabra nueva,
+ * de modo que las celdas ocupadas se recorren en orden de filas saltando 64 celdas vacías a la vez.
+ * Las consultas de vecindario se resuelven con desplazamientos y Long.bitCount sobre palabras completas.
+ * Además cuenta las celdas ocupadas de cada franja de 64 filas, para que los recorridos salten de una vez
+ * las franjas vacías de una ciudad grande y poco poblada.
+ */
+class Occupancy {
+    // Dimensiones de la cuadrícula
+    final int height, width;
+
+    // Palabras de 64 bits por fila
+    final int wordsPerRow;
+
+    // Bits de ocupación: la celda (r, c) es el bit (c % 64) de la palabra r * wordsPerRow + c / 64
+    final long[] words;
+
+    // Número de celdas ocupadas
+    private int count;
+
+    // Filas por franja, y número de celdas ocupadas de cada franja
+    private static final int BAND_SHIFT = 6;
+    private final int[] bandCounts;
+
+    /**
+     * Crea un índice vacío para una cuadrícula de <b>height</b> x <b>width</b> celdas.
+     *
+     * @param height El número de filas.
+     * @param width  El número de columnas.
+     */
+    Occupancy(int height, int width) {
+        this.height = height;
+        this.width = width;
+        this.wordsPerRow = (width + 63) >>> 6;
+        this.words = new long[height * wordsPerRow];
+        this.bandCounts = new int[((height - 1) >>> BAND_SHIFT) + 1];
+    }
+
+    /**
+     * Indica si la celda (r, c) está ocupada.
+     */
+    boolean get(int r, int c) {
+        return (words[r * wordsPerRow + (c >>> 6)] & (1L << c)) != 0;
+    }
+
+    /**
+     * Indica si la celda con índice plano <b>cell</b> está ocupada.
+     */
+    boolean get(int cell) {
+        int r = cell / width;
+        return get(r, cell - r * width);
+    }
+
+    /**
+     * Marca la celda (r, c) como ocupada o vacía.
+     */
+    void set(int r, int c, boolean occupied) {
+        int w = r * wordsPerRow + (c >>> 6);
+        long bit = 1L << c;
+        if (occupied && (words[w] & bit) == 0) {
+            words[w] |= bit;
+            count++;
+            bandCounts[r >>> BAND_SHIFT]++;
+        } else if (!occupied && (words[w] & bit) != 0) {
+            words[w] &= ~bit;
+            count--;
+            bandCounts[r >>> BAND_SHIFT]--;
+        }
+    }
+
+    /**
+     * Recalcula el número de celdas ocupadas después de escribir las palabras directamente.
+     */
+    void recount() {
+        count = 0;
+        Arrays.fill(bandCounts, 0);
+        for (int w = 0; w < words.length; w++) {
+            int bits = Long.bitCount(words[w]);
+            count += bits;
+            bandCounts[(w / wordsPerRow) >>> BAND_SHIFT] += bits;
+        }
+    }
+
+    /**
+     * Devuelve el número de celdas ocupadas.
+     */
+    int count() {
+        return count;
+    }
+
+    /**
+     * Devuelve los bits de las celdas (r, c - 1), (r, c) y (r, c + 1) en los bits 0, 1 y 2.
+     * Las celdas fuera de la cuadrícula cuentan como vacías.
+     */
+    private long bits3(int r, int c) {
+        if (r < 0 || r >= height) {
+            return 0;
+        }
+        int base = r * wordsPerRow;
+        if (c == 0) {
+            return (words[base] << 1) & 7;
+        }
+        int p = c - 1;
+        int k = p >>> 6, offset = p & 63;
+        long v = words[base + k] >>> offset;
+        if (offset > 61 && k + 1 < wordsPerRow) {
+            v |= words[base + k + 1] << (64 - offset);
+        }
+        return v & 7;
+    }
+
+    /**
+     * Cuenta las celdas ocupadas entre las 8 vecinas de (r, c).
+     */
+    int countAround(int r, int c) {
+        return Long.bitCount(bits3(r - 1, c)) + Long.bitCount(bits3(r, c) & 5) + Long.bitCount(bits3(r + 1, c));
+    }
+
+    /**
+     * Indica si alguna de las 8 vecinas de (r, c) está ocupada.
+     */
+    boolean anyAround(int r, int c) {
+        return (bits3(r - 1, c) | (bits3(r, c) & 5) | bits3(r + 1, c)) != 0;
+    }
+
+    // Palabra k de la fila r, o 0 si está fuera de la cuadrícula
+    private long word(int r, int k) {
+        return (r < 0 || r >= height || k < 0 || k >= wordsPerRow) ? 0 : words[r * wordsPerRow + k];
+    }
+
+    /**
+     * Cuenta las vecinas ocupadas de todas las celdas a la vez.
+     * Para cada palabra se obtienen las 8 máscaras de vecinos desplazando las palabras de las filas
+     * adyacentes y se suman con un sumador por planos de bits (4 planos alcanzan para contar hasta 8),
+     * procesando 64 celdas en cada operación.
+     *
+     * @return Un arreglo con el conteo de cada celda, indexado por fila * width + columna.
+     */
+    byte[] countAll() {
+        byte[] counts = new byte[height * width];
+        long[] masks = new long[8];
+        for (int r = 0; r < height; r++) {
+            for (int k = 0; k < wordsPerRow; k++) {
+                int m = 0;
+                for (int dr = -1; dr <= 1; dr++) {
+                    long center = word(r + dr, k);
+                    masks[m++] = (center << 1) | (word(r + dr, k - 1) >>> 63); // Vecino al oeste
+                    masks[m++] = (center >>> 1) | (word(r + dr, k + 1) << 63); // Vecino al este
+                    if (dr != 0) {
+                        masks[m++] = center;
+                    }
+                }
+                long s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+                for (long mask : masks) {
+                    long c0 = s0 & mask;
+                    s0 ^= mask;
+                    long c1 = s1 & c0;
+                    s1 ^= c0;
+                    long c2 = s2 & c1;
+                    s2 ^= c1;
+                    s3 |= c2;
+                }
+                int first = k << 6;
+                int last = Math.min(width, first + 64);
+                int base = r * width;
+                for (int c = first; c < last; c++) {
+                    int b = c - first;
+                    counts[base + c] = (byte) (((s0 >>> b) & 1) | (((s1 >>> b) & 1) << 1) | (((s2 >>> b) & 1) << 2) | (((s3 >>> b) & 1) << 3));
+                }
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Busca la primera celda ocupada con índice plano (r * width + c) mayor o igual a <b>cell</b>.
+     *
+     * @param cell El índice plano desde el que se busca.
+     * @return El índice plano de la celda ocupada, o -1 si no hay más.
+     */
+    int next(int cell) {
+        if (cell < 0) {
+            cell = 0;
+        }
+        int r = cell / width;
+        if (r >= height) {
+            return -1;
+        }
+        int c = cell - r * width;
+        int band = r >>> BAND_SHIFT;
+        int w;
+        long bits;
+        if (bandCounts[band] == 0) {
+            w = bandEnd(band) - 1; // Franja vacía: se sigue desde la siguiente
+            bits = 0;
+        } else {
+            w = r * wordsPerRow + (c >>> 6);
+            bits = words[w] & (-1L << c);
+        }
+        int end = bandEnd(band);
+        while (bits == 0) {
+            if (++w == end) {
+                // Salta las franjas vacías
+                do {
+                    if (++band == bandCounts.length) {
+                        return -1;
+                    }
+                } while (bandCounts[band] == 0);
+                w = (band << BAND_SHIFT) * wordsPerRow;
+                end = bandEnd(band);
+            }
+            bits = words[w];
+        }
+        return (w / wordsPerRow) * width + ((w % wordsPerRow) << 6) + Long.numberOfTrailingZeros(bits);
+    }
+
+    // Índice de la primera palabra después de la franja
+    private int bandEnd(int band) {
+        return Math.min(height, (band + 1) << BAND_SHIFT) * wordsPerRow;
+    }
+}
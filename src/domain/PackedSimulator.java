@@ -0,0 +1,525 @@
+package domain;
+import java.awt.Color;
+
+/**
+ * Simulador compacto de una ciudad en arreglos primitivos (estructura de arreglos), separado de City.
+ * Cada celda se identifica por el índice plano <code>fila * ancho + columna</code> y su contenido
+ * se guarda en columnas paralelas: tipo, estado, pasos, un campo auxiliar y banderas.
+ * <p>
+ * No es un almacenamiento que City pueda usar: tiene su propio ticTac(), que recorre solamente estas columnas
+ * contiguas, sin objetos por agente, y produce exactamente el mismo resultado que City.ticTac() en modo SEQUENTIAL
+ * para los tipos de la ciudad con vecindario de radio 1. of() copia una ciudad al simulador y toCity() la
+ * reconstruye. Los ítems se exponen con getItem() como vistas livianas sobre las columnas.
+ * </p>
+ * Sus identificadores de tipo son también los de ItemTypes y los del formato .city.
+ */
+public class PackedSimulator {
+    // Identificadores de tipo de cada celda
+    public static final byte EMPTY = 0;
+    public static final byte PERSON = 1;
+    public static final byte WALKER = 2;
+    public static final byte SCHELLING = 3;
+    public static final byte CHEERFUL = 4;
+    public static final byte TRAFFIC_LIGHT = 5;
+    public static final byte STREET_LIGHT = 6;
+
+    // Bandera: la persona fue influenciada por un Cheerful (Person.wasMadeHappy)
+    static final byte MADE_HAPPY = 1;
+
+    // Dimensiones de la cuadrícula
+    private final int height, width;
+
+    // Vecinas de cada celda: MOORE, o la topología de la ciudad empaquetada con of()
+    private Topology topology;
+
+    // Columnas indexadas por celda
+    private final byte[] types;   // Tipo del ítem (EMPTY si la celda está vacía)
+    private final char[] states;  // Estado emocional de los agentes
+    private final int[] steps;    // Pasos de los agentes; contador de turnos de los postes de luz
+    private final int[] aux;      // Fila deseada de los caminantes; índice de color de los semáforos
+    private final byte[] flags;   // Banderas por celda (MADE_HAPPY)
+
+    // Vista de cada celda ya entregada por getItem() (null hasta la primera llamada)
+    private View[] views;
+
+    /**
+     * Crea una cuadrícula compacta vacía de <b>height</b> filas por <b>width</b> columnas.
+     *
+     * @param height El número de filas.
+     * @param width  El número de columnas.
+     */
+    public PackedSimulator(int height, int width) {
+        if (height <= 0 || width <= 0) {
+            throw new IllegalArgumentException("Dimensiones inválidas: " + height + "x" + width);
+        }
+        int cells;
+        try {
+            cells = Math.multiplyExact(height, width);
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("Dimensiones inválidas: " + height + "x" + width);
+        }
+        this.height = height;
+        this.width = width;
+        types = new byte[cells];
+        states = new char[cells];
+        steps = new int[cells];
+        aux = new int[cells];
+        flags = new byte[cells];
+        topology = new Topology(City.MOORE, height, width);
+    }
+
+    /**
+     * Construye la representación compacta de una ciudad.
+     *
+     * @param city La ciudad a empaquetar.
+     * @return Una cuadrícula compacta con el mismo contenido que la ciudad.
+     * @throws IllegalArgumentException si la ciudad contiene un tipo de ítem no soportado, o si su vecindario
+     *         tiene un radio mayor que 1.
+     */
+    public static PackedSimulator of(City city) {
+        if (city.getNeighborhoodRadius() != 1) {
+            throw new IllegalArgumentException("Vecindario de radio " + city.getNeighborhoodRadius() + " sin representación compacta");
+        }
+        PackedSimulator grid = new PackedSimulator(city.getHeight(), city.getWidth());
+        grid.topology = city.topology();
+        for (int cell = city.nextOccupied(0); cell >= 0; cell = city.nextOccupied(cell + 1)) {
+            grid.load(cell, city.getItem(cell / grid.width, cell % grid.width));
+        }
+        return grid;
+    }
+
+    /**
+     * Devuelve el identificador de tipo de un ítem.
+     *
+     * @param item El ítem.
+     * @return El identificador de tipo.
+     * @throws IllegalArgumentException si el tipo de ítem no tiene representación compacta.
+     */
+    static byte typeOf(Item item) {
+        int type = ItemTypes.idOf(item);
+        if (type < PERSON || type > STREET_LIGHT) {
+            throw new IllegalArgumentException("Tipo de ítem sin representación compacta: " + item.getClass().getName());
+        }
+        return (byte) type;
+    }
+
+    // Copia el estado de un ítem a las columnas de la celda i
+    private void load(int i, Item item) {
+        byte type = typeOf(item);
+        if (type == SCHELLING && ((SchellingPerson) item).getRelocation() != SchellingPerson.NEARBY) {
+            throw new IllegalArgumentException("Política de reubicación sin representación compacta");
+        }
+        types[i] = type;
+        if (item instanceof Person) {
+            Person person = (Person) item;
+            states[i] = person.state;
+            steps[i] = person.getSteps();
+            flags[i] = person.wasMadeHappy ? MADE_HAPPY : 0;
+            if (type == WALKER) {
+                aux[i] = ((Walker) person).desiredRow;
+            }
+        } else {
+            TrafficLight light = (TrafficLight) item;
+            aux[i] = light.colorIndex;
+            if (type == STREET_LIGHT) {
+                steps[i] = ((StreetLight) light).turnCounter;
+            }
+        }
+    }
+
+    /**
+     * Reconstruye una ciudad con objetos a partir de la representación compacta.
+     *
+     * @return Una nueva ciudad con los mismos ítems y estados.
+     */
+    public City toCity() {
+        City city = new City(height, width);
+        city.setTopology(topology.kind);
+        for (int i = 0; i < types.length; i++) {
+            if (types[i] != EMPTY) {
+                materialize(city, i);
+            }
+        }
+        return city;
+    }
+
+    // Crea en la ciudad el ítem de la celda i con el estado guardado en las columnas
+    private Item materialize(City city, int i) {
+        return create(city, i / width, i % width, types[i], states[i], steps[i], aux[i], flags[i]);
+    }
+
+    /**
+     * Crea en la posición (r, c) de la ciudad un ítem del tipo indicado con el estado dado,
+     * repartido en los mismos campos que las columnas de la representación compacta.
+     *
+     * @param city  La ciudad.
+     * @param r     La fila.
+     * @param c     La columna.
+     * @param type  El identificador de tipo (distinto de EMPTY).
+     * @param state El estado emocional (solo agentes).
+     * @param steps Los pasos del agente, o el contador de turnos del poste de luz.
+     * @param aux   La fila deseada del caminante, o el índice de color del semáforo.
+     * @param flags Las banderas de la persona (MADE_HAPPY).
+     * @return El ítem creado.
+     */
+    static Item create(City city, int r, int c, byte type, char state, int steps, int aux, byte flags) {
+        Item item = ItemTypes.create(type, city, r, c);
+        if (item instanceof TrafficLight) {
+            TrafficLight light = (TrafficLight) item;
+            light.colorIndex = aux;
+            if (type == STREET_LIGHT) {
+                ((StreetLight) light).turnCounter = steps;
+            }
+        } else {
+            Person person = (Person) item;
+            if (type == WALKER) {
+                ((Walker) person).desiredRow = aux;
+            }
+            person.state = state;
+            person.setSteps(steps);
+            person.wasMadeHappy = (flags & MADE_HAPPY) != 0;
+        }
+        return item;
+    }
+
+    /**
+     * Devuelve el número de filas.
+     *
+     * @return El número de filas.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Devuelve el número de columnas.
+     *
+     * @return El número de columnas.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Devuelve el identificador de tipo de la celda (r, c).
+     *
+     * @param r La fila.
+     * @param c La columna.
+     * @return El tipo de la celda, o EMPTY si está vacía.
+     */
+    public byte getType(int r, int c) {
+        return types[r * width + c];
+    }
+
+    /**
+     * Devuelve una vista del ítem en la posición (r, c).
+     * La vista lee y escribe directamente sobre las columnas de la celda, así que sigue al día después de ticTac(),
+     * y acompaña al ítem cuando se mueve. Cada ítem tiene una sola vista, creada la primera vez que se pide.
+     *
+     * @param r La fila.
+     * @param c La columna.
+     * @return La vista del ítem, o null si la celda está vacía.
+     */
+    public Item getItem(int r, int c) {
+        int i = r * width + c;
+        if (types[i] == EMPTY) {
+            return null;
+        }
+        if (views == null) {
+            views = new View[types.length];
+        }
+        if (views[i] == null) {
+            views[i] = (types[i] == TRAFFIC_LIGHT || types[i] == STREET_LIGHT) ? new LightView(i) : new AgentView(i);
+        }
+        return (Item) views[i];
+    }
+
+    /**
+     * Cuenta los ítems de la cuadrícula.
+     *
+     * @return El número de celdas ocupadas.
+     */
+    public int countItems() {
+        int count = 0;
+        for (byte type : types) {
+            if (type != EMPTY) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Avanza un turno en la simulación.
+     * Recorre las celdas en el mismo orden que City.ticTac(): cada ítem decide y cambia
+     * antes de pasar al siguiente, de modo que los resultados coinciden con los de la ciudad.
+     */
+    public void ticTac() {
+        for (int i = 0; i < types.length; i++) {
+            if (types[i] != EMPTY) {
+                decide(i);
+                change(i);
+            }
+        }
+    }
+
+    // Lógica de decisión del ítem en la celda i
+    private void decide(int i) {
+        switch (types[i]) {
+            case PERSON:
+                if ((flags[i] & MADE_HAPPY) != 0) {
+                    flags[i] &= ~MADE_HAPPY;
+                } else {
+                    states[i] = cycle(steps[i]);
+                }
+                break;
+            case WALKER:
+                decideWalker(i);
+                break;
+            case SCHELLING:
+                decideSchelling(i);
+                break;
+            case CHEERFUL:
+                makeNeighborsHappy(i);
+                break;
+            default:
+                break;
+        }
+    }
+
+    // Lógica de cambio del ítem en la celda i
+    private void change(int i) {
+        switch (types[i]) {
+            case PERSON:
+            case CHEERFUL:
+                steps[i]++;
+                break;
+            case WALKER:
+                steps[i]++;
+                int target = aux[i] * width + i % width;
+                if (types[target] == EMPTY) {
+                    move(i, target);
+                }
+                break;
+            case SCHELLING:
+                if (states[i] == Agent.DISSATISFIED) {
+                    moveToEmptySpot(i);
+                }
+                break;
+            case TRAFFIC_LIGHT:
+                aux[i] = (aux[i] + 1) % TrafficLight.COLORS.length;
+                break;
+            case STREET_LIGHT:
+                steps[i]++;
+                if (steps[i] % 3 == 0) {
+                    aux[i] = (aux[i] + 1) % StreetLight.COLORS.length;
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    // Estado de una persona según sus pasos (Person.decide)
+    private static char cycle(int steps) {
+        return (steps % 3 == 0 ? Agent.HAPPY : (steps % 3 == 1 ? Agent.INDIFFERENT : Agent.DISSATISFIED));
+    }
+
+    // Walker.decide: feliz si tiene vecinos; si no, intenta avanzar hacia el norte
+    private void decideWalker(int i) {
+        int r = i / width, c = i % width;
+        if (hasItemNearby(r, c)) {
+            states[i] = Agent.HAPPY;
+        } else {
+            int desiredRow = (r > 0) ? r - 1 : r;
+            aux[i] = desiredRow;
+            states[i] = (types[desiredRow * width + c] == EMPTY) ? Agent.HAPPY : Agent.DISSATISFIED;
+        }
+    }
+
+    // SchellingPerson.decide: compara los vecinos similares con el total de vecinos
+    private void decideSchelling(int i) {
+        int r = i / width, c = i % width;
+        int total = 0, similar = 0;
+        for (int k = 0; k < topology.size; k++) {
+            int n = topology.neighbor(r, c, k);
+            if (n >= 0 && types[n] != EMPTY) {
+                total++;
+                if (types[n] == SCHELLING) {
+                    similar++;
+                }
+            }
+        }
+        if (total == 0 || similar == total) {
+            states[i] = Agent.INDIFFERENT;
+        } else if (similar * 3 < total) {
+            states[i] = Agent.DISSATISFIED;
+        } else {
+            states[i] = Agent.HAPPY;
+        }
+    }
+
+    // SchellingPerson.moveToEmptySpot: se mueve a la primera celda vecina vacía
+    private void moveToEmptySpot(int i) {
+        int r = i / width, c = i % width;
+        for (int k = 0; k < topology.size; k++) {
+            int n = topology.neighbor(r, c, k);
+            if (n >= 0 && types[n] == EMPTY) {
+                move(i, n);
+                return;
+            }
+        }
+    }
+
+    // Cheerful.makeNeighborsHappy: las personas vecinas quedan felices por un turno
+    private void makeNeighborsHappy(int i) {
+        int r = i / width, c = i % width;
+        for (int k = 0; k < topology.size; k++) {
+            int n = topology.neighbor(r, c, k);
+            if (n >= 0 && isPerson(types[n])) {
+                states[n] = Agent.HAPPY;
+                flags[n] |= MADE_HAPPY;
+            }
+        }
+    }
+
+    // Walker.hasItemNearby: hay algún ítem en las celdas vecinas
+    private boolean hasItemNearby(int r, int c) {
+        for (int k = 0; k < topology.size; k++) {
+            int n = topology.neighbor(r, c, k);
+            if (n >= 0 && types[n] != EMPTY) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Mueve todas las columnas de la celda from a la celda to
+    private void move(int from, int to) {
+        types[to] = types[from];
+        states[to] = states[from];
+        steps[to] = steps[from];
+        aux[to] = aux[from];
+        flags[to] = flags[from];
+        types[from] = EMPTY;
+        states[from] = 0;
+        steps[from] = 0;
+        aux[from] = 0;
+        flags[from] = 0;
+        if (views != null && views[from] != null) {
+            views[to] = views[from];
+            views[to].moveTo(to);
+            views[from] = null;
+        }
+    }
+
+    private static boolean isPerson(byte type) {
+        return type >= PERSON && type <= CHEERFUL;
+    }
+
+    private static Color colorOf(byte type) {
+        switch (type) {
+            case WALKER: return Color.green;
+            case SCHELLING: return Color.MAGENTA;
+            case CHEERFUL: return Color.pink;
+            default: return Color.blue;
+        }
+    }
+
+    // Vista de un ítem, que cambia de celda cuando el ítem se mueve
+    private interface View {
+        void moveTo(int index);
+    }
+
+    /**
+     * Vista de un agente guardado en las columnas.
+     * El estado y los pasos se leen y se escriben en las columnas de la celda, no en los campos de Agent.
+     */
+    private class AgentView extends Agent implements Item, View {
+        private int index;
+
+        AgentView(int index) {
+            this.index = index;
+        }
+
+        public void moveTo(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public int getSteps() {
+            return steps[index];
+        }
+
+        @Override
+        protected void setSteps(int steps) {
+            PackedSimulator.this.steps[index] = steps;
+        }
+
+        @Override
+        public boolean isHappy() {
+            return states[index] == HAPPY;
+        }
+
+        @Override
+        public boolean isIndifferent() {
+            return states[index] == INDIFFERENT;
+        }
+
+        @Override
+        public boolean isDissatisfied() {
+            return states[index] == DISSATISFIED;
+        }
+
+        @Override
+        public void setState(char newState) {
+            states[index] = newState;
+        }
+
+        public void decide() {
+            PackedSimulator.this.decide(index);
+        }
+
+        public void change() {
+            PackedSimulator.this.change(index);
+        }
+
+        public Color getColor() {
+            return colorOf(types[index]);
+        }
+
+        public int shape() {
+            switch (types[index]) {
+                case WALKER: return Item.SQUARE;
+                case CHEERFUL: return Item.TRIANGLE;
+                default: return Item.ROUND;
+            }
+        }
+    }
+
+    /**
+     * Vista de un semáforo o poste de luz guardado en las columnas.
+     */
+    private class LightView implements Item, View {
+        private int index;
+
+        LightView(int index) {
+            this.index = index;
+        }
+
+        public void moveTo(int index) {
+            this.index = index;
+        }
+
+        public void decide() {
+        }
+
+        public void change() {
+            PackedSimulator.this.change(index);
+        }
+
+        public Color getColor() {
+            return (types[index] == STREET_LIGHT) ? StreetLight.COLORS[aux[index]] : TrafficLight.COLORS[aux[index]];
+        }
+    }
+}
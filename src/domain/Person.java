@@ -1,5 +1,9 @@
 package domain;
 import java.awt.Color;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 
 /**
@@ -16,8 +20,8 @@ public class Person extends Agent implements Item, Serializable {
     // Posición de la persona en la ciudad
     protected int row, column;    
 
-    // Color de la persona (no serializable)
-    protected Color color; // Marcar como transient
+    // Color de la persona
+    protected Color color;
 
     // Indica si la persona fue influenciada por un objeto Cheerful
     protected boolean wasMadeHappy = false;
@@ -37,10 +41,44 @@ public class Person extends Agent implements Item, Serializable {
         color = Color.blue;
     }
 
-    // Método para restaurar el color después de la deserialización
-    private void readObject(java.io.ObjectInputStream in) throws java.io.IOException, ClassNotFoundException {
-        in.defaultReadObject(); // Deserializa los campos no transient
-        color = Color.blue; // Restaura el color predeterminado
+    // Campos que se serializan: los de la persona más el estado y los pasos de Agent, que no es serializable.
+    // Los archivos anteriores no traen state ni steps y conservan los valores iniciales de Agent
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("city", City.class),
+        new ObjectStreamField("row", int.class),
+        new ObjectStreamField("column", int.class),
+        new ObjectStreamField("color", Color.class),
+        new ObjectStreamField("wasMadeHappy", boolean.class),
+        new ObjectStreamField("state", char.class),
+        new ObjectStreamField("steps", int.class)
+    };
+
+    // Escribe los campos sin recorrerlos por reflexión
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("city", city);
+        fields.put("row", row);
+        fields.put("column", column);
+        fields.put("color", color);
+        fields.put("wasMadeHappy", wasMadeHappy);
+        fields.put("state", state);
+        fields.put("steps", getSteps());
+        out.writeFields();
+    }
+
+    // Restaura los campos; el color guardado se conserva (cada subclase tiene el suyo) y solo falta en archivos dañados
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        city = (City) fields.get("city", null);
+        row = fields.get("row", 0);
+        column = fields.get("column", 0);
+        color = (Color) fields.get("color", null);
+        wasMadeHappy = fields.get("wasMadeHappy", false);
+        state = fields.get("state", state);
+        setSteps(fields.get("steps", 0));
+        if (color == null) {
+            color = Color.blue; // Restaura el color predeterminado
+        }
     }
 
     /**
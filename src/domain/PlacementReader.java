@@ -0,0 +1,372 @@
+package domain;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Lector de archivos de ubicaciones ("Clase fila columna" por línea) para City.importData().
+ * Una línea también puede describir un tramo de la fila, "Clase fila columna xN", como los que escribe
+ * PlacementWriter: N ítems iguales en las columnas columna .. columna + N - 1.
+ * Lee el archivo por bloques en un ByteBuffer directo que se reutiliza y separa las palabras y los números
+ * directamente de los bytes, sin crear un String por línea: solo se crean objetos para los ítems, para cada
+ * nombre de tipo distinto (que se guarda con su identificador de ItemTypes) y para los mensajes de error.
+ * <p>
+ * Acepta las mismas líneas que la versión con readLine() y split("\\s+"): separadores de línea \n, \r o \r\n,
+ * espacios y tabuladores entre las palabras, y líneas en blanco. Los archivos comprimidos con gzip se reconocen
+ * por sus dos primeros bytes y se descomprimen al leerlos.
+ * </p>
+ * <p>
+ * Para la importación en paralelo (ver PlacementShards) un lector puede analizar un trozo del archivo sin crear
+ * los ítems: guarda el tipo, la celda y el número de línea de cada uno para crearlos después en orden.
+ * </p>
+ */
+final class PlacementReader {
+    // Tamaño inicial del bloque de lectura
+    private static final int BLOCK = 1 << 20;
+
+    // Bytes iniciales de un archivo gzip
+    private static final int GZIP_MAGIC = 0x1f8b;
+
+    private final City city;
+    private ByteBuffer buffer;
+    private int lineNumber;
+
+    // Posiciones [inicio, fin) de las cuatro primeras palabras de la línea actual
+    private final int[] starts = new int[4], ends = new int[4];
+
+    // Nombres de tipo ya resueltos (en bytes) y sus identificadores en ItemTypes
+    private byte[][] names = new byte[8][];
+    private int[] ids = new int[8];
+    private int known;
+
+    // Ítems analizados sin crear (solo si collecting): tipo, celda y número de línea de cada uno
+    private final boolean collecting;
+    int[] types, cells, lines;
+    int count;
+
+    // Primer error encontrado al analizar sin crear: descripción sin el número de línea, y la línea
+    String failure;
+    int failureLine;
+
+    private PlacementReader(City city, boolean collecting, int capacity) {
+        this.city = city;
+        this.collecting = collecting;
+        if (collecting) {
+            types = new int[capacity];
+            cells = new int[capacity];
+            lines = new int[capacity];
+        }
+    }
+
+    /**
+     * Crea en la ciudad los ítems descritos en el archivo.
+     *
+     * @param city La ciudad.
+     * @param file El archivo de ubicaciones (texto, o texto comprimido con gzip).
+     * @throws CityException si no se puede leer el archivo o alguna línea no es válida.
+     */
+    static void read(City city, File file) throws CityException {
+        try (ReadableByteChannel channel = open(file)) {
+            PlacementReader reader = new PlacementReader(city, false, 0);
+            reader.buffer = ByteBuffer.allocateDirect(BLOCK);
+            reader.read(channel);
+        } catch (IOException e) {
+            throw new CityException("Error al leer el archivo: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Analiza los bytes [0, limit) de un bloque que empieza al comienzo de una línea, sin crear los ítems.
+     * Si una línea no es válida, el análisis se detiene en ella y queda descrita en failure y failureLine.
+     *
+     * @param city  La ciudad (solo se consultan sus dimensiones).
+     * @param block Los bytes a analizar, por ejemplo un trozo del archivo proyectado en memoria.
+     * @return El lector con los ítems analizados.
+     */
+    static PlacementReader parse(City city, ByteBuffer block) {
+        // Estimación de líneas por bytes (una línea como "Person 12 34" ocupa unos 12 bytes)
+        PlacementReader reader = new PlacementReader(city, true, Math.max(16, block.limit() / 12));
+        reader.buffer = block;
+        try {
+            reader.scan(true);
+        } catch (CityException e) {
+            // El error quedó guardado en failure
+        }
+        return reader;
+    }
+
+    /**
+     * Indica si el archivo está comprimido con gzip.
+     *
+     * @param channel El canal del archivo, que queda en la posición 0.
+     */
+    static boolean isGzip(FileChannel channel) throws IOException {
+        ByteBuffer magic = ByteBuffer.allocate(2);
+        while (magic.hasRemaining() && channel.read(magic) >= 0) {
+            // Lee los dos primeros bytes
+        }
+        channel.position(0);
+        return magic.position() == 2 && (magic.getShort(0) & 0xffff) == GZIP_MAGIC;
+    }
+
+    // Abre el archivo como canal, descomprimiéndolo si es gzip
+    private static ReadableByteChannel open(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        if (isGzip(channel)) {
+            channel.close();
+            return Channels.newChannel(new GZIPInputStream(new FileInputStream(file), 1 << 16));
+        }
+        return channel;
+    }
+
+    // Lee el canal por bloques y procesa cada línea completa; la línea cortada al final de un bloque se conserva
+    private void read(ReadableByteChannel channel) throws IOException, CityException {
+        boolean end = false;
+        while (!end) {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    end = true;
+                    break;
+                }
+            }
+            buffer.flip();
+            int limit = buffer.limit();
+            int start = scan(end);
+            if (end) {
+                return;
+            }
+            buffer.position(start);
+            if (start == 0 && limit == buffer.capacity()) {
+                // Una línea más larga que el bloque: se agranda el bloque
+                ByteBuffer larger = ByteBuffer.allocateDirect(2 * buffer.capacity());
+                larger.put(buffer);
+                buffer = larger;
+            } else {
+                buffer.compact();
+            }
+        }
+    }
+
+    // Procesa las líneas completas de [0, limit) del bloque y devuelve dónde empieza la línea incompleta.
+    // Al final del archivo (end) también se procesa la última línea, aunque no tenga separador
+    private int scan(boolean end) throws CityException {
+        int limit = buffer.limit();
+        int start = 0;
+        for (int i = 0; i < limit; i++) {
+            byte b = buffer.get(i);
+            if (b == '\n' || b == '\r') {
+                if (b == '\r') {
+                    if (i + 1 == limit && !end) {
+                        break; // Puede ser \r\n partido entre dos bloques
+                    }
+                    if (i + 1 < limit && buffer.get(i + 1) == '\n') {
+                        line(start, i);
+                        start = ++i + 1;
+                        continue;
+                    }
+                }
+                line(start, i);
+                start = i + 1;
+            }
+        }
+        if (end && start < limit) {
+            line(start, limit); // Última línea sin separador
+            start = limit;
+        }
+        return start;
+    }
+
+    // Procesa la línea de bytes [from, to)
+    private void line(int from, int to) throws CityException {
+        lineNumber++;
+        int words = 0;
+        int i = from;
+        while (true) {
+            while (i < to && isSpace(buffer.get(i))) {
+                i++;
+            }
+            if (i == to) {
+                break;
+            }
+            int start = i;
+            while (i < to && !isSpace(buffer.get(i))) {
+                i++;
+            }
+            if (words < 4) {
+                starts[words] = start;
+                ends[words] = i;
+            }
+            words++;
+        }
+        if (words == 0) {
+            return; // Ignora líneas vacías
+        }
+        if (words != 3 && !(words == 4 && buffer.get(starts[3]) == 'x')) {
+            throw error("Formato de línea inválido. Se esperaban 3 elementos, pero se encontraron " + words + ".");
+        }
+        int r, c;
+        try {
+            r = parseInt(starts[1], ends[1]);
+            c = parseInt(starts[2], ends[2]);
+        } catch (NumberFormatException e) {
+            throw error("Formato de número inválido en '" + text(1) + "' o '" + text(2) + "'.");
+        }
+        int length = (words == 4) ? runLength() : 1;
+        if (!city.inLocations(r, c)) {
+            throw error("Coordenadas fuera de los límites (r=" + r + ", c=" + c + ").");
+        }
+        if (c + length - 1 >= city.getWidth()) {
+            // El tramo "xN" ocupa las columnas c .. c + N - 1 de la fila
+            throw error("Coordenadas fuera de los límites (r=" + r + ", c=" + (c + (long) length - 1) + ").");
+        }
+        int type = type();
+        for (int k = 0; k < length; k++) {
+            if (collecting) {
+                add(type, r * city.getWidth() + c + k);
+                continue;
+            }
+            try {
+                ItemTypes.create(type, city, r, c + k); // El ítem se ubica solo en la ciudad
+            } catch (RuntimeException e) {
+                throw error(creationError(text(0), e));
+            }
+        }
+    }
+
+    // Longitud del tramo de la cuarta palabra "xN", con N mayor que cero
+    private int runLength() throws CityException {
+        int from = starts[3] + 1;
+        try {
+            if (from < ends[3] && buffer.get(from) != '+') {
+                int length = parseInt(from, ends[3]);
+                if (length > 0) {
+                    return length;
+                }
+            }
+        } catch (NumberFormatException e) {
+            // Se informa abajo
+        }
+        throw error("Longitud de tramo inválida '" + text(3) + "'.");
+    }
+
+    /**
+     * Describe el error de una fábrica al crear un ítem, sin el número de línea.
+     */
+    static String creationError(String name, RuntimeException e) {
+        return "No se pudo crear una instancia de la clase '" + name + "' - " + e.getMessage();
+    }
+
+    // Error en la línea actual; al analizar sin crear, además se guarda
+    private CityException error(String detail) {
+        if (collecting) {
+            failure = detail;
+            failureLine = lineNumber;
+        }
+        return new CityException("Error en la línea " + lineNumber + ": " + detail);
+    }
+
+    // Guarda un ítem analizado
+    private void add(int type, int cell) {
+        if (count == types.length) {
+            types = Arrays.copyOf(types, 2 * count);
+            cells = Arrays.copyOf(cells, 2 * count);
+            lines = Arrays.copyOf(lines, 2 * count);
+        }
+        types[count] = type;
+        cells[count] = cell;
+        lines[count++] = lineNumber;
+    }
+
+    /**
+     * Devuelve el número de líneas analizadas.
+     */
+    int lineCount() {
+        return lineNumber;
+    }
+
+    // Los mismos espacios que \s en una expresión regular (los separadores de línea ya se quitaron)
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t' || b == 0x0b || b == '\f';
+    }
+
+    // Lee un entero con signo opcional, como Integer.parseInt
+    private int parseInt(int from, int to) {
+        boolean negative = false;
+        int i = from;
+        byte first = buffer.get(i);
+        if (first == '-' || first == '+') {
+            negative = (first == '-');
+            i++;
+        }
+        if (i == to) {
+            throw new NumberFormatException();
+        }
+        long value = 0;
+        for (; i < to; i++) {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException();
+            }
+            value = 10 * value + digit;
+            if (value > (long) Integer.MAX_VALUE + 1) {
+                throw new NumberFormatException();
+            }
+        }
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE) {
+            throw new NumberFormatException();
+        }
+        return (int) value;
+    }
+
+    // Identificador del tipo nombrado en la primera palabra de la línea
+    private int type() throws CityException {
+        int from = starts[0], length = ends[0] - starts[0];
+        for (int k = 0; k < known; k++) {
+            if (matches(names[k], from, length)) {
+                return ids[k];
+            }
+        }
+        String className = text(0);
+        int id = ItemTypes.idOf(className); // Una sola búsqueda por nombre
+        if (id <= 0) {
+            throw error("Clase no encontrada '" + className + "'.");
+        }
+        if (known == names.length) {
+            names = Arrays.copyOf(names, 2 * known);
+            ids = Arrays.copyOf(ids, 2 * known);
+        }
+        names[known] = className.getBytes(StandardCharsets.UTF_8);
+        ids[known++] = id;
+        return id;
+    }
+
+    // Indica si los bytes [from, from + length) del bloque son el nombre dado
+    private boolean matches(byte[] name, int from, int length) {
+        if (name.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (buffer.get(from + i) != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Texto de la palabra k de la línea actual (para nombres nuevos y mensajes de error)
+    private String text(int k) {
+        byte[] bytes = new byte[ends[k] - starts[k]];
+        buffer.get(starts[k], bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
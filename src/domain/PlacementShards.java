@@ -0,0 +1,303 @@
+package domain;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Importación y exportación en paralelo de archivos de ubicaciones ("Clase fila columna" por línea).
+ * <p>
+ * Al importar, los archivos se parten en trozos que empiezan al comienzo de una línea y cada trozo se analiza
+ * en un hilo (ver PlacementReader.parse), sin crear los ítems. Los ítems se crean después en el hilo que importa,
+ * trozo por trozo y en el orden del archivo, porque setItem() y los índices de la ciudad no admiten escrituras
+ * concurrentes; mientras tanto los demás hilos siguen analizando los trozos siguientes. Los errores se informan
+ * con el mismo mensaje y número de línea que la importación secuencial, después de crear los ítems anteriores.
+ * </p>
+ * <p>
+ * El formato por bandas consiste en un manifiesto de texto y un archivo de ubicaciones por banda de filas:
+ * </p>
+ * <pre>
+ *   City filas columnas
+ *   archivo-0.txt filaInicial filaFinal
+ *   archivo-1.txt filaInicial filaFinal
+ *   ...
+ * </pre>
+ * Los archivos de las bandas están en la carpeta del manifiesto y cada uno se puede importar por separado.
+ */
+final class PlacementShards {
+    // Tamaño máximo de un trozo, para proyectarlo en memoria como un solo ByteBuffer
+    private static final long MAX_PART = 1L << 28;
+
+    // Encabezado del manifiesto
+    private static final String HEADER = "City";
+
+    private PlacementShards() {
+    }
+
+    /**
+     * Importa un archivo de ubicaciones analizándolo en paralelo.
+     * Los archivos comprimidos con gzip no se pueden partir y, como con un solo hilo, se importan de forma secuencial.
+     *
+     * @param city    La ciudad.
+     * @param file    El archivo.
+     * @param workers Los hilos que analizan los trozos.
+     * @throws CityException si no se puede leer el archivo o alguna línea no es válida.
+     */
+    static void importParallel(City city, File file, ForkJoinPool workers) throws CityException {
+        List<Part> parts = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (PlacementReader.isGzip(channel) || workers.getParallelism() < 2) {
+                PlacementReader.read(city, file); // Con un solo hilo, analizar aparte solo agrega trabajo
+                return;
+            }
+            split(channel, file.getName(), workers.getParallelism() * 4, parts);
+        } catch (IOException e) {
+            throw new CityException("Error al leer el archivo: " + e.getMessage());
+        }
+        apply(city, parts, workers, false);
+    }
+
+    /**
+     * Importa una ciudad exportada por bandas, analizando las bandas (y los trozos de cada banda) en paralelo.
+     *
+     * @param city     La ciudad.
+     * @param manifest El manifiesto.
+     * @param workers  Los hilos que analizan los trozos.
+     * @throws CityException si el manifiesto no es válido o no es de una ciudad de estas dimensiones, no se puede leer
+     *                       algún archivo o alguna línea no es válida.
+     */
+    static void importShards(City city, File manifest, ForkJoinPool workers) throws CityException {
+        List<Part> parts = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(manifest))) {
+            String line = reader.readLine();
+            String[] header = (line == null) ? new String[0] : line.trim().split("\\s+");
+            if (header.length != 3 || !header[0].equals(HEADER)) {
+                throw new CityException("Manifiesto inválido: se esperaba '" + HEADER + " filas columnas'.");
+            }
+            int height = Integer.parseInt(header[1]), width = Integer.parseInt(header[2]);
+            if (height != city.getHeight() || width != city.getWidth()) {
+                throw new CityException("Manifiesto inválido: la ciudad exportada es de " + height + "x" + width
+                                        + " y esta es de " + city.getHeight() + "x" + city.getWidth() + ".");
+            }
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                String[] shard = line.split("\\s+");
+                if (shard.length != 3) {
+                    throw new CityException("Manifiesto inválido: '" + line + "'.");
+                }
+                int from = Integer.parseInt(shard[1]), to = Integer.parseInt(shard[2]);
+                if (from < 0 || from > to || to > height) {
+                    throw new CityException("Manifiesto inválido: filas " + from + " a " + to + " de '" + shard[0] + "'.");
+                }
+                File file = new File(manifest.getAbsoluteFile().getParentFile(), shard[0]);
+                try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                    if (PlacementReader.isGzip(channel)) {
+                        parts.add(new Part(shard[0], file, null, true));
+                    } else {
+                        split(channel, shard[0], workers.getParallelism(), parts);
+                    }
+                }
+            }
+        } catch (NumberFormatException e) {
+            throw new CityException("Manifiesto inválido: " + e.getMessage());
+        } catch (IOException e) {
+            throw new CityException("Error al leer el archivo: " + e.getMessage());
+        }
+        apply(city, parts, workers, true);
+    }
+
+    /**
+     * Exporta la ciudad por bandas de filas, escribiendo las bandas en paralelo.
+     *
+     * @param city     La ciudad.
+     * @param manifest El manifiesto; las bandas se llaman como él, sin extensión, seguido de -k.txt.
+     * @param shards   El número de bandas (como máximo, una por fila).
+     * @param workers  Los hilos que escriben las bandas.
+     * @throws CityException si no se puede escribir algún archivo.
+     * @throws IllegalArgumentException si el número de bandas no es positivo.
+     */
+    static void exportShards(City city, File manifest, int shards, ForkJoinPool workers) throws CityException {
+        if (shards <= 0) {
+            throw new IllegalArgumentException("Número de bandas inválido: " + shards);
+        }
+        city.materialize(); // Los bloques de un archivo proyectado se leen en un solo hilo
+        int height = city.getHeight();
+        shards = Math.min(shards, height);
+        String base = manifest.getName();
+        if (base.lastIndexOf('.') > 0) {
+            base = base.substring(0, base.lastIndexOf('.'));
+        }
+        File directory = manifest.getAbsoluteFile().getParentFile();
+        List<Future<Void>> writes = new ArrayList<>();
+        StringBuilder content = new StringBuilder(HEADER + " " + height + " " + city.getWidth() + "\n");
+        for (int k = 0; k < shards; k++) {
+            int from = (int) ((long) k * height / shards), to = (int) ((long) (k + 1) * height / shards);
+            String name = base + "-" + k + ".txt";
+            File file = new File(directory, name);
+            content.append(name).append(' ').append(from).append(' ').append(to).append('\n');
+            writes.add(workers.submit(() -> {
+                try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    PlacementWriter writer = new PlacementWriter(channel, false);
+                    writer.write(city, from, to);
+                    writer.flush();
+                }
+                return null;
+            }));
+        }
+        try {
+            for (Future<Void> write : writes) {
+                write.get();
+            }
+            try (Writer writer = new FileWriter(manifest)) {
+                writer.write(content.toString());
+            }
+        } catch (ExecutionException e) {
+            throw new CityException("Error al exportar la ciudad: " + e.getCause().getMessage());
+        } catch (IOException e) {
+            throw new CityException("Error al exportar la ciudad: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CityException("Error al exportar la ciudad: interrumpido");
+        } finally {
+            for (Future<Void> write : writes) {
+                write.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Trozo de un archivo que empieza al comienzo de una línea.
+     */
+    private static final class Part {
+        final String name;       // Nombre del archivo, para los mensajes de error
+        final File file;         // Archivo comprimido que se lee completo (o null)
+        final ByteBuffer bytes;  // Bytes del trozo proyectados en memoria (o null)
+        final boolean first;     // El trozo es el primero de su archivo: la numeración de líneas empieza de nuevo
+
+        Part(String name, File file, ByteBuffer bytes, boolean first) {
+            this.name = name;
+            this.file = file;
+            this.bytes = bytes;
+            this.first = first;
+        }
+
+        // Analiza el trozo sin crear los ítems
+        PlacementReader parse(City city) throws IOException {
+            if (file == null) {
+                return PlacementReader.parse(city, bytes);
+            }
+            try (GZIPInputStream in = new GZIPInputStream(new FileInputStream(file), 1 << 16)) {
+                return PlacementReader.parse(city, ByteBuffer.wrap(in.readAllBytes()));
+            }
+        }
+    }
+
+    // Parte el archivo en unos <b>count</b> trozos que terminan en un separador de línea y los proyecta en memoria
+    private static void split(FileChannel channel, String name, int count, List<Part> parts) throws IOException {
+        long size = channel.size();
+        count = (int) Math.max(count, (size + MAX_PART - 1) / MAX_PART);
+        long start = 0;
+        for (int k = 1; k <= count && start < size; k++) {
+            long end = (k == count) ? size : lineStart(channel, Math.max(start, k * size / count), size);
+            if (end > start) {
+                if (end - start > Integer.MAX_VALUE) {
+                    throw new IOException("línea demasiado larga en " + name);
+                }
+                parts.add(new Part(name, null, channel.map(FileChannel.MapMode.READ_ONLY, start, end - start), start == 0));
+                start = end;
+            }
+        }
+        if (size == 0) {
+            parts.add(new Part(name, null, ByteBuffer.allocate(0), true));
+        }
+    }
+
+    // Posición del comienzo de la primera línea que empieza después de <b>from</b> (o el final del archivo)
+    private static long lineStart(FileChannel channel, long from, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        long position = from;
+        boolean afterReturn = false; // El byte anterior fue un \r
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                byte b = buffer.get(i);
+                if (afterReturn) {
+                    return position + i + ((b == '\n') ? 1 : 0);
+                }
+                if (b == '\n') {
+                    return position + i + 1;
+                }
+                afterReturn = (b == '\r');
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    // Analiza los trozos en paralelo y crea sus ítems en orden; en cuanto hay un error se cancelan los trozos pendientes
+    private static void apply(City city, List<Part> parts, ForkJoinPool workers, boolean named) throws CityException {
+        List<Future<PlacementReader>> parsed = new ArrayList<>(parts.size());
+        for (Part part : parts) {
+            parsed.add(workers.submit((Callable<PlacementReader>) () -> part.parse(city)));
+        }
+        try {
+            int firstLine = 0; // Líneas de los trozos anteriores del mismo archivo
+            for (int k = 0; k < parts.size(); k++) {
+                Part part = parts.get(k);
+                PlacementReader reader = parsed.get(k).get();
+                parsed.set(k, null); // Libera los ítems ya creados
+                if (part.first) {
+                    firstLine = 0;
+                }
+                String prefix = named ? part.name + ": " : "";
+                int width = city.getWidth();
+                for (int i = 0; i < reader.count; i++) {
+                    int r = reader.cells[i] / width, c = reader.cells[i] % width;
+                    try {
+                        ItemTypes.create(reader.types[i], city, r, c); // El ítem se ubica solo en la ciudad
+                    } catch (RuntimeException e) {
+                        throw new CityException(prefix + "Error en la línea " + (firstLine + reader.lines[i]) + ": "
+                                                + PlacementReader.creationError(ItemTypes.nameOf(reader.types[i]), e));
+                    }
+                }
+                if (reader.failure != null) {
+                    throw new CityException(prefix + "Error en la línea " + (firstLine + reader.failureLine) + ": " + reader.failure);
+                }
+                firstLine += reader.lineCount();
+            }
+        } catch (ExecutionException e) {
+            throw new CityException("Error al leer el archivo: " + e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CityException("Error al leer el archivo: interrumpido");
+        } finally {
+            for (Future<PlacementReader> future : parsed) {
+                if (future != null) {
+                    future.cancel(true);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package domain;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Escritor de archivos de ubicaciones ("Clase fila columna" por línea) para City.exportData().
+ * Escribe en un bloque de bytes que se reutiliza y que se vacía al canal cuando se llena, de modo que cada ítem
+ * no crea cadenas ni hace una escritura propia. Los nombres de los tipos se convierten a bytes una sola vez.
+ * <p>
+ * En el modo por tramos, cada tramo de ítems consecutivos del mismo tipo en una fila se escribe en una sola línea
+ * "Clase fila columna xN", donde N es la longitud del tramo (PlacementReader la acepta al importar).
+ * Los tramos de un solo ítem se escriben como una línea normal.
+ * </p>
+ */
+final class PlacementWriter {
+    // Tamaño del bloque de escritura
+    private static final int BLOCK = 1 << 16;
+
+    // Espacio máximo de una línea sin el nombre: tres enteros con signo, separadores y la x del tramo
+    private static final int MAX_NUMBERS = 3 * 11 + 5;
+
+    private final WritableByteChannel channel;
+    private final boolean runLength;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BLOCK);
+    private final byte[] digits = new byte[11];
+
+    // Nombres en bytes por identificador de ItemTypes, y por clase para los tipos sin registrar
+    private byte[][] names = new byte[16][];
+    private final Map<Class<?>, byte[]> unregistered = new HashMap<>();
+
+    /**
+     * Crea un escritor sobre un canal.
+     *
+     * @param channel   El canal (no se cierra al terminar).
+     * @param runLength true para escribir tramos "xN".
+     */
+    PlacementWriter(WritableByteChannel channel, boolean runLength) {
+        this.channel = channel;
+        this.runLength = runLength;
+    }
+
+    /**
+     * Escribe los ítems de las filas [from, to) en orden de filas.
+     *
+     * @throws IOException si no se puede escribir en el canal.
+     */
+    void write(City city, int from, int to) throws IOException {
+        int width = city.getWidth();
+        int end = to * width;
+        int cell = city.nextOccupied(from * width);
+        while (cell >= 0 && cell < end) {
+            int r = cell / width, c = cell % width;
+            Item item = city.getItem(r, c);
+            int length = 1;
+            if (runLength) {
+                // Extiende el tramo mientras la celda siguiente de la fila tenga un ítem de la misma clase
+                Class<?> type = item.getClass();
+                while (c + length < width && city.nextOccupied(cell + length) == cell + length
+                       && city.getItem(r, c + length).getClass() == type) {
+                    length++;
+                }
+            }
+            line(name(item), r, c, length);
+            cell = city.nextOccupied(cell + length);
+        }
+    }
+
+    /**
+     * Escribe en el canal lo que queda en el bloque.
+     *
+     * @throws IOException si no se puede escribir en el canal.
+     */
+    void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    // Escribe una línea "nombre fila columna" o "nombre fila columna xN"
+    private void line(byte[] name, int r, int c, int length) throws IOException {
+        if (buffer.remaining() < name.length + MAX_NUMBERS) {
+            flush();
+        }
+        buffer.put(name);
+        buffer.put((byte) ' ');
+        number(r);
+        buffer.put((byte) ' ');
+        number(c);
+        if (length > 1) {
+            buffer.put((byte) ' ');
+            buffer.put((byte) 'x');
+            number(length);
+        }
+        buffer.put((byte) '\n');
+    }
+
+    // Escribe un entero no negativo en decimal
+    private void number(int value) {
+        int n = 0;
+        do {
+            digits[n++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        while (n > 0) {
+            buffer.put(digits[--n]);
+        }
+    }
+
+    // Nombre del tipo del ítem en bytes
+    private byte[] name(Item item) {
+        int id = ItemTypes.idOf(item);
+        if (id < 0) {
+            return unregistered.computeIfAbsent(item.getClass(), type -> bytes(ItemTypes.nameOf(item)));
+        }
+        if (id >= names.length) {
+            byte[][] grown = new byte[Math.max(2 * names.length, id + 1)][];
+            System.arraycopy(names, 0, grown, 0, names.length);
+            names = grown;
+        }
+        if (names[id] == null) {
+            names[id] = bytes(ItemTypes.nameOf(id));
+        }
+        return names[id];
+    }
+
+    // Bytes de un nombre, que debe caber en un bloque
+    private static byte[] bytes(String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > BLOCK - MAX_NUMBERS) {
+            throw new IllegalArgumentException("Nombre de tipo demasiado largo: " + name);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,209 @@
+package domain;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Conteos de vecinos en un radio R (ver City.setNeighborhoodRadius()): las celdas a distancia de Chebyshev
+ * entre 1 y R, es decir, el cuadrado de (2R + 1) x (2R + 1) celdas centrado en la celda, sin ella.
+ * <p>
+ * Guarda un árbol de Fenwick en dos dimensiones de las celdas ocupadas y otro por cada clase de ítem: la suma de
+ * cualquier rectángulo se obtiene con cuatro sumas de prefijos, por lo que contar los vecinos y los vecinos iguales
+ * cuesta O(log filas * log columnas) sea cual sea el radio. En el toro, un cuadrado que cruza un borde se parte en
+ * hasta cuatro rectángulos.
+ * </p>
+ * <p>
+ * Cada cambio de ítem actualiza los árboles de las dos clases afectadas y el de las celdas ocupadas, con el mismo
+ * costo. Así las consultas son siempre exactas sin reconstruir nada entre turnos, también en modo SEQUENTIAL,
+ * donde los ítems se mueven durante el turno.
+ * </p>
+ */
+final class RadiusCounts {
+    private final int height, width, radius;
+    private final boolean wraps;
+
+    // Clase del ítem de cada celda, como identificador pequeño (0 si está vacía)
+    private final short[] types;
+
+    // Identificadores asignados a cada clase de ítem
+    private final Map<Class<?>, Short> ids = new HashMap<>();
+
+    // Árboles: trees[0] cuenta las celdas ocupadas y trees[t] las de la clase t, con la posición r * width + c
+    // para el nodo (r, c). El árbol de una clase se crea con su primer ítem
+    private int[][] trees = new int[1][];
+
+    /**
+     * Crea los conteos de una ciudad a partir de los ítems que ya contiene.
+     *
+     * @param city   La ciudad.
+     * @param radius El radio, mayor que 1.
+     */
+    RadiusCounts(City city, int radius) {
+        this.height = city.getHeight();
+        this.width = city.getWidth();
+        this.radius = radius;
+        this.wraps = (city.getTopology() == City.TORUS);
+        types = new short[height * width];
+        for (int cell = city.nextOccupied(0); cell >= 0; cell = city.nextOccupied(cell + 1)) {
+            types[cell] = idOf(city.getItem(cell / width, cell % width));
+        }
+        trees = new int[ids.size() + 1][];
+        for (int t = 0; t < trees.length; t++) {
+            trees[t] = build(t);
+        }
+    }
+
+    // Identificador de la clase de un ítem
+    private short idOf(Item e) {
+        if (e == null) {
+            return 0;
+        }
+        Short id = ids.get(e.getClass());
+        if (id == null) {
+            id = (short) (ids.size() + 1);
+            ids.put(e.getClass(), id);
+        }
+        return id;
+    }
+
+    // Construye en tiempo lineal el árbol de la clase t (0: cualquier ítem): cada nodo suma sus hijos por columnas
+    // y después por filas
+    private int[] build(int t) {
+        int[] tree = new int[height * width];
+        for (int cell = 0; cell < tree.length; cell++) {
+            tree[cell] = matches(types[cell], t);
+        }
+        for (int r = 0; r < height; r++) {
+            int row = r * width;
+            for (int c = 0; c < width; c++) {
+                int parent = c | (c + 1);
+                if (parent < width) {
+                    tree[row + parent] += tree[row + c];
+                }
+            }
+        }
+        for (int r = 0; r < height; r++) {
+            int parent = r | (r + 1);
+            if (parent < height) {
+                for (int c = 0; c < width; c++) {
+                    tree[parent * width + c] += tree[r * width + c];
+                }
+            }
+        }
+        return tree;
+    }
+
+    /**
+     * Registra que la celda (r, c) pasa a contener el ítem <b>e</b> (o queda vacía si es null).
+     */
+    void setItem(int r, int c, Item e) {
+        int cell = r * width + c;
+        short before = types[cell];
+        short after = idOf(e);
+        if (before == after) {
+            return;
+        }
+        types[cell] = after;
+        if (after >= trees.length) {
+            trees = Arrays.copyOf(trees, after + 1);
+        }
+        if (before == 0) {
+            add(trees[0], r, c, 1);
+        } else if (after == 0) {
+            add(trees[0], r, c, -1);
+        }
+        if (before != 0) {
+            add(trees[before], r, c, -1);
+        }
+        if (after != 0) {
+            if (trees[after] == null) {
+                trees[after] = new int[height * width]; // Primer ítem de la clase: el árbol está vacío
+            }
+            add(trees[after], r, c, 1);
+        }
+    }
+
+    // Suma delta al nodo (r, c) y a los que lo incluyen
+    private void add(int[] tree, int r, int c, int delta) {
+        for (int i = r; i < height; i |= i + 1) {
+            int row = i * width;
+            for (int j = c; j < width; j |= j + 1) {
+                tree[row + j] += delta;
+            }
+        }
+    }
+
+    /**
+     * Devuelve el número de celdas ocupadas a distancia entre 1 y el radio de la celda (r, c).
+     */
+    int total(int r, int c) {
+        return square(trees[0], r, c) - (types[r * width + c] != 0 ? 1 : 0);
+    }
+
+    /**
+     * Devuelve el número de celdas a distancia entre 1 y el radio de la celda (r, c) con un ítem de la misma clase
+     * que el de la celda, o 0 si está vacía.
+     */
+    int same(int r, int c) {
+        short type = types[r * width + c];
+        return (type == 0) ? 0 : square(trees[type], r, c) - 1;
+    }
+
+    // 1 si la clase cuenta para t (0: cualquier ítem), 0 si no
+    private static int matches(short type, int t) {
+        return (t == 0 ? type != 0 : type == t) ? 1 : 0;
+    }
+
+    // Suma del árbol sobre el cuadrado de (r, c), incluida ella: recortado a la ciudad, o partido en los bordes del toro
+    private int square(int[] tree, int r, int c) {
+        int top = r - radius, bottom = r + radius, left = c - radius, right = c + radius;
+        if (!wraps) {
+            return rect(tree, Math.max(0, top), Math.min(height - 1, bottom),
+                        Math.max(0, left), Math.min(width - 1, right));
+        }
+        return wrappedRows(tree, top, bottom, left, right);
+    }
+
+    // Parte las filas [top, bottom] por el borde del toro
+    private int wrappedRows(int[] tree, int top, int bottom, int left, int right) {
+        if (top < 0) {
+            return wrappedColumns(tree, top + height, height - 1, left, right)
+                 + wrappedColumns(tree, 0, bottom, left, right);
+        }
+        if (bottom >= height) {
+            return wrappedColumns(tree, top, height - 1, left, right)
+                 + wrappedColumns(tree, 0, bottom - height, left, right);
+        }
+        return wrappedColumns(tree, top, bottom, left, right);
+    }
+
+    // Parte las columnas [left, right] por el borde del toro
+    private int wrappedColumns(int[] tree, int top, int bottom, int left, int right) {
+        if (left < 0) {
+            return rect(tree, top, bottom, left + width, width - 1) + rect(tree, top, bottom, 0, right);
+        }
+        if (right >= width) {
+            return rect(tree, top, bottom, left, width - 1) + rect(tree, top, bottom, 0, right - width);
+        }
+        return rect(tree, top, bottom, left, right);
+    }
+
+    // Suma del rectángulo de filas [top, bottom] y columnas [left, right]
+    private int rect(int[] tree, int top, int bottom, int left, int right) {
+        return prefix(tree, bottom, right) - prefix(tree, top - 1, right)
+             - prefix(tree, bottom, left - 1) + prefix(tree, top - 1, left - 1);
+    }
+
+    // Suma del rectángulo de filas [0, r] y columnas [0, c] (0 si alguno es negativo)
+    private int prefix(int[] tree, int r, int c) {
+        int sum = 0;
+        for (int i = r; i >= 0; i = (i & (i + 1)) - 1) {
+            int row = i * width;
+            for (int j = c; j >= 0; j = (j & (j + 1)) - 1) {
+                sum += tree[row + j];
+            }
+        }
+        return sum;
+    }
+}
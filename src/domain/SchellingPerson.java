@@ -12,9 +12,25 @@ import java.io.Serializable;
  * Está insatisfecha si menos de 1/3 de sus vecinos son similares.
  * Está satisfecha si más de 1/3 de sus vecinos son similares, pero no todos.
  * </p>
+ * <p>
+ * Cuando está insatisfecha se mueve según su política de reubicación: a una celda vecina vacía
+ * (NEARBY, por defecto) o a una celda vacía al azar de toda la ciudad (ANYWHERE), como en el modelo clásico.
+ * </p>
  */
 public class SchellingPerson extends Person implements Serializable {
     private static final long serialVersionUID = 1L; // Versión para la serialización
+
+    // Políticas de reubicación
+    public static final int NEARBY = 0;    // Se mueve a la primera celda vecina vacía
+    public static final int ANYWHERE = 1;  // Se mueve a una celda vacía al azar de toda la ciudad
+
+    // Política de reubicación de esta persona
+    private int relocation = NEARBY;
+
+    // Celda vacía elegida en decide() a la que se moverá en change()
+    private transient boolean moving;
+    private transient int targetRow, targetColumn;
+
     /**
      * Constructor de la clase SchellingPerson.
      * Inicializa a la persona Schelling en una posición específica de la ciudad.
@@ -40,27 +56,9 @@ public class SchellingPerson extends Person implements Serializable {
      */
     @Override
     public void decide() {
-        int totalNeighbors = 0;
-        int similarNeighbors = 0;
-
-        // Contar vecinos y vecinos similares
-        for (int dr = -1; dr <= 1; dr++) {
-            for (int dc = -1; dc <= 1; dc++) {
-                if (dr == 0 && dc == 0) continue; // Ignorar la posición actual
-                int newRow = row + dr;
-                int newCol = column + dc;
-
-                if (city.inLocations(newRow, newCol)) {
-                    Item neighbor = city.getItem(newRow, newCol);
-                    if (neighbor != null) {
-                        totalNeighbors++;
-                        if (neighbor.getClass() == this.getClass()) {
-                            similarNeighbors++;
-                        }
-                    }
-                }
-            }
-        }
+        // Contar vecinos y vecinos similares (O(1) si la ciudad mantiene los conteos)
+        int totalNeighbors = city.neighbors(row, column);
+        int similarNeighbors = city.neighborsEquals(row, column);
 
         // Determinar el estado emocional
         if (totalNeighbors == 0) {
@@ -72,40 +70,96 @@ public class SchellingPerson extends Person implements Serializable {
         } else {
             setState(Agent.HAPPY); // Satisfecho si más de 1/3 de los vecinos son similares
         }
+        moving = (state == Agent.DISSATISFIED) && findEmptySpot();
     }
 
     /**
      * Cambia el estado de la persona Schelling.
-     * Si está insatisfecha, intenta moverse a una posición vacía.
+     * Si quedó insatisfecha y encontró una posición vacía al decidir, intenta moverse a ella.
      */
     @Override
     public void change() {
-        if (state == Agent.DISSATISFIED) {
+        if (moving) {
+            moving = false;
             moveToEmptySpot();
         }
     }
 
     /**
-     * Intenta moverse a una posición vacía en la ciudad.
-     * Busca una posición vacía en las celdas adyacentes y se mueve a la primera que encuentra.
+     * Indica si la persona Schelling solo depende de sus vecinos.
+     * Con la política NEARBY, si su vecindario no cambia, volver a decidir da el mismo estado y el mismo
+     * intento de movimiento. Con ANYWHERE el destino depende de las celdas vacías de toda la ciudad.
+     *
+     * @return true si su política de reubicación es NEARBY, false en caso contrario.
      */
-    private void moveToEmptySpot() {
-        // Buscar una posición vacía aleatoria
-        for (int dr = -1; dr <= 1; dr++) {
-            for (int dc = -1; dc <= 1; dc++) {
-                if (dr == 0 && dc == 0) continue; // Ignorar la posición actual
-                int newRow = row + dr;
-                int newCol = column + dc;
+    @Override
+    public boolean dependsOnlyOnNeighbors() {
+        return relocation == NEARBY;
+    }
+
+    /**
+     * Devuelve la política de reubicación de la persona.
+     *
+     * @return NEARBY o ANYWHERE.
+     */
+    public int getRelocation() {
+        return relocation;
+    }
 
-                if (city.inLocations(newRow, newCol) && city.isEmpty(newRow, newCol)) {
-                    // Moverse a la nueva posición
-                    city.setItem(row, column, null); // Liberar posición actual
-                    row = newRow;
-                    column = newCol;
-                    city.setItem(row, column, this); // Ocupar nueva posición
-                    return; // Salir después de moverse
-                }
+    /**
+     * Cambia la política de reubicación de la persona.
+     * La política ANYWHERE activa el índice de celdas vacías de la ciudad si no lo estaba.
+     *
+     * @param relocation La nueva política, NEARBY o ANYWHERE.
+     * @throws IllegalArgumentException si la política no existe.
+     */
+    public void setRelocation(int relocation) {
+        if (relocation != NEARBY && relocation != ANYWHERE) {
+            throw new IllegalArgumentException("Política de reubicación inválida: " + relocation);
+        }
+        this.relocation = relocation;
+        if (relocation == ANYWHERE && !city.isVacancyIndexing()) {
+            city.setVacancyIndexing(true);
+        }
+        city.setItem(row, column, this); // Vuelve a registrarse: cambia si depende solo de sus vecinos
+    }
+
+    /**
+     * Busca una posición vacía según la política de reubicación y la reserva como destino.
+     *
+     * @return true si encontró una posición vacía, false en caso contrario.
+     */
+    private boolean findEmptySpot() {
+        if (relocation == ANYWHERE) {
+            int cell = city.randomEmptyCell(row, column);
+            if (cell < 0) {
+                return false;
+            }
+            targetRow = cell / city.getWidth();
+            targetColumn = cell % city.getWidth();
+            city.reserve(row, column, targetRow, targetColumn);
+            return true;
+        }
+        int width = city.getWidth();
+        for (int k = 0; k < city.getNeighborhoodSize(); k++) { // Vecinas según la topología de la ciudad
+            int cell = city.neighbor(row, column, k);
+            if (cell >= 0 && city.isEmpty(cell / width, cell % width)) {
+                targetRow = cell / width;
+                targetColumn = cell % width;
+                city.reserve(row, column, targetRow, targetColumn);
+                return true;
             }
         }
+        return false;
+    }
+
+    /**
+     * Intenta moverse a la posición vacía elegida al decidir.
+     */
+    private void moveToEmptySpot() {
+        if (city.move(row, column, targetRow, targetColumn)) {
+            row = targetRow;
+            column = targetColumn;
+        }
     }
 }
\ No newline at end of file
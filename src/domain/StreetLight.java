@@ -7,11 +7,14 @@ import java.awt.Color;
  * El poste de luz alterna entre dos colores: gris oscuro (apagado) y naranja (encendido).
  */
 public class StreetLight extends TrafficLight {
+    // Valor calculado para la clase original, para seguir leyendo los archivos .dat ya guardados
+    private static final long serialVersionUID = 613231073408161967L;
+
     // Colores que representan los estados del poste de luz
-    private static final Color[] COLORS = {Color.DARK_GRAY, Color.ORANGE}; // Gris oscuro (apagado), Naranja (encendido)
+    static final Color[] COLORS = {Color.DARK_GRAY, Color.ORANGE}; // Gris oscuro (apagado), Naranja (encendido)
 
     // Contador de turnos para controlar el cambio de estado
-    private int turnCounter = 0;
+    protected int turnCounter = 0;
 
     /**
      * Constructor de la clase StreetLight.
@@ -0,0 +1,102 @@
+package domain;
+
+/**
+ * Vecindario de las celdas de una cuadrícula según su topología (ver City.setTopology()).
+ * Las vecinas de cada celda se numeran de 0 a size - 1 y se obtienen como índices planos (fila * ancho + columna)
+ * con neighbor(), sin crear objetos.
+ * <p>
+ * Los desplazamientos de cada vecina se calculan una vez, también como desplazamientos del índice plano.
+ * Las celdas interiores (que no están en el borde) suman directamente el desplazamiento plano, sin comprobar
+ * límites, como si la cuadrícula tuviera un borde de relleno; solo las celdas del borde comprueban los límites
+ * o, en el toro, dan la vuelta.
+ * </p>
+ * <p>
+ * En la cuadrícula hexagonal las filas impares están desplazadas media celda a la derecha, por lo que las filas
+ * pares e impares usan tablas distintas.
+ * </p>
+ */
+final class Topology {
+    // Desplazamientos (fila, columna) de cada topología, en el orden en que se recorren las vecinas
+    private static final int[][] MOORE = {{-1, -1}, {-1, 0}, {-1, 1}, {0, -1}, {0, 1}, {1, -1}, {1, 0}, {1, 1}};
+    private static final int[][] VON_NEUMANN = {{-1, 0}, {0, -1}, {0, 1}, {1, 0}};
+    private static final int[][] HEX_EVEN = {{-1, -1}, {-1, 0}, {0, -1}, {0, 1}, {1, -1}, {1, 0}};
+    private static final int[][] HEX_ODD = {{-1, 0}, {-1, 1}, {0, -1}, {0, 1}, {1, 0}, {1, 1}};
+
+    // Topología (City.MOORE, City.VON_NEUMANN, City.TORUS o City.HEX) y dimensiones
+    final int kind, height, width;
+
+    // Número de vecinas de cada celda
+    final int size;
+
+    // Las celdas del borde dan la vuelta (toro)
+    private final boolean wraps;
+
+    // 1 si las filas impares usan su propia tabla (hexagonal), 0 si no
+    private final int parityMask;
+
+    // Desplazamientos de fila, de columna y del índice plano, por paridad de la fila
+    private final int[][] rowOffsets, columnOffsets, flatOffsets;
+
+    /**
+     * Crea el vecindario de una cuadrícula de <b>height</b> x <b>width</b> celdas.
+     *
+     * @throws IllegalArgumentException si la topología no existe, o si es un toro de menos de 3 filas o columnas
+     *         (una celda sería vecina de sí misma o dos veces de la misma celda).
+     */
+    Topology(int kind, int height, int width) {
+        int[][][] tables;
+        switch (kind) {
+            case City.MOORE:
+            case City.TORUS:
+                tables = new int[][][] {MOORE, MOORE};
+                break;
+            case City.VON_NEUMANN:
+                tables = new int[][][] {VON_NEUMANN, VON_NEUMANN};
+                break;
+            case City.HEX:
+                tables = new int[][][] {HEX_EVEN, HEX_ODD};
+                break;
+            default:
+                throw new IllegalArgumentException("Topología inválida: " + kind);
+        }
+        if (kind == City.TORUS && (height < 3 || width < 3)) {
+            throw new IllegalArgumentException("Un toro necesita al menos 3x3 celdas: " + height + "x" + width);
+        }
+        this.kind = kind;
+        this.height = height;
+        this.width = width;
+        this.size = tables[0].length;
+        this.wraps = (kind == City.TORUS);
+        this.parityMask = (kind == City.HEX) ? 1 : 0;
+        rowOffsets = new int[2][size];
+        columnOffsets = new int[2][size];
+        flatOffsets = new int[2][size];
+        for (int p = 0; p < 2; p++) {
+            for (int k = 0; k < size; k++) {
+                rowOffsets[p][k] = tables[p][k][0];
+                columnOffsets[p][k] = tables[p][k][1];
+                flatOffsets[p][k] = tables[p][k][0] * width + tables[p][k][1];
+            }
+        }
+    }
+
+    /**
+     * Devuelve el índice plano de la vecina <b>k</b> (0 <= k < size) de la celda (r, c) dentro de la cuadrícula.
+     *
+     * @return El índice plano de la vecina, o -1 si queda fuera de una cuadrícula acotada.
+     */
+    int neighbor(int r, int c, int k) {
+        int p = r & parityMask;
+        if (((r - 1) | (c - 1) | (height - 2 - r) | (width - 2 - c)) >= 0) {
+            return r * width + c + flatOffsets[p][k]; // Celda interior
+        }
+        int nr = r + rowOffsets[p][k], nc = c + columnOffsets[p][k];
+        if (wraps) {
+            nr = (nr + height) % height;
+            nc = (nc + width) % width;
+        } else if (nr < 0 || nr >= height || nc < 0 || nc >= width) {
+            return -1;
+        }
+        return nr * width + nc;
+    }
+}
@@ -11,7 +11,7 @@ public class TrafficLight implements Item, Serializable { // Agregar Serializabl
     private static final long serialVersionUID = 1L;
 
     // Colores que representan los estados del semáforo
-    private static final Color[] COLORS = {Color.RED, Color.YELLOW, Color.GREEN, Color.YELLOW};
+    static final Color[] COLORS = {Color.RED, Color.YELLOW, Color.GREEN, Color.YELLOW};
 
     // Índice que indica el color actual del semáforo
     protected int colorIndex = 0;
@@ -0,0 +1,68 @@
+package domain;
+
+/**
+ * Índice de celdas vacías de una ciudad.
+ * Guarda las celdas vacías en una lista densa y, para cada celda, su posición en esa lista,
+ * de modo que ocupar o liberar una celda cuesta O(1) (se quita intercambiándola con la última)
+ * y elegir una celda vacía al azar también cuesta O(1).
+ */
+class Vacancies {
+    // Celdas vacías, como índices planos (fila * width + columna), en las posiciones [0, size)
+    private final int[] cells;
+
+    // Posición de cada celda en la lista, o -1 si está ocupada
+    private final int[] position;
+
+    // Número de celdas vacías
+    private int size;
+
+    /**
+     * Crea el índice a partir de las celdas ocupadas de la ciudad.
+     *
+     * @param occupancy El índice de celdas ocupadas.
+     */
+    Vacancies(Occupancy occupancy) {
+        int width = occupancy.width;
+        cells = new int[occupancy.height * width];
+        position = new int[cells.length];
+        for (int cell = 0; cell < cells.length; cell++) {
+            if (occupancy.get(cell / width, cell % width)) {
+                position[cell] = -1;
+            } else {
+                position[cell] = size;
+                cells[size++] = cell;
+            }
+        }
+    }
+
+    /**
+     * Registra que la celda con índice plano <b>cell</b> queda ocupada o vacía.
+     */
+    void set(int cell, boolean occupied) {
+        int p = position[cell];
+        if (occupied && p >= 0) {
+            int last = cells[--size];
+            cells[p] = last;
+            position[last] = p;
+            position[cell] = -1;
+        } else if (!occupied && p < 0) {
+            position[cell] = size;
+            cells[size++] = cell;
+        }
+    }
+
+    /**
+     * Devuelve el número de celdas vacías.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Devuelve la celda vacía en la posición <b>i</b> de la lista, con 0 <= i < size().
+     * El orden de la lista no tiene significado: cambia con cada celda que se ocupa.
+     */
+    int get(int i) {
+        return cells[i];
+    }
+}
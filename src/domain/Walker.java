@@ -10,7 +10,7 @@ import java.io.Serializable;
  */
 public class Walker extends Person implements Serializable {
     // Fila deseada hacia la que el caminante intenta moverse
-    private int desiredRow;
+    protected int desiredRow;
     private static final long serialVersionUID = 1L; // Versión para la serialización
 
     /**
@@ -34,20 +34,7 @@ public class Walker extends Person implements Serializable {
      * @return true si hay ítems cercanos, false en caso contrario.
      */
     private boolean hasItemNearby() {
-        for (int dr = -1; dr <= 1; dr++) {
-            for (int dc = -1; dc <= 1; dc++) {
-                if (dr == 0 && dc == 0) continue; // Ignorar la posición actual
-                int newRow = row + dr;
-                int newCol = column + dc;
-                // Verificar límites y existencia de ítem
-                if (newRow >= 0 && newRow < city.getSize() && 
-                    newCol >= 0 && newCol < city.getSize() && 
-                    city.getItem(newRow, newCol) != null) {
-                    return true;
-                }
-            }
-        }
-        return false;
+        return city.hasNeighbors(row, column);
     }
 
     /**
@@ -71,6 +58,7 @@ public class Walker extends Person implements Serializable {
                 state = Agent.DISSATISFIED;
             }
         }
+        city.reserve(row, column, desiredRow, column);
     }
 
     /**
@@ -80,10 +68,8 @@ public class Walker extends Person implements Serializable {
     @Override
     public void change() {
         super.change(); // Incrementa steps
-        if (city.isEmpty(desiredRow, column)) {
-            city.setItem(row, column, null); // Libera posición actual
+        if (city.move(row, column, desiredRow, column)) {
             row = desiredRow; // Actualiza fila
-            city.setItem(row, column, this); // Ocupa nueva posición
         }
     }
 
@@ -0,0 +1,205 @@
+package presentation;
+import domain.*;
+
+import java.io.File;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Clase CityConsole que ejecuta la simulación de la ciudad sin interfaz gráfica.
+ * Pensada para simulaciones largas en servidores sin pantalla: carga o genera una ciudad,
+ * avanza el número de turnos pedido, informa los turnos por segundo y las estadísticas finales
+ * y guarda el resultado.
+ * <p>
+ * Uso: java presentation.CityConsole [opciones]
+ * </p>
+ * <pre>
+ *   -open archivo.city          Abre una ciudad guardada (.city o .dat)
+ *   -import archivo.txt         Importa ítems sobre la ciudad indicada antes (-open o -random)
+ *                               o, si no hay ninguna, sobre una ciudad vacía de 25x25
+ *   -random filas columnas densidad semilla
+ *                               Genera una ciudad al azar con todos los tipos de ítems
+ *   -ticks n                    Número de turnos a simular (10 por defecto)
+ *   -mode sequential|synchronous|parallel
+ *                               Modo de avance de la ciudad (sin -mode se conserva el de la
+ *                               ciudad abierta; una ciudad nueva usa sequential)
+ *   -topology moore|vonneumann|torus|hex
+ *                               Topología de la cuadrícula (vecinas de cada celda)
+ *   -radius n                   Radio del vecindario de las personas Schelling (1 por defecto)
+ *   -save archivo.city          Guarda la ciudad final (.city o .dat)
+ *   -export archivo.txt         Exporta la ciudad final
+ * </pre>
+ * Sin -open, -import ni -random se usa la ciudad por defecto de la interfaz gráfica.
+ */
+public class CityConsole {
+    private static final int DEFAULT_TICKS = 10; // Turnos a simular si no se indica -ticks
+
+    private City theCity; // Ciudad que se está simulando
+    private int ticks = DEFAULT_TICKS; // Turnos a simular
+    private File saveFile, exportFile; // Archivos donde se escribe el resultado (pueden ser null)
+
+    /**
+     * Constructor privado de CityConsole. Interpreta los argumentos y prepara la ciudad.
+     *
+     * @param args Los argumentos de la línea de comandos.
+     * @throws CityException si no se puede abrir o importar la ciudad.
+     * @throws IllegalArgumentException si algún argumento es inválido.
+     */
+    private CityConsole(String[] args) throws CityException {
+        int mode = -1;     // Sin -mode se conserva el de la ciudad
+        int topology = -1; // Sin -topology se conserva la de la ciudad
+        int radius = 0;    // Sin -radius se conserva el de la ciudad
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-open":
+                    theCity = City.open(new File(value(args, ++i)));
+                    break;
+                case "-import":
+                    if (theCity == null) {
+                        theCity = new City(25, 25);
+                    }
+                    theCity.importData(new File(value(args, ++i)));
+                    break;
+                case "-random":
+                    theCity = City.random(number(args, i + 1), number(args, i + 2),
+                                          Double.parseDouble(value(args, i + 3)), Long.parseLong(value(args, i + 4)));
+                    i += 4;
+                    break;
+                case "-ticks":
+                    ticks = number(args, ++i);
+                    break;
+                case "-mode":
+                    mode = modeOf(value(args, ++i));
+                    break;
+                case "-topology":
+                    topology = topologyOf(value(args, ++i));
+                    break;
+                case "-radius":
+                    radius = number(args, ++i);
+                    if (radius < 1) {
+                        throw new IllegalArgumentException("Radio de vecindario inválido: " + radius);
+                    }
+                    break;
+                case "-save":
+                    saveFile = new File(value(args, ++i));
+                    break;
+                case "-export":
+                    exportFile = new File(value(args, ++i));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Opción desconocida: " + args[i]);
+            }
+        }
+        if (theCity == null) {
+            theCity = new City();
+        }
+        if (mode >= 0) {
+            theCity.setTickMode(mode);
+        }
+        if (radius > 0) {
+            theCity.setNeighborhoodRadius(1); // El radio nuevo se valida con la topología final
+        }
+        if (topology >= 0) {
+            theCity.setTopology(topology);
+        }
+        if (radius > 0) {
+            theCity.setNeighborhoodRadius(radius);
+        }
+    }
+
+    // Valor de la opción en la posición i
+    private static String value(String[] args, int i) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException("Falta el valor de " + args[args.length - 1]);
+        }
+        return args[i];
+    }
+
+    // Valor entero de la opción en la posición i
+    private static int number(String[] args, int i) {
+        return Integer.parseInt(value(args, i));
+    }
+
+    // Modo de avance a partir de su nombre
+    private static int modeOf(String name) {
+        switch (name) {
+            case "sequential": return City.SEQUENTIAL;
+            case "synchronous": return City.SYNCHRONOUS;
+            case "parallel": return City.PARALLEL;
+            default: throw new IllegalArgumentException("Modo de avance desconocido: " + name);
+        }
+    }
+
+    // Topología a partir de su nombre
+    private static int topologyOf(String name) {
+        switch (name) {
+            case "moore": return City.MOORE;
+            case "vonneumann": return City.VON_NEUMANN;
+            case "torus": return City.TORUS;
+            case "hex": return City.HEX;
+            default: throw new IllegalArgumentException("Topología desconocida: " + name);
+        }
+    }
+
+    /**
+     * Simula los turnos, informa el rendimiento y las estadísticas, y escribe el resultado.
+     *
+     * @throws CityException si no se puede guardar o exportar la ciudad.
+     */
+    private void execute() throws CityException {
+        System.out.println("Ciudad de " + theCity.getHeight() + "x" + theCity.getWidth() + " con " + theCity.countItems() + " ítems");
+        long start = System.nanoTime();
+        theCity.run(ticks);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d turnos en %.3f s (%.1f turnos/s)%n", ticks, seconds, (seconds > 0) ? ticks / seconds : 0.0);
+        printStatistics();
+        if (saveFile != null) {
+            theCity.save(saveFile);
+            System.out.println("Ciudad guardada en " + saveFile);
+        }
+        if (exportFile != null) {
+            theCity.exportData(exportFile);
+            System.out.println("Ciudad exportada en " + exportFile);
+        }
+    }
+
+    /**
+     * Muestra cuántos ítems hay de cada tipo y cuántos agentes hay en cada estado.
+     */
+    private void printStatistics() {
+        Map<String, Integer> types = new TreeMap<>();
+        int happy = 0, indifferent = 0, dissatisfied = 0;
+        int width = theCity.getWidth();
+        for (int cell = theCity.nextOccupied(0); cell >= 0; cell = theCity.nextOccupied(cell + 1)) {
+            Item item = theCity.getItem(cell / width, cell % width);
+            types.merge(ItemTypes.nameOf(item), 1, Integer::sum);
+            if (item.isAgent()) {
+                Agent agent = (Agent) item;
+                if (agent.isHappy()) {
+                    happy++;
+                } else if (agent.isIndifferent()) {
+                    indifferent++;
+                } else if (agent.isDissatisfied()) {
+                    dissatisfied++;
+                }
+            }
+        }
+        System.out.println("Turnos jugados: " + theCity.getTicks());
+        System.out.println("Ítems por tipo: " + types);
+        System.out.println("Agentes felices: " + happy + ", indiferentes: " + indifferent + ", insatisfechos: " + dissatisfied);
+    }
+
+    /**
+     * Método principal que ejecuta la simulación sin interfaz gráfica.
+     *
+     * @param args Las opciones descritas en la documentación de la clase.
+     */
+    public static void main(String[] args) {
+        try {
+            new CityConsole(args).execute();
+        } catch (CityException | IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+}
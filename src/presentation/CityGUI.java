@@ -4,26 +4,48 @@ import domain.*;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.io.File;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Clase CityGUI que representa la interfaz gráfica de la simulación de la ciudad.
  * Extiende JFrame para crear una ventana de aplicación.
+ * <p>
+ * Con "Play" los turnos se juegan en un hilo de simulación, fuera del hilo de eventos de Swing, a la velocidad
+ * elegida (o tan rápido como se pueda). Mientras se juega solo ese hilo usa la ciudad; las opciones del menú
+ * y "Tic-tac" primero pausan la simulación.
+ * </p>
  */
 public class CityGUI extends JFrame {  
-    public static final int SIDE = 20; // Tamaño de cada celda en la cuadrícula
+    public static final int SIDE = 20; // Tamaño de cada celda con el zoom inicial (si la ciudad cabe)
+
+    // Velocidades que se pueden elegir, en turnos por segundo (0: sin límite)
+    private static final int[] SPEEDS = {1, 2, 5, 10, 20, 50, 0};
+    private static final String[] SPEED_NAMES = {"1 turno/s", "2 turnos/s", "5 turnos/s", "10 turnos/s",
+                                                 "20 turnos/s", "50 turnos/s", "Máxima"};
 
-    public final int SIZE; // Tamaño de la ciudad (número de celdas)
     private JButton ticTacButton; // Botón para avanzar un turno en la simulación
+    private JButton playButton; // Botón para jugar o pausar la simulación continua
+    private JComboBox<String> speedBox; // Velocidad de la simulación continua
+    private JButton zoomInButton, zoomOutButton; // Botones para acercar y alejar la vista
+    private JComboBox<String> modeBox; // Modo de color de la vista alejada
     private PhotoCity photo; // Panel que dibuja la ciudad
+    private JScrollPane scroll; // Vista desplazable del panel
     private City theCity; // Instancia de la ciudad que se está simulando
+
+    private Thread simulation; // Hilo que juega los turnos, o null si está en pausa
+    private volatile boolean playing; // El hilo de simulación debe seguir jugando
+    private volatile int speed = SPEEDS[3]; // Turnos por segundo (0: sin límite)
  
     /**
      * Constructor privado de CityGUI. Inicializa la ciudad y prepara los elementos de la interfaz.
      */
     private CityGUI() {
         theCity = new City();
-        SIZE = theCity.getSize();
         prepareElements();
         prepareActions();
         prepareElementsMenu();
@@ -36,15 +58,46 @@ public class CityGUI extends JFrame {
         setTitle("Schelling City");
         photo = new PhotoCity(this);
         ticTacButton = new JButton("Tic-tac");
+        playButton = new JButton("Play");
+        speedBox = new JComboBox<>(SPEED_NAMES);
+        speedBox.setSelectedIndex(3);
+        zoomOutButton = new JButton("-");
+        zoomInButton = new JButton("+");
+        modeBox = new JComboBox<>(new String[] {"Tipos", "Felicidad"}); // En el orden de PhotoCity.TYPES y HAPPINESS
+        JPanel controls = new JPanel();
+        controls.add(ticTacButton);
+        controls.add(playButton);
+        controls.add(new JLabel("Velocidad:"));
+        controls.add(speedBox);
+        controls.add(new JLabel("Zoom:"));
+        controls.add(zoomOutButton);
+        controls.add(zoomInButton);
+        controls.add(new JLabel("Vista:"));
+        controls.add(modeBox);
+        scroll = new JScrollPane(photo);
         setLayout(new BorderLayout());
-        add(photo, BorderLayout.NORTH);
-        add(ticTacButton, BorderLayout.SOUTH);
-        setSize(new Dimension(SIDE * SIZE + 15, SIDE * SIZE + 72)); 
-        setResizable(false);
-        photo.repaint();
+        add(scroll, BorderLayout.CENTER);
+        add(controls, BorderLayout.SOUTH);
+        resizeToCity();
         prepareElementsMenu();
     }
 
+    /**
+     * Ajusta el zoom y la ventana a las dimensiones de la ciudad actual, hasta PhotoCity.FIT_WIDTH x
+     * PhotoCity.FIT_HEIGHT píxeles; el resto de la ciudad se ve desplazando la vista.
+     * Se usa cada vez que se reemplaza la ciudad, ya que puede tener otro número de filas y columnas,
+     * y redibuja toda la ciudad.
+     */
+    private void resizeToCity() {
+        photo.cityChanged();
+        Dimension size = photo.getPreferredSize();
+        scroll.getViewport().setPreferredSize(new Dimension(Math.min(size.width, PhotoCity.FIT_WIDTH),
+                                                            Math.min(size.height, PhotoCity.FIT_HEIGHT)));
+        scroll.getViewport().setViewPosition(new Point(0, 0));
+        pack();
+        photo.redraw();
+    }
+
     /**
      * Prepara el menú
      */
@@ -90,15 +143,17 @@ public class CityGUI extends JFrame {
 
 
     private void optionNew() {
+        pause();
         int confirm = JOptionPane.showConfirmDialog(this, "¿Desea crear una nueva ciudad?", "Confirmar", JOptionPane.YES_NO_OPTION);
         if (confirm == JOptionPane.YES_OPTION) {
             theCity = new City();
-            photo.repaint();
+            resizeToCity();
         }
     }
 
     
     private void optionExit() {
+        pause();
         int confirm = JOptionPane.showConfirmDialog(this, "¿Desea salir de la aplicación?", "Confirmar", JOptionPane.YES_NO_OPTION);
         if (confirm == JOptionPane.YES_OPTION) {
             System.exit(0);
@@ -106,13 +161,14 @@ public class CityGUI extends JFrame {
     }
     
     private void optionOpen() {
+        pause();
         JFileChooser fileChooser = new JFileChooser();
         int result = fileChooser.showOpenDialog(this);
         if (result == JFileChooser.APPROVE_OPTION) {
             File selectedFile = fileChooser.getSelectedFile();
             try {
                 theCity = City.open(selectedFile);
-                photo.repaint();
+                resizeToCity();
                 JOptionPane.showMessageDialog(this, "Ciudad cargada correctamente.", "Éxito", JOptionPane.INFORMATION_MESSAGE);
             } catch (CityException e) {
                 JOptionPane.showMessageDialog(this, e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
@@ -122,6 +178,7 @@ public class CityGUI extends JFrame {
 
 
     private void optionSave() {
+        pause();
         JFileChooser fileChooser = new JFileChooser();
         int result = fileChooser.showSaveDialog(this);
         if (result == JFileChooser.APPROVE_OPTION) {
@@ -140,13 +197,14 @@ public class CityGUI extends JFrame {
      */
 
     private void optionImport() {
+        pause();
         JFileChooser fileChooser = new JFileChooser();
         int result = fileChooser.showOpenDialog(this);
         if (result == JFileChooser.APPROVE_OPTION) {
             File selectedFile = fileChooser.getSelectedFile();
             try {
                 theCity.importData(selectedFile);
-                photo.repaint();
+                resizeToCity();
                 JOptionPane.showMessageDialog(this, "Archivo importado correctamente.", "Éxito", JOptionPane.INFORMATION_MESSAGE);
             } catch (CityException e) {
                 JOptionPane.showMessageDialog(this, e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
@@ -156,6 +214,7 @@ public class CityGUI extends JFrame {
 
 
     private void optionExport() {
+        pause();
         JFileChooser fileChooser = new JFileChooser();
         int result = fileChooser.showSaveDialog(this);
         if (result == JFileChooser.APPROVE_OPTION) {
@@ -180,16 +239,113 @@ public class CityGUI extends JFrame {
                     ticTacButtonAction();
                 }
             });
+        playButton.addActionListener(e -> {
+            if (simulation == null) {
+                play();
+            } else {
+                pause();
+            }
+        });
+        speedBox.addActionListener(e -> speed = SPEEDS[speedBox.getSelectedIndex()]);
+        zoomInButton.addActionListener(e -> photo.zoom(1, null));
+        zoomOutButton.addActionListener(e -> photo.zoom(-1, null));
+        modeBox.addActionListener(e -> photo.setMode(modeBox.getSelectedIndex()));
+        scroll.getViewport().addChangeListener(e -> photo.viewChanged());
+        photo.addMouseWheelListener(e -> {
+            if (e.isControlDown()) {
+                photo.zoom(-e.getWheelRotation(), e.getPoint()); // Ctrl + rueda: zoom alrededor del puntero
+            } else {
+                scroll.dispatchEvent(SwingUtilities.convertMouseEvent(photo, e, scroll));
+            }
+        });
     }
 
 
 
     /**
-     * Acción que se ejecuta al presionar el botón "Tic-tac". Avanza un turno en la simulación y repinta la ciudad.
+     * Acción que se ejecuta al presionar el botón "Tic-tac". Avanza un turno en la simulación y redibuja
+     * las celdas que cambiaron.
      */
     private void ticTacButtonAction() {
         theCity.ticTac();
-        photo.repaint();
+        photo.redrawChanged();
+    }
+
+    /**
+     * Empieza a jugar turnos en el hilo de simulación.
+     */
+    private void play() {
+        playing = true;
+        simulation = new Thread(this::simulate, "Simulación");
+        simulation.setDaemon(true);
+        simulation.start();
+        playButton.setText("Pausa");
+        ticTacButton.setEnabled(false);
+    }
+
+    /**
+     * Detiene el hilo de simulación, esperando a que termine su turno, y dibuja los últimos cambios.
+     * No hace nada si ya está en pausa.
+     */
+    private void pause() {
+        if (simulation == null) {
+            return;
+        }
+        playing = false;
+        LockSupport.unpark(simulation); // Sin interrupt(): cerraría los canales de una ciudad abierta con openMapped()
+        boolean interrupted = false;
+        while (simulation.isAlive()) {
+            try {
+                simulation.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        simulation = null;
+        playButton.setText("Play");
+        ticTacButton.setEnabled(true);
+        photo.redrawChanged();
+    }
+
+    /**
+     * Ciclo del hilo de simulación: juega un turno, entrega el cuadro al panel (que lo descarta si todavía
+     * no pintó el anterior) y espera hasta el siguiente turno según la velocidad elegida.
+     */
+    private void simulate() {
+        long next = System.nanoTime();
+        try {
+            while (playing) {
+                theCity.ticTac();
+                photo.frameCompleted();
+                int rate = speed;
+                if (rate > 0) {
+                    next += 1_000_000_000L / rate;
+                    for (long wait = next - System.nanoTime(); playing && wait > 0; wait = next - System.nanoTime()) {
+                        LockSupport.parkNanos(wait);
+                    }
+                }
+                next = Math.max(next, System.nanoTime()); // Un turno atrasado no acelera los siguientes
+            }
+        } catch (RuntimeException e) {
+            playing = false;
+            SwingUtilities.invokeLater(() -> {
+                pause();
+                JOptionPane.showMessageDialog(this, e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+            });
+        }
+    }
+
+    /**
+     * Indica si la simulación continua está en curso; mientras tanto solo el hilo de simulación usa la ciudad.
+     * Se llama en el hilo de eventos.
+     *
+     * @return true si se están jugando turnos, false si está en pausa.
+     */
+    boolean isPlaying() {
+        return simulation != null;
     }
 
     /**
@@ -213,12 +369,79 @@ public class CityGUI extends JFrame {
 }
 
 /**
- * Clase PhotoCity que representa el panel donde se dibuja la ciudad.
+ * Clase PhotoCity que representa el panel donde se dibuja la ciudad, dentro de un panel con barras de desplazamiento.
  * Extiende JPanel para permitir el dibujo personalizado.
+ * <p>
+ * Solo se dibuja la parte visible de la ciudad, en una imagen del tamaño de la vista que se conserva entre
+ * repintados, así el costo de un cuadro depende del tamaño de la ventana y no del de la ciudad. Según el zoom:
+ * </p>
+ * <ul>
+ *   <li>Con celdas de DETAIL píxeles o más se dibujan la cuadrícula (una sola vez, en una imagen de fondo) y la
+ *       forma de cada ítem; después de un turno solo se redibujan las celdas visibles que la ciudad informa como
+ *       cambiadas (City.nextChanged()).</li>
+ *   <li>Con celdas más chicas cada celda ocupada es un cuadrado de color.</li>
+ *   <li>Con menos de un píxel por celda cada píxel es un bloque de CityPyramid: el color de su tipo mayoritario
+ *       (aclarado según las celdas vacías) o, en el modo HAPPINESS, la fracción de agentes felices. Durante la
+ *       simulación continua cada cuadro recalcula como mucho PYRAMID_BUDGET bloques por nivel; los demás se
+ *       recalculan en los cuadros siguientes o al pausar.</li>
+ * </ul>
+ * <p>
+ * Durante la simulación continua el hilo de simulación dibuja en la imagen con frameCompleted(), la copia en
+ * uno de dos búferes y lo publica; el hilo de eventos solo pinta el último cuadro publicado, sin esperar nunca
+ * a que termine un dibujo. Se escribe siempre en el búfer no publicado, y solo después de que el panel pintó
+ * el cuadro anterior: si todavía no lo hizo, el nuevo se descarta y sus cambios se dibujan con el siguiente.
+ * Los cambios de zoom o de la parte visible se dibujan en el cuadro siguiente.
+ * </p>
  */
 class PhotoCity extends JPanel {
+    // Lados de celda, en píxeles, con que se dibujan las celdas una a una; desde DETAIL se dibujan las formas
+    private static final int[] SIDES = {1, 2, 4, 8, 12, 20, 32};
+    private static final int DETAIL = 8;
+
+    // Bloques de cada nivel de CityPyramid que se recalculan, como mucho, en un cuadro de la simulación continua
+    private static final int PYRAMID_BUDGET = 1 << 16;
+
+    // Tamaño máximo de la vista al abrir una ciudad
+    static final int FIT_WIDTH = 1000, FIT_HEIGHT = 700;
+
+    // Modos de color de las celdas chicas y los bloques
+    static final int TYPES = 0, HAPPINESS = 1;
+
+    private static final int WHITE = 0xffffff, LIGHT_GRAY = 0xc0c0c0;
+
     private CityGUI gui; // Referencia a la ventana principal de la interfaz
 
+    // Zoom: si es positivo o 0, índice en SIDES; si es negativo, nivel -zoom de CityPyramid (un píxel por bloque)
+    private volatile int zoom;
+    private volatile int mode = TYPES; // Modo de color
+    private volatile Rectangle view = new Rectangle(); // Parte visible del panel
+    private volatile boolean stale = true; // El próximo cuadro se dibuja completo
+
+    // Cuadro listo para pintar: una copia de la imagen dibujada y la parte del panel que cubre
+    private static final class Frame {
+        final BufferedImage image;
+        final Rectangle bounds;
+
+        Frame(BufferedImage image, Rectangle bounds) {
+            this.image = image;
+            this.bounds = bounds;
+        }
+    }
+
+    // Datos del dibujo, usados solo por el hilo que dibuja (protegidos por renderLock)
+    private final Object renderLock = new Object();
+    private BufferedImage background; // Cuadrícula vacía, para borrar celdas
+    private int backgroundSide; // Lado de las celdas de background
+    private BufferedImage canvas; // Parte visible de la ciudad dibujada
+    private Rectangle frame = new Rectangle(); // Parte del panel que cubre canvas
+    private Rectangle drawnView = new Rectangle(); // Vista con que se dibujó canvas
+    private int drawnZoom = Integer.MIN_VALUE; // Zoom con que se dibujó canvas
+    private City drawn; // Ciudad dibujada en canvas
+    private CityPyramid pyramid; // Resumen de la ciudad, solo mientras se usa un zoom que lo necesita
+    private final BufferedImage[] buffers = new BufferedImage[2]; // Búferes de los cuadros publicados
+    private volatile Frame published; // Último cuadro publicado, el único que pinta el hilo de eventos
+    private final AtomicBoolean framePending = new AtomicBoolean(); // Hay un cuadro publicado sin pintar
+
     /**
      * Constructor de PhotoCity.
      *
@@ -227,58 +450,405 @@ class PhotoCity extends JPanel {
     public PhotoCity(CityGUI gui) {
         this.gui = gui;
         setBackground(Color.white);
-        setPreferredSize(new Dimension(gui.SIDE * gui.SIZE + 10, gui.SIDE * gui.SIZE + 10));         
     }
 
     /**
-     * Método que dibuja la ciudad en el panel. Se llama automáticamente cuando el panel necesita ser repintado.
+     * Se prepara para una ciudad nueva (o con ítems importados): elige el mayor zoom, hasta CityGUI.SIDE
+     * píxeles por celda, con el que cabe en FIT_WIDTH x FIT_HEIGHT, y descarta lo dibujado.
+     */
+    public void cityChanged() {
+        City theCity = gui.gettheCity();
+        int z = 0;
+        while (z + 1 < SIDES.length && SIDES[z + 1] <= CityGUI.SIDE) {
+            z++;
+        }
+        while (z > minZoom(theCity) && (pixels(theCity.getWidth(), z) > FIT_WIDTH
+                                        || pixels(theCity.getHeight(), z) > FIT_HEIGHT)) {
+            z--;
+        }
+        zoom = z;
+        synchronized (renderLock) {
+            drawn = null;
+            pyramid = null;
+        }
+        setPreferredSize(size(theCity, z));
+        revalidate();
+    }
+
+    /**
+     * Acerca (pasos positivos) o aleja (negativos) la vista, manteniendo quieto el punto <b>anchor</b> del panel.
      *
-     * @param g El objeto Graphics utilizado para dibujar.
+     * @param steps  Los pasos de zoom.
+     * @param anchor El punto que no se mueve, o null para el centro de la vista.
      */
-    public void paintComponent(Graphics g) {
+    public void zoom(int steps, Point anchor) {
         City theCity = gui.gettheCity();
-        super.paintComponent(g);
-         
-        // Dibuja las líneas de la cuadrícula
-        for (int c = 0; c <= theCity.getSize(); c++) {
-            g.drawLine(c * gui.SIDE, 0, c * gui.SIDE, theCity.getSize() * gui.SIDE);
-        }
-        for (int f = 0; f <= theCity.getSize(); f++) {
-            g.drawLine(0, f * gui.SIDE, theCity.getSize() * gui.SIDE, f * gui.SIDE);
-        }       
-
-        // Dibuja los ítems de la ciudad
-        for (int f = 0; f < theCity.getSize(); f++) {
-            for (int c = 0; c < theCity.getSize(); c++) {
-                if (theCity.getItem(f, c) != null) {
-                    g.setColor(theCity.getItem(f, c).getColor());
-                    if (theCity.getItem(f, c).shape() == Item.SQUARE) {                  
-                        if (theCity.getItem(f, c).isActive()) {
-                            g.fillRoundRect(gui.SIDE * c + 1, gui.SIDE * f + 1, gui.SIDE - 2, gui.SIDE - 2, 2, 2);
-                        } else {
-                            g.drawRoundRect(gui.SIDE * c + 1, gui.SIDE * f + 1, gui.SIDE - 2, gui.SIDE - 2, 2, 2);    
-                        }
-                    } else {
-                        if (theCity.getItem(f, c).isActive()) {
-                            g.fillOval(gui.SIDE * c + 1, gui.SIDE * f + 1, gui.SIDE - 2, gui.SIDE - 2);
-                        } else {
-                            g.drawOval(gui.SIDE * c + 1, gui.SIDE * f + 1, gui.SIDE - 2, gui.SIDE - 2);
-                        }
+        int target = Math.max(minZoom(theCity), Math.min(zoom + steps, maxZoom(theCity)));
+        if (target == zoom) {
+            return;
+        }
+        Rectangle visible = getVisibleRect();
+        Point p = (anchor != null) ? anchor : new Point(visible.x + visible.width / 2, visible.y + visible.height / 2);
+        double factor = scale(target) / scale(zoom);
+        zoom = target;
+        Dimension size = size(theCity, target);
+        setPreferredSize(size);
+        if (getParent() instanceof JViewport) {
+            JViewport viewport = (JViewport) getParent();
+            viewport.setViewSize(size);
+            int x = (int) Math.round(p.x * factor) - (p.x - visible.x);
+            int y = (int) Math.round(p.y * factor) - (p.y - visible.y);
+            viewport.setViewPosition(new Point(Math.max(0, Math.min(x, size.width - visible.width)),
+                                               Math.max(0, Math.min(y, size.height - visible.height))));
+        }
+        revalidate();
+        stale = true;
+        viewChanged();
+    }
+
+    /**
+     * Cambia el modo de color de las celdas chicas y los bloques (TYPES o HAPPINESS).
+     */
+    public void setMode(int mode) {
+        this.mode = mode;
+        stale = true;
+        viewChanged();
+    }
+
+    /**
+     * Toma nota de la parte visible del panel tras desplazarlo o cambiar el zoom, y la dibuja si la simulación
+     * está en pausa. Se llama en el hilo de eventos.
+     */
+    public void viewChanged() {
+        view = getVisibleRect();
+        if (!gui.isPlaying()) {
+            redraw();
+        } else {
+            repaint(); // El hilo de simulación dibuja la vista nueva en el próximo cuadro
+        }
+    }
+
+    // Píxeles por celda con el zoom dado
+    private static double scale(int zoom) {
+        return (zoom >= 0) ? SIDES[zoom] : Math.scalb(1.0, zoom);
+    }
+
+    // Píxeles que ocupan <b>cells</b> celdas con el zoom dado
+    private static long pixels(int cells, int zoom) {
+        if (zoom < 0) {
+            return ((long) cells + (1L << -zoom) - 1) >> -zoom;
+        }
+        return (long) cells * SIDES[zoom] + (SIDES[zoom] >= DETAIL ? 1 : 0); // Más la última línea de la cuadrícula
+    }
+
+    // Tamaño del panel con el zoom dado
+    private static Dimension size(City city, int zoom) {
+        return new Dimension((int) Math.min(Integer.MAX_VALUE, pixels(city.getWidth(), zoom)),
+                             (int) Math.min(Integer.MAX_VALUE, pixels(city.getHeight(), zoom)));
+    }
+
+    // Menor zoom: el último nivel de CityPyramid, en el que toda la ciudad es un píxel
+    private static int minZoom(City city) {
+        int level = 0;
+        for (long side = 1; side < Math.max(city.getHeight(), city.getWidth()); side <<= 1) {
+            level++;
+        }
+        return -level;
+    }
+
+    // Mayor zoom con el que el panel no pasa de 2^30 píxeles de lado
+    private static int maxZoom(City city) {
+        int z = SIDES.length - 1;
+        while (z > 0 && pixels(Math.max(city.getHeight(), city.getWidth()), z) > (1 << 30)) {
+            z--;
+        }
+        return z;
+    }
+
+    /**
+     * Dibuja completa la parte visible de la ciudad. Se llama en el hilo de eventos con la simulación en pausa.
+     */
+    public void redraw() {
+        view = getVisibleRect();
+        stale = true;
+        render(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Redibuja solo las celdas que cambiaron desde el último dibujo, por ejemplo después de un turno.
+     * Si cambió la ciudad, el zoom o la parte visible, la dibuja completa.
+     */
+    public void redrawChanged() {
+        render(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Avisa desde el hilo de simulación que terminó un turno. Dibuja las celdas que cambiaron si ya se pintó
+     * el cuadro anterior; si no, lo salta y los cambios se acumulan para el siguiente.
+     */
+    public void frameCompleted() {
+        if (!framePending.get()) {
+            render(PYRAMID_BUDGET);
+        }
+    }
+
+    // Dibuja el cuadro actual en canvas y lo publica, en el hilo que usa la ciudad, recalculando como mucho
+    // <b>budget</b> bloques de cada nivel del resumen
+    private void render(int budget) {
+        synchronized (renderLock) {
+            City theCity = gui.gettheCity();
+            int z = zoom;
+            Rectangle v = view;
+            boolean full = stale || theCity != drawn || z != drawnZoom || !v.equals(drawnView);
+            stale = false;
+            if (theCity != drawn) {
+                theCity.setChangeTracking(true); // Desde aquí basta con redibujar las celdas que cambien
+                drawn = theCity;
+                pyramid = null;
+            }
+            if (z < 0) {
+                if (pyramid == null) {
+                    pyramid = new CityPyramid(theCity);
+                } else {
+                    pyramid.update(budget);
+                }
+            } else {
+                pyramid = null; // Se vuelve a construir al alejarse
+            }
+            drawnZoom = z;
+            drawnView = v;
+            if (!v.isEmpty()) {
+                if (z < 0) {
+                    renderBlocks(-z, v);
+                } else if (SIDES[z] >= DETAIL) {
+                    renderDetail(theCity, SIDES[z], v, full);
+                } else {
+                    renderCells(theCity, SIDES[z], v);
+                }
+            }
+            theCity.clearChanges();
+            publish();
+        }
+        repaint();
+    }
+
+    // Copia canvas en el búfer que no está publicado y lo publica. El panel ya pintó el cuadro anterior
+    // (o se está en el hilo de eventos), así que nadie está leyendo ese búfer
+    private void publish() {
+        if (canvas == null) {
+            return;
+        }
+        Frame last = published;
+        int index = (last != null && last.image == buffers[0]) ? 1 : 0;
+        BufferedImage buffer = buffers[index];
+        if (buffer == null || buffer.getWidth() != canvas.getWidth() || buffer.getHeight() != canvas.getHeight()) {
+            buffer = new BufferedImage(canvas.getWidth(), canvas.getHeight(), BufferedImage.TYPE_INT_RGB);
+            buffers[index] = buffer;
+        }
+        int[] source = ((DataBufferInt) canvas.getRaster().getDataBuffer()).getData();
+        int[] target = ((DataBufferInt) buffer.getRaster().getDataBuffer()).getData();
+        System.arraycopy(source, 0, target, 0, source.length);
+        framePending.set(true);
+        published = new Frame(buffer, new Rectangle(frame));
+    }
+
+    // Reserva canvas con el tamaño dado y devuelve sus píxeles
+    private int[] prepareCanvas(int width, int height) {
+        if (canvas == null || canvas.getWidth() != width || canvas.getHeight() != height) {
+            canvas = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        }
+        return ((DataBufferInt) canvas.getRaster().getDataBuffer()).getData();
+    }
+
+    // Dibuja las celdas visibles con sus formas sobre la cuadrícula; si no es completo, solo las que cambiaron
+    private void renderDetail(City theCity, int side, Rectangle v, boolean full) {
+        int columns = theCity.getWidth();
+        int r0 = v.y / side, c0 = v.x / side;
+        int r1 = Math.min(theCity.getHeight(), (v.y + v.height) / side + 1);
+        int c1 = Math.min(columns, (v.x + v.width) / side + 1);
+        if (r0 >= r1 || c0 >= c1) {
+            return;
+        }
+        int width = (c1 - c0) * side + 1, height = (r1 - r0) * side + 1;
+        if (canvas == null || canvas.getWidth() != width || canvas.getHeight() != height
+            || background == null || background.getWidth() != width || background.getHeight() != height
+            || backgroundSide != side) {
+            full = true;
+            backgroundSide = side;
+            background = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            Graphics g = background.getGraphics();
+            g.setColor(Color.white);
+            g.fillRect(0, 0, width, height);
+            g.setColor(Color.black);
+            for (int x = 0; x < width; x += side) {
+                g.drawLine(x, 0, x, height - 1);
+            }
+            for (int y = 0; y < height; y += side) {
+                g.drawLine(0, y, width - 1, y);
+            }
+            g.dispose();
+            canvas = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        }
+        frame = new Rectangle(c0 * side, r0 * side, width, height);
+        Graphics g = canvas.getGraphics();
+        if (full) {
+            g.drawImage(background, 0, 0, null);
+        }
+        for (int r = r0; r < r1; r++) {
+            int end = r * columns + c1;
+            if (full) {
+                for (int cell = theCity.nextOccupied(r * columns + c0); cell >= 0 && cell < end;
+                     cell = theCity.nextOccupied(cell + 1)) {
+                    drawItem(g, theCity.getItem(r, cell - r * columns), (cell - r * columns - c0) * side, (r - r0) * side,
+                             side);
+                }
+            } else {
+                for (int cell = theCity.nextChanged(r * columns + c0, end); cell >= 0;
+                     cell = theCity.nextChanged(cell + 1, end)) {
+                    // Borra el interior de la celda copiándolo del fondo, sin tocar las líneas de la cuadrícula
+                    int x = (cell - r * columns - c0) * side + 1, y = (r - r0) * side + 1;
+                    g.drawImage(background, x, y, x + side - 1, y + side - 1, x, y, x + side - 1, y + side - 1, null);
+                    Item item = theCity.getItem(r, cell - r * columns);
+                    if (item != null) {
+                        drawItem(g, item, x - 1, y - 1, side);
                     }
+                }
+            }
+        }
+        g.dispose();
+    }
+
+    // Dibuja un ítem en la celda cuya esquina está en (x, y) del canvas
+    private static void drawItem(Graphics g, Item item, int x, int y, int side) {
+        g.setColor(item.getColor());
+        if (item.shape() == Item.SQUARE) {
+            if (item.isActive()) {
+                g.fillRoundRect(x + 1, y + 1, side - 2, side - 2, 2, 2);
+            } else {
+                g.drawRoundRect(x + 1, y + 1, side - 2, side - 2, 2, 2);
+            }
+        } else {
+            if (item.isActive()) {
+                g.fillOval(x + 1, y + 1, side - 2, side - 2);
+            } else {
+                g.drawOval(x + 1, y + 1, side - 2, side - 2);
+            }
+        }
 
-                    // Dibuja el estado de los agentes (feliz, indiferente, insatisfecho)
-                    if (theCity.getItem(f, c).isAgent()) {
-                        g.setColor(Color.red);
-                        if (((Agent) theCity.getItem(f, c)).isHappy()) {
-                            g.drawString("u", gui.SIDE * c + 6, gui.SIDE * f + 15);
-                        } else if (((Agent) theCity.getItem(f, c)).isIndifferent()) { 
-                            g.drawString("_", gui.SIDE * c + 7, gui.SIDE * f + 10);
-                        } else if (((Agent) theCity.getItem(f, c)).isDissatisfied()) {
-                            g.drawString("~", gui.SIDE * c + 6, gui.SIDE * f + 17);
-                        }
-                    }    
+        // Dibuja el estado de los agentes (feliz, indiferente, insatisfecho) si la celda es grande
+        if (item.isAgent() && side >= CityGUI.SIDE) {
+            Agent agent = (Agent) item;
+            int offset = (side - CityGUI.SIDE) / 2;
+            g.setColor(Color.red);
+            if (agent.isHappy()) {
+                g.drawString("u", x + offset + 6, y + offset + 15);
+            } else if (agent.isIndifferent()) {
+                g.drawString("_", x + offset + 7, y + offset + 10);
+            } else if (agent.isDissatisfied()) {
+                g.drawString("~", x + offset + 6, y + offset + 17);
+            }
+        }
+    }
+
+    // Dibuja cada celda visible ocupada como un cuadrado de color
+    private void renderCells(City theCity, int side, Rectangle v) {
+        int columns = theCity.getWidth();
+        int r0 = v.y / side, c0 = v.x / side;
+        int r1 = Math.min(theCity.getHeight(), (v.y + v.height + side - 1) / side);
+        int c1 = Math.min(columns, (v.x + v.width + side - 1) / side);
+        if (r0 >= r1 || c0 >= c1) {
+            return;
+        }
+        int width = (c1 - c0) * side, height = (r1 - r0) * side;
+        int[] pixels = prepareCanvas(width, height);
+        Arrays.fill(pixels, WHITE);
+        frame = new Rectangle(c0 * side, r0 * side, width, height);
+        int happinessMode = mode;
+        for (int r = r0; r < r1; r++) {
+            int end = r * columns + c1;
+            for (int cell = theCity.nextOccupied(r * columns + c0); cell >= 0 && cell < end;
+                 cell = theCity.nextOccupied(cell + 1)) {
+                Item item = theCity.getItem(r, cell - r * columns);
+                int rgb = (happinessMode == HAPPINESS) ? stateColor(item) : item.getColor().getRGB();
+                int start = (r - r0) * side * width + (cell - r * columns - c0) * side;
+                for (int y = 0; y < side; y++) {
+                    Arrays.fill(pixels, start + y * width, start + y * width + side, rgb);
                 }
             }
         }
-    }  
-}
\ No newline at end of file
+    }
+
+    // Color de un ítem en el modo HAPPINESS
+    private static int stateColor(Item item) {
+        if (!item.isAgent()) {
+            return LIGHT_GRAY;
+        }
+        Agent agent = (Agent) item;
+        return agent.isHappy() ? heat(1) : agent.isDissatisfied() ? heat(0) : heat(0.5);
+    }
+
+    // Dibuja un píxel por bloque visible del nivel dado de CityPyramid
+    private void renderBlocks(int level, Rectangle v) {
+        int br0 = v.y, bc0 = v.x;
+        int br1 = Math.min(pyramid.rows(level), v.y + v.height), bc1 = Math.min(pyramid.columns(level), v.x + v.width);
+        if (br0 >= br1 || bc0 >= bc1) {
+            return;
+        }
+        int width = bc1 - bc0;
+        int[] pixels = prepareCanvas(width, br1 - br0);
+        frame = new Rectangle(bc0, br0, width, br1 - br0);
+        int happinessMode = mode;
+        for (int br = br0; br < br1; br++) {
+            for (int bc = bc0; bc < bc1; bc++) {
+                int rgb = WHITE;
+                if (happinessMode == HAPPINESS) {
+                    double happiness = pyramid.happiness(level, br, bc);
+                    if (happiness >= 0) {
+                        rgb = heat(happiness);
+                    }
+                } else {
+                    int type = pyramid.majority(level, br, bc);
+                    if (type != CityPyramid.EMPTY) {
+                        rgb = lighten(pyramid.color(type).getRGB(), pyramid.occupancy(level, br, bc));
+                    }
+                }
+                pixels[(br - br0) * width + bc - bc0] = rgb;
+            }
+        }
+    }
+
+    // Color de una fracción de agentes felices: de rojo (0) a verde (1), pasando por amarillo
+    private static int heat(double happiness) {
+        int red = (int) Math.round(255 * Math.min(1, 2 * (1 - happiness)));
+        int green = (int) Math.round(255 * Math.min(1, 2 * happiness));
+        return (red << 16) | (green << 8);
+    }
+
+    // Mezcla un color con blanco: con <b>amount</b> 1 queda el color, con 0 queda blanco
+    private static int lighten(int rgb, double amount) {
+        int result = 0;
+        for (int shift = 0; shift <= 16; shift += 8) {
+            int channel = (rgb >> shift) & 0xff;
+            result |= ((int) Math.round(255 - (255 - channel) * amount)) << shift;
+        }
+        return result;
+    }
+
+    /**
+     * Método que dibuja la ciudad en el panel. Se llama automáticamente cuando el panel necesita ser repintado.
+     * Solo pinta el último cuadro publicado por redraw(), redrawChanged() o frameCompleted().
+     *
+     * @param g El objeto Graphics utilizado para dibujar.
+     */
+    public void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        if (!gui.isPlaying() && (published == null || !getVisibleRect().equals(view))) {
+            redraw();
+        }
+        Frame last = published; // Nunca espera al hilo que dibuja
+        if (last != null) {
+            g.drawImage(last.image, last.bounds.x, last.bounds.y, null);
+        }
+        framePending.set(false);
+    }
+}
@@ -0,0 +1,85 @@
+package test;
+
+import domain.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Clase de pruebas unitarias para el seguimiento de las celdas que cambian (City.setChangeTracking()).
+ */
+public class ChangeTrackingTest {
+
+    // Lo que se dibuja de una celda: clase, color, si está activo y estado del agente
+    private static String appearance(City city, int r, int c) {
+        Item item = city.getItem(r, c);
+        if (item == null) {
+            return "";
+        }
+        String state = item.isAgent() ? (((Agent) item).isHappy() + "/" + ((Agent) item).isDissatisfied()) : "";
+        return item.getClass().getName() + item.getColor() + item.isActive() + state;
+    }
+
+    @Test
+    public void shouldMarkEveryCellThatLooksDifferent() {
+        for (int mode = City.SEQUENTIAL; mode <= City.PARALLEL; mode++) {
+            for (boolean dirty : new boolean[] {false, true}) {
+                City city = City.random(40, 50, 0.45, 13 + mode);
+                city.setTickMode(mode);
+                city.setDirtyScheduling(dirty);
+                city.setChangeTracking(true);
+                assertTrue(city.isChangeTracking());
+                assertEquals(-1, city.nextChanged(0));
+                for (int i = 0; i < 8; i++) {
+                    String[] before = new String[40 * 50];
+                    for (int cell = 0; cell < before.length; cell++) {
+                        before[cell] = appearance(city, cell / 50, cell % 50);
+                    }
+                    city.clearChanges();
+                    city.ticTac();
+                    boolean[] marked = new boolean[before.length];
+                    for (int cell = city.nextChanged(0); cell >= 0; cell = city.nextChanged(cell + 1)) {
+                        marked[cell] = true;
+                    }
+                    for (int cell = 0; cell < before.length; cell++) {
+                        if (!before[cell].equals(appearance(city, cell / 50, cell % 50))) {
+                            assertTrue(marked[cell], "Celda sin marcar (" + cell / 50 + ", " + cell % 50 + ")");
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void shouldMarkOnlyWhatChanged() {
+        City city = new City(10, 100);
+        city.setDirtyScheduling(true);
+        new SchellingPerson(city, 1, 1);
+        new SchellingPerson(city, 1, 2);
+        city.ticTac(); // Primera evaluación de todas las celdas
+        assertEquals(-1, city.nextChanged(0)); // Sin seguimiento no se informa nada
+
+        city.setChangeTracking(true);
+        city.ticTac();
+        assertEquals(-1, city.nextChanged(0)); // Nada cambió alrededor de las personas
+        new TrafficLight(city, 9, 99);
+        assertEquals(9 * 100 + 99, city.nextChanged(0));
+        assertEquals(-1, city.nextChanged(9 * 100 + 99 + 1));
+        assertEquals(-1, city.nextChanged(0, 9 * 100 + 99)); // El límite no se incluye
+        assertEquals(9 * 100 + 99, city.nextChanged(9 * 100, 10 * 100));
+        city.clearChanges();
+        assertEquals(-1, city.nextChanged(0));
+        city.setChangeTracking(false);
+        assertFalse(city.isChangeTracking());
+
+        // Sin planificación por celdas sucias se evalúan todos, pero solo se marca lo que se ve distinto
+        City full = new City(10, 100);
+        new SchellingPerson(full, 1, 1);
+        new SchellingPerson(full, 1, 2);
+        full.ticTac();
+        full.setChangeTracking(true);
+        full.ticTac();
+        assertEquals(-1, full.nextChanged(0));
+    }
+}
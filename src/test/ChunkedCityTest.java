@@ -0,0 +1,93 @@
+package test;
+
+import domain.*;
+
+import java.io.File;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Clase de pruebas unitarias para las ciudades con ítems por bloques de City.chunked().
+ */
+public class ChunkedCityTest {
+    private final File file = new File("chunkedCity.city");
+    private final File dat = new File("chunkedCity.dat");
+
+    @AfterEach
+    public void tearDown() {
+        file.delete(); // Limpieza después de cada prueba
+        dat.delete();
+    }
+
+    // Copia los ítems de una ciudad en una ciudad por bloques de las mismas dimensiones
+    private static City chunkedCopy(City city) throws CityException {
+        City copy = City.chunked(city.getHeight(), city.getWidth());
+        copy.setSeed(city.getSeed());
+        copy.setTickMode(city.getTickMode());
+        File text = new File("chunkedCity.txt");
+        city.exportData(text);
+        copy.importData(text);
+        text.delete();
+        return copy;
+    }
+
+    @Test
+    public void shouldAllocateAndFreeChunks() {
+        City city = City.chunked(10000, 10000);
+        assertTrue(city.isChunked());
+        assertEquals(0, city.countChunks());
+        Person person = new Person(city, 5000, 70);
+        new Walker(city, 5001, 71);
+        new StreetLight(city, 9999, 9999);
+        assertEquals(2, city.countChunks());
+        assertSame(person, city.getItem(5000, 70));
+        assertNull(city.getItem(5000, 71));
+        assertEquals(5000 * 10000 + 70, city.nextOccupied(0));
+        assertEquals(9999 * 10000 + 9999, city.nextOccupied(5001 * 10000 + 72));
+
+        city.setItem(9999, 9999, null);
+        assertEquals(1, city.countChunks());
+        assertEquals(-1, city.nextOccupied(5001 * 10000 + 72));
+        assertFalse(new City(3, 3).isChunked());
+        assertThrows(IllegalArgumentException.class, () -> City.chunked(100000, 100000));
+    }
+
+    @Test
+    public void shouldTickLikeDenseCity() throws CityException {
+        for (int mode = City.SEQUENTIAL; mode <= City.SYNCHRONOUS; mode++) {
+            City dense = City.random(150, 200, 0.3, 47);
+            dense.setSeed(11);
+            dense.setTickMode(mode);
+            City chunked = chunkedCopy(dense);
+            for (int i = 0; i < 12; i++) {
+                dense.ticTac();
+                chunked.ticTac();
+            }
+            ParallelTickTest.assertSameCity(dense, chunked);
+            assertEquals(dense.countItems(), chunked.countItems());
+            assertTrue(chunked.countChunks() <= 3 * 4);
+        }
+    }
+
+    @Test
+    public void shouldKeepChunkedStorageWhenSaved() throws CityException {
+        City city = City.chunked(3000, 2000);
+        new Person(city, 1, 1);
+        new SchellingPerson(city, 2999, 1999);
+        new TrafficLight(city, 1500, 64);
+
+        city.save(file);
+        City opened = City.open(file);
+        assertTrue(opened.isChunked());
+        assertEquals(3, opened.countChunks());
+        ParallelTickTest.assertSameCity(city, opened);
+
+        city.save(dat);
+        opened = City.open(dat);
+        assertTrue(opened.isChunked());
+        assertEquals(3, opened.countChunks());
+        ParallelTickTest.assertSameCity(city, opened);
+    }
+}
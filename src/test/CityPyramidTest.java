@@ -0,0 +1,84 @@
+package test;
+
+import domain.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Clase de pruebas unitarias para el resumen a varias resoluciones de una ciudad (CityPyramid).
+ */
+public class CityPyramidTest {
+
+    // Compara todos los bloques de todos los niveles de dos resúmenes
+    private static void assertSamePyramid(CityPyramid expected, CityPyramid actual) {
+        assertEquals(expected.levels(), actual.levels());
+        for (int level = 0; level < expected.levels(); level++) {
+            for (int br = 0; br < expected.rows(level); br++) {
+                for (int bc = 0; bc < expected.columns(level); bc++) {
+                    String where = "Nivel " + level + " en (" + br + ", " + bc + ")";
+                    assertEquals(expected.majority(level, br, bc), actual.majority(level, br, bc), where);
+                    assertEquals(expected.occupancy(level, br, bc), actual.occupancy(level, br, bc), where);
+                    assertEquals(expected.happiness(level, br, bc), actual.happiness(level, br, bc), where);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void shouldSummarizeBlocks() {
+        City city = new City(4, 4);
+        for (int r = 0; r < 2; r++) {
+            for (int c = 0; c < 2; c++) {
+                new SchellingPerson(city, r, c);
+            }
+        }
+        new TrafficLight(city, 0, 3);
+        CityPyramid pyramid = new CityPyramid(city);
+        assertEquals(3, pyramid.levels());
+        assertEquals(2, pyramid.rows(1));
+        assertEquals(1, pyramid.columns(2));
+
+        int schelling = pyramid.majority(0, 0, 0);
+        assertEquals(ItemTypes.idOf("SchellingPerson"), schelling);
+        assertEquals(schelling, pyramid.majority(1, 0, 0));
+        assertEquals(1.0, pyramid.occupancy(1, 0, 0));
+        assertEquals(0.0, pyramid.happiness(1, 0, 0)); // Los agentes empiezan insatisfechos
+        assertEquals(ItemTypes.idOf("TrafficLight"), pyramid.majority(1, 0, 1));
+        assertEquals(0.25, pyramid.occupancy(1, 0, 1), 0.01);
+        assertEquals(-1, pyramid.happiness(1, 0, 1)); // Sin agentes
+        assertEquals(CityPyramid.EMPTY, pyramid.majority(1, 1, 0));
+        assertEquals(schelling, pyramid.majority(2, 0, 0));
+        assertEquals(5 / 16.0, pyramid.occupancy(2, 0, 0), 0.01);
+        assertEquals(new SchellingPerson(new City(1, 1), 0, 0).getColor(), pyramid.color(schelling));
+    }
+
+    @Test
+    public void shouldUpdateLikeRebuilt() {
+        for (int mode = City.SEQUENTIAL; mode <= City.SYNCHRONOUS; mode++) {
+            City city = City.random(70, 90, 0.45, 37);
+            city.setTickMode(mode);
+            city.setChangeTracking(true);
+            CityPyramid pyramid = new CityPyramid(city);
+            assertEquals(8, pyramid.levels()); // 2^7 = 128 >= 90
+            for (int i = 0; i < 6; i++) {
+                city.ticTac();
+                pyramid.update();
+                city.clearChanges();
+                assertSamePyramid(new CityPyramid(city), pyramid);
+            }
+            city.ticTac();
+            assertTrue(pyramid.update(50)); // Pocos bloques por llamada: el resto queda para la siguiente
+            city.clearChanges();
+            while (pyramid.update(50)) {
+                assertEquals(-1, city.nextChanged(0));
+            }
+            assertSamePyramid(new CityPyramid(city), pyramid);
+            city.setItem(69, 89, null);
+            city.setItem(0, 0, null);
+            new Walker(city, 0, 0);
+            pyramid.update();
+            assertSamePyramid(new CityPyramid(city), pyramid);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package test;
+
+import domain.*;
+
+import java.io.File;
+import java.io.FileWriter;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Clase de pruebas unitarias para la clase City.
+ * Verifica las dimensiones propias de cada ciudad y que las operaciones las respeten.
+ */
+public class CityTest {
+
+    @Test
+    public void shouldKeepDefaultSize() {
+        City city = new City();
+        assertEquals(25, city.getHeight());
+        assertEquals(25, city.getWidth());
+        assertEquals(25, city.getSize());
+    }
+
+    @Test
+    public void shouldCreateEmptyRectangularCity() {
+        City city = new City(10, 40);
+        assertEquals(10, city.getHeight());
+        assertEquals(40, city.getWidth());
+        assertNull(city.getItem(9, 39));
+        assertTrue(city.isEmpty(9, 39));
+        assertFalse(city.isEmpty(10, 0), "La fila 10 está fuera de la ciudad");
+        assertFalse(city.isEmpty(0, 40), "La columna 40 está fuera de la ciudad");
+    }
+
+    @Test
+    public void shouldRejectInvalidDimensions() {
+        assertThrows(IllegalArgumentException.class, () -> new City(0, 10));
+        assertThrows(IllegalArgumentException.class, () -> new City(10, -1));
+    }
+
+    @Test
+    public void shouldAllowCitiesOfDifferentSizes() {
+        City small = new City(5, 5);
+        City large = new City(300, 200);
+        new Person(large, 299, 199);
+        assertNotNull(large.getItem(299, 199));
+        assertEquals(5, small.getWidth());
+        assertEquals(200, large.getWidth());
+    }
+
+    @Test
+    public void shouldStopWalkerAtRectangularBorder() {
+        City city = new City(3, 50);
+        Walker walker = new Walker(city, 0, 49);
+        city.ticTac();
+        assertSame(walker, city.getItem(0, 49), "El caminante no puede salir por el norte");
+    }
+
+    @Test
+    public void shouldImportUsingCityDimensions() {
+        City city = new City(10, 100);
+        File file = new File("rectangularImport.txt");
+        assertDoesNotThrow(() -> {
+            try (FileWriter writer = new FileWriter(file)) {
+                writer.write("Person 9 99\n");
+            }
+        });
+        assertDoesNotThrow(() -> city.importData(file));
+        assertNotNull(city.getItem(9, 99));
+
+        assertDoesNotThrow(() -> {
+            try (FileWriter writer = new FileWriter(file)) {
+                writer.write("Person 10 5\n");
+            }
+        });
+        Exception exception = assertThrows(CityException.class, () -> city.importData(file));
+        assertTrue(exception.getMessage().contains("Coordenadas fuera de los límites"));
+        file.delete(); // Limpieza después de la prueba
+    }
+
+    @Test
+    public void shouldSaveAndOpenRectangularCity() {
+        City city = new City(7, 13);
+        new Walker(city, 6, 12);
+        File file = new File("rectangularCity.dat");
+        assertDoesNotThrow(() -> city.save(file));
+        City loaded = assertDoesNotThrow(() -> City.open(file));
+        assertEquals(7, loaded.getHeight());
+        assertEquals(13, loaded.getWidth());
+        assertTrue(loaded.getItem(6, 12) instanceof Walker);
+        file.delete(); // Limpieza después de la prueba
+    }
+
+    @Test
+    public void shouldCountItems() {
+        City city = new City();
+        assertEquals(12, city.countItems());
+        new Person(city, 12, 12);
+        assertEquals(13, city.countItems());
+        city.setItem(12, 12, null);
+        city.setItem(12, 12, null);
+        assertEquals(12, city.countItems());
+    }
+
+    @Test
+    public void shouldIterateOccupiedCellsInRowOrder() {
+        City city = new City(4, 130);
+        new Person(city, 3, 129);
+        new Person(city, 0, 64);
+        new Person(city, 0, 63);
+        new Person(city, 2, 0);
+        int[] expected = {63, 64, 2 * 130, 3 * 130 + 129};
+        int found = 0;
+        for (int cell = city.nextOccupied(0); cell >= 0; cell = city.nextOccupied(cell + 1)) {
+            assertEquals(expected[found++], cell);
+        }
+        assertEquals(expected.length, found);
+        assertEquals(-1, city.nextOccupied(4 * 130));
+    }
+
+    @Test
+    public void shouldKeepIndexAfterOpen() {
+        City city = new City(6, 70);
+        new Walker(city, 5, 69);
+        File file = new File("indexedCity.dat");
+        assertDoesNotThrow(() -> city.save(file));
+        City loaded = assertDoesNotThrow(() -> City.open(file));
+        assertEquals(1, loaded.countItems());
+        assertEquals(5 * 70 + 69, loaded.nextOccupied(0));
+        assertFalse(loaded.isEmpty(5, 69));
+        file.delete(); // Limpieza después de la prueba
+    }
+
+    @Test
+    public void shouldRunLikeRepeatedTicTac() {
+        for (int mode : new int[] {City.SEQUENTIAL, City.SYNCHRONOUS, City.PARALLEL}) {
+            City expected = City.random(40, 30, 0.4, 23);
+            City actual = City.random(40, 30, 0.4, 23);
+            expected.setTickMode(mode);
+            actual.setTickMode(mode);
+            for (int i = 0; i < 15; i++) {
+                expected.ticTac();
+            }
+            actual.run(15);
+            ParallelTickTest.assertSameCity(expected, actual);
+            assertEquals(15, actual.getTicks());
+        }
+    }
+
+    @Test
+    public void shouldRejectNegativeRun() {
+        City city = new City(3, 3);
+        assertThrows(IllegalArgumentException.class, () -> city.run(-1));
+        city.run(0);
+        assertEquals(0, city.getTicks());
+    }
+
+    @Test
+    public void shouldGenerateSameRandomCity() {
+        City city = City.random(40, 60, 0.4, 17);
+        ParallelTickTest.assertSameCity(city, City.random(40, 60, 0.4, 17));
+        assertEquals(17, city.getSeed());
+        assertTrue(city.countItems() > 40 * 60 / 4 && city.countItems() < 40 * 60 / 2);
+        assertEquals(0, City.random(10, 10, 0, 17).countItems());
+        assertThrows(IllegalArgumentException.class, () -> City.random(10, 10, 1.5, 17));
+    }
+}
@@ -0,0 +1,139 @@
+package test;
+
+import domain.*;
+
+import java.awt.Color;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Clase de pruebas unitarias para la planificación por celdas sucias de la ciudad.
+ * Verifica que omitir los ítems con vecindario estable no cambie el resultado de la simulación.
+ */
+public class DirtySchedulingTest {
+
+    /**
+     * Ítem de prueba que solo depende de sus vecinos y cuenta cuántas veces decide.
+     */
+    static class Counter implements Item {
+        int decisions;
+
+        Counter(City city, int row, int column) {
+            city.setItem(row, column, this);
+        }
+
+        public void decide() {
+            decisions++;
+        }
+
+        public Color getColor() {
+            return Color.gray;
+        }
+
+        public boolean dependsOnlyOnNeighbors() {
+            return true;
+        }
+    }
+
+    private static void assertSameRun(int mode) {
+        City expected = City.random(60, 50, 0.45, 21);
+        City actual = City.random(60, 50, 0.45, 21);
+        expected.setTickMode(mode);
+        actual.setTickMode(mode);
+        actual.setDirtyScheduling(true);
+        for (int i = 0; i < 30; i++) {
+            expected.ticTac();
+            actual.ticTac();
+        }
+        ParallelTickTest.assertSameCity(expected, actual);
+    }
+
+    @Test
+    public void shouldMatchSequentialRun() {
+        assertSameRun(City.SEQUENTIAL);
+    }
+
+    @Test
+    public void shouldMatchSynchronousRun() {
+        assertSameRun(City.SYNCHRONOUS);
+    }
+
+    @Test
+    public void shouldMatchParallelRun() {
+        assertSameRun(City.PARALLEL);
+    }
+
+    @Test
+    public void shouldMatchConvergingSchellingCity() {
+        City expected = new City(40, 40);
+        City actual = new City(40, 40);
+        actual.setDirtyScheduling(true);
+        Random random = new Random(5);
+        for (int r = 0; r < 40; r++) {
+            for (int c = 0; c < 40; c++) {
+                double p = random.nextDouble();
+                if (p < 0.4) {
+                    new SchellingPerson(expected, r, c);
+                    new SchellingPerson(actual, r, c);
+                } else if (p < 0.75) {
+                    new TrafficLight(expected, r, c);
+                    new TrafficLight(actual, r, c);
+                }
+            }
+        }
+        for (int i = 0; i < 60; i++) {
+            expected.ticTac();
+            actual.ticTac();
+        }
+        ParallelTickTest.assertSameCity(expected, actual);
+    }
+
+    @Test
+    public void shouldSkipItemsWithStableNeighborhood() {
+        City city = new City(10, 10);
+        city.setDirtyScheduling(true);
+        Counter quiet = new Counter(city, 2, 2);
+        Counter busy = new Counter(city, 7, 7);
+        city.ticTac();
+        assertEquals(1, quiet.decisions, "El primer turno evalúa todas las celdas");
+        city.ticTac();
+        city.ticTac();
+        assertEquals(1, quiet.decisions, "Su vecindario no cambió");
+
+        new Person(city, 8, 8);
+        city.ticTac();
+        assertEquals(1, quiet.decisions);
+        assertEquals(2, busy.decisions, "Un vecino nuevo obliga a evaluarlo");
+    }
+
+    @Test
+    public void shouldReevaluateSchellingPersonTouchedByCheerful() {
+        City expected = new City(6, 6);
+        City actual = new City(6, 6);
+        actual.setDirtyScheduling(true);
+        for (City city : new City[] {expected, actual}) {
+            new SchellingPerson(city, 2, 2);
+            new Cheerful(city, 2, 3);
+            new Person(city, 1, 2);
+        }
+        for (int i = 0; i < 5; i++) {
+            expected.ticTac();
+            actual.ticTac();
+            ParallelTickTest.assertSameCity(expected, actual);
+        }
+    }
+
+    @Test
+    public void shouldDisableScheduling() {
+        City city = new City(5, 5);
+        city.setDirtyScheduling(true);
+        assertTrue(city.isDirtyScheduling());
+        Counter counter = new Counter(city, 1, 1);
+        city.ticTac();
+        city.setDirtyScheduling(false);
+        city.ticTac();
+        assertEquals(2, counter.decisions);
+    }
+}
@@ -3,8 +3,16 @@ package test;
 import domain.City;
 import domain.CityException;
 
+import domain.Person;
+import domain.StreetLight;
+import domain.Walker;
+
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.zip.GZIPOutputStream;
 
 
 import org.junit.jupiter.api.Test;
@@ -116,4 +124,56 @@ public class ImportTest {
 
         file.delete(); // Limpieza después de la prueba
     }
-}
\ No newline at end of file
+
+    @Test
+    public void shouldImportMixedLineSeparators() {
+        City city = new City();
+        File file = new File("separatorsImport.txt");
+
+        assertDoesNotThrow(() -> {
+            try (FileWriter writer = new FileWriter(file)) {
+                writer.write("Person\t1 1\r\nWalker 2 2\r\r\n  \nStreetLight 3 +3"); // Sin separador al final
+            }
+        });
+
+        assertDoesNotThrow(() -> city.importData(file));
+        assertTrue(city.getItem(1, 1) instanceof Person);
+        assertTrue(city.getItem(2, 2) instanceof Walker);
+        assertTrue(city.getItem(3, 3) instanceof StreetLight);
+
+        // El número de línea cuenta \r\n como un solo separador
+        assertDoesNotThrow(() -> {
+            try (FileWriter writer = new FileWriter(file)) {
+                writer.write("Person 1 1\r\nPerson 2 2\r\nPerson x 3\r\n");
+            }
+        });
+        Exception exception = assertThrows(CityException.class, () -> city.importData(file));
+        assertEquals("Error en la línea 3: Formato de número inválido en 'x' o '3'.", exception.getMessage());
+
+        file.delete(); // Limpieza después de la prueba
+    }
+
+    @Test
+    public void shouldImportLargeCompressedFile() {
+        City city = new City(400, 400);
+        File file = new File("largeImport.txt.gz");
+
+        // Más de un bloque de lectura, comprimido con gzip
+        assertDoesNotThrow(() -> {
+            try (Writer writer = new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(file)))) {
+                for (int r = 0; r < 400; r++) {
+                    for (int c = 0; c < 400; c++) {
+                        writer.write(((r + c) % 2 == 0 ? "Person " : "StreetLight ") + r + " " + c + "\n");
+                    }
+                }
+            }
+        });
+
+        assertDoesNotThrow(() -> city.importData(file));
+        assertEquals(160000, city.countItems());
+        assertTrue(city.getItem(399, 397) instanceof Person);
+        assertTrue(city.getItem(399, 398) instanceof StreetLight);
+
+        file.delete(); // Limpieza después de la prueba
+    }
+}
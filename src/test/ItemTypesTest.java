@@ -0,0 +1,81 @@
+package test;
+
+import domain.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Clase de pruebas unitarias para el registro de tipos de ítems ItemTypes.
+ */
+public class ItemTypesTest {
+    private final File file = new File("itemTypesCity.txt");
+
+    /**
+     * Ítem de otro paquete que se registra sin reflexión.
+     */
+    public static class Tree implements Item {
+        public Tree(City city, int row, int column) {
+            city.setItem(row, column, this);
+        }
+
+        @Override
+        public void decide() {
+        }
+    }
+
+    // Se registra una sola vez para todas las pruebas
+    private static final int TREE = ItemTypes.register("Tree", Tree.class, Tree::new);
+
+    @AfterEach
+    public void tearDown() {
+        file.delete(); // Limpieza después de cada prueba
+    }
+
+    @Test
+    public void shouldKnowCityTypes() {
+        assertEquals(PackedSimulator.PERSON, ItemTypes.idOf("Person"));
+        assertEquals(PackedSimulator.STREET_LIGHT, ItemTypes.idOf("StreetLight"));
+        assertEquals("SchellingPerson", ItemTypes.nameOf(PackedSimulator.SCHELLING));
+        City city = new City(3, 3);
+        Item walker = ItemTypes.create(PackedSimulator.WALKER, city, 1, 2);
+        assertTrue(walker instanceof Walker);
+        assertSame(walker, city.getItem(1, 2));
+        assertEquals(PackedSimulator.WALKER, ItemTypes.idOf(walker));
+        assertEquals(-1, ItemTypes.idOf("Agent"));
+        assertThrows(IllegalArgumentException.class, () -> ItemTypes.create(PackedSimulator.EMPTY, city, 0, 0));
+    }
+
+    @Test
+    public void shouldImportAndExportRegisteredTypes() throws IOException, CityException {
+        assertTrue(TREE > PackedSimulator.STREET_LIGHT);
+        assertEquals(TREE, ItemTypes.idOf("Tree"));
+        City city = new City(5, 5);
+        try (FileWriter writer = new FileWriter(file)) {
+            writer.write("Tree 1 1\nPerson 2 2\n");
+        }
+        city.importData(file);
+        assertTrue(city.getItem(1, 1) instanceof Tree);
+        city.exportData(file);
+        assertEquals("Tree 1 1\nPerson 2 2\n", Files.readString(file.toPath()));
+
+        // Sin representación compacta no se puede guardar en .city
+        File snapshot = new File("itemTypesCity.city");
+        assertThrows(CityException.class, () -> city.save(snapshot));
+        snapshot.delete();
+    }
+
+    @Test
+    public void shouldRejectInvalidRegistrations() {
+        assertThrows(IllegalArgumentException.class, () -> ItemTypes.register("Tree", Tree.class, Tree::new));
+        assertThrows(IllegalArgumentException.class, () -> ItemTypes.register("Person", Person.class, Person::new));
+        assertThrows(IllegalArgumentException.class, () -> ItemTypes.register("Two words", Tree.class, Tree::new));
+        assertThrows(IllegalArgumentException.class, () -> ItemTypes.register("Bush", Tree.class, null));
+    }
+}
@@ -0,0 +1,160 @@
+package test;
+
+import domain.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Clase de pruebas unitarias para la bitácora de cambios CityJournal.
+ */
+public class JournalTest {
+    private final File snapshot = new File("journalCity.city");
+    private final File journal = new File("journalCity.jnl");
+
+    @AfterEach
+    public void tearDown() {
+        snapshot.delete(); // Limpieza después de cada prueba
+        journal.delete();
+    }
+
+    @Test
+    public void shouldRecoverTicksAndEdits() throws CityException {
+        City city = City.random(60, 70, 0.4, 61);
+        city.setTickMode(City.SYNCHRONOUS);
+        CityJournal log = CityJournal.start(city, snapshot, journal, 3);
+        city.run(5);
+        city.setItem(0, 0, null);
+        new Walker(city, 0, 0);
+        city.setItem(59, 69, null);
+        city.run(2);
+        log.commit();
+        City recovered = CityJournal.recover(snapshot, journal);
+        assertEquals(7, recovered.getTicks());
+        assertEquals(City.SYNCHRONOUS, recovered.getTickMode());
+        ParallelTickTest.assertSameCity(city, recovered);
+
+        // El estado oculto también debe conservarse
+        city.run(4);
+        recovered.run(4);
+        ParallelTickTest.assertSameCity(city, recovered);
+        log.close();
+        assertNull(city.getJournal());
+    }
+
+    @Test
+    public void shouldRecoverSequentialMoves() throws CityException {
+        City city = City.random(40, 40, 0.3, 67);
+        CityJournal log = CityJournal.start(city, snapshot, journal, 1);
+        city.run(6);
+        ParallelTickTest.assertSameCity(city, CityJournal.recover(snapshot, journal));
+        log.close();
+    }
+
+    @Test
+    public void shouldRecoverWithDirtyScheduling() throws CityException {
+        City city = City.random(50, 60, 0.4, 79);
+        city.setTickMode(City.SYNCHRONOUS);
+        city.setDirtyScheduling(true); // Solo se revisan las celdas evaluadas y las que cambian
+        CityJournal log = CityJournal.start(city, snapshot, journal, 2);
+        city.run(3);
+        city.setDirtyScheduling(false);
+        city.run(2);
+        city.setDirtyScheduling(true);
+        city.run(3);
+        log.commit();
+        City recovered = CityJournal.recover(snapshot, journal);
+        assertTrue(recovered.isDirtyScheduling());
+        ParallelTickTest.assertSameCity(city, recovered);
+        city.run(3);
+        recovered.run(3);
+        ParallelTickTest.assertSameCity(city, recovered);
+        log.close();
+    }
+
+    @Test
+    public void shouldIgnoreTornTail() throws IOException, CityException {
+        City city = City.random(30, 30, 0.4, 71);
+        CityJournal log = CityJournal.start(city, snapshot, journal, 1);
+        city.run(3);
+        City expected = CityJournal.recover(snapshot, journal);
+        city.run(1);
+        log.close();
+        byte[] content = Files.readAllBytes(journal.toPath());
+        try (FileOutputStream out = new FileOutputStream(journal)) {
+            out.write(content, 0, content.length - 2); // Último grupo incompleto
+        }
+        City recovered = CityJournal.recover(snapshot, journal);
+        assertEquals(3, recovered.getTicks());
+        ParallelTickTest.assertSameCity(expected, recovered);
+    }
+
+    @Test
+    public void shouldCheckpoint() throws CityException {
+        City city = City.random(30, 30, 0.4, 73);
+        CityJournal log = CityJournal.start(city, snapshot, journal, 2);
+        city.run(5);
+        log.checkpoint();
+        assertEquals(5, City.open(snapshot).getTicks());
+        city.run(3);
+        log.close();
+        City recovered = CityJournal.recover(snapshot, journal);
+        assertEquals(8, recovered.getTicks());
+        ParallelTickTest.assertSameCity(city, recovered);
+    }
+
+    @Test
+    public void shouldWriteOnlyChanges() throws CityException {
+        City city = new City(200, 200);
+        for (int c = 0; c < 200; c += 2) {
+            new SchellingPerson(city, 100, c); // Vecinos iguales: se quedan quietos
+        }
+        CityJournal log = CityJournal.start(city, snapshot, journal, 1);
+        long before = journal.length();
+        city.run(20);
+        log.close();
+        assertTrue(journal.length() - before < 20 * 20, "La bitácora creció " + (journal.length() - before) + " bytes");
+        ParallelTickTest.assertSameCity(city, CityJournal.recover(snapshot, journal));
+    }
+
+    @Test
+    public void shouldNotWriteTickDrivenChanges() throws CityException {
+        // Semáforos, postes de luz, personas y Cheerful cambian en cada turno solo por avanzar
+        City city = new City(60, 60);
+        for (int r = 0; r < 60; r++) {
+            for (int c = (r % 2); c < 60; c += 2) {
+                ItemTypes.create((r * 7 + c) % 5 == 0 ? PackedSimulator.CHEERFUL
+                                 : (c % 3 == 0) ? PackedSimulator.PERSON
+                                 : (c % 3 == 1) ? PackedSimulator.TRAFFIC_LIGHT : PackedSimulator.STREET_LIGHT, city, r, c);
+            }
+        }
+        CityJournal log = CityJournal.start(city, snapshot, journal, 1);
+        city.run(3); // Las personas junto a un Cheerful se asientan en sus primeros turnos
+        long before = journal.length();
+        city.run(30);
+        log.commit();
+        assertTrue(journal.length() - before < 30 * 16, "La bitácora creció " + (journal.length() - before) + " bytes");
+        City recovered = CityJournal.recover(snapshot, journal);
+        ParallelTickTest.assertSameCity(city, recovered);
+        city.run(7);
+        recovered.run(7);
+        ParallelTickTest.assertSameCity(city, recovered);
+        log.close();
+    }
+
+    @Test
+    public void shouldNotRecoverForeignJournal() throws IOException, CityException {
+        new City(5, 5).save(snapshot);
+        try (FileOutputStream out = new FileOutputStream(journal)) {
+            out.write("no es una bitácora".getBytes());
+        }
+        assertThrows(CityException.class, () -> CityJournal.recover(snapshot, journal));
+        assertThrows(IllegalArgumentException.class, () -> CityJournal.start(new City(5, 5), snapshot, journal, 0));
+    }
+}
@@ -0,0 +1,103 @@
+package test;
+
+import domain.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Clase de pruebas unitarias para los conteos de vecinos de la ciudad.
+ * Verifica que los conteos mantenidos coincidan con los calculados recorriendo los vecinos.
+ */
+public class NeighborCountsTest {
+
+    // Compara los conteos de una ciudad con los de otra que los calcula en cada consulta
+    private static void assertSameCounts(City expected, City actual) {
+        for (int r = 0; r < expected.getHeight(); r++) {
+            for (int c = 0; c < expected.getWidth(); c++) {
+                assertEquals(expected.neighbors(r, c), actual.neighbors(r, c), "Vecinos distintos en (" + r + ", " + c + ")");
+                assertEquals(expected.neighborsEquals(r, c), actual.neighborsEquals(r, c), "Vecinos iguales distintos en (" + r + ", " + c + ")");
+            }
+        }
+    }
+
+    @Test
+    public void shouldCountNeighbors() {
+        City city = new City(5, 5);
+        city.setNeighborCounting(true);
+        new SchellingPerson(city, 2, 2);
+        new SchellingPerson(city, 1, 1);
+        new Person(city, 1, 2);
+        new Walker(city, 3, 3);
+        assertEquals(3, city.neighbors(2, 2));
+        assertEquals(1, city.neighborsEquals(2, 2));
+        assertEquals(0, city.neighborsEquals(1, 2));
+        assertEquals(1, city.neighbors(0, 0));
+        assertEquals(0, city.neighborsEquals(0, 0), "Una celda vacía no tiene vecinos iguales");
+
+        city.setItem(1, 1, null);
+        assertEquals(2, city.neighbors(2, 2));
+        assertEquals(0, city.neighborsEquals(2, 2));
+        new Person(city, 2, 2);
+        assertEquals(1, city.neighborsEquals(2, 2), "Ahora es igual a la persona en (1, 2)");
+        assertEquals(1, city.neighborsEquals(1, 2));
+    }
+
+    @Test
+    public void shouldMatchScannedCountsWhileSimulating() {
+        City expected = City.random(30, 40, 0.5, 13);
+        City actual = City.random(30, 40, 0.5, 13);
+        actual.setNeighborCounting(true);
+        assertTrue(actual.isNeighborCounting());
+        for (int i = 0; i < 20; i++) {
+            expected.ticTac();
+            actual.ticTac();
+        }
+        ParallelTickTest.assertSameCity(expected, actual);
+        assertSameCounts(expected, actual);
+    }
+
+    @Test
+    public void shouldMatchScannedCountsInParallelMode() {
+        City expected = City.random(80, 60, 0.4, 17);
+        City actual = City.random(80, 60, 0.4, 17);
+        expected.setTickMode(City.PARALLEL);
+        actual.setTickMode(City.PARALLEL);
+        actual.setNeighborCounting(true);
+        for (int i = 0; i < 10; i++) {
+            expected.ticTac();
+            actual.ticTac();
+        }
+        ParallelTickTest.assertSameCity(expected, actual);
+        assertSameCounts(expected, actual);
+    }
+
+    @Test
+    public void shouldCountAllNeighborsAcrossWords() {
+        City scanned = City.random(9, 130, 0.3, 29);
+        City counted = City.random(9, 130, 0.3, 29);
+        counted.setNeighborCounting(true);
+        byte[] counts = scanned.neighborCounts();
+        for (int r = 0; r < 9; r++) {
+            for (int c = 0; c < 130; c++) {
+                assertEquals(counted.neighbors(r, c), scanned.neighbors(r, c), "Vecinos distintos en (" + r + ", " + c + ")");
+                assertEquals(counted.neighbors(r, c), counts[r * 130 + c], "Conteo masivo distinto en (" + r + ", " + c + ")");
+                assertEquals(counted.neighbors(r, c) > 0, scanned.hasNeighbors(r, c));
+            }
+        }
+    }
+
+    @Test
+    public void shouldDetectNeighborsAtWordBoundaries() {
+        City city = new City(3, 129);
+        new Person(city, 1, 64);
+        assertTrue(city.hasNeighbors(0, 63));
+        assertTrue(city.hasNeighbors(2, 65));
+        assertFalse(city.hasNeighbors(1, 64), "La propia celda no es vecina");
+        assertFalse(city.hasNeighbors(1, 62));
+        new Person(city, 0, 128);
+        assertEquals(1, city.neighbors(1, 127));
+        assertEquals(3 * 129, city.neighborCounts().length);
+        assertFalse(city.hasNeighbors(5, 5), "Fuera de la ciudad no hay vecinos");
+    }
+}
@@ -36,7 +36,7 @@ public class OpenTest {
             City.open(file);
         });
 
-        assertEquals("El archivo debe tener la extensión .dat", exception.getMessage());
+        assertEquals("El archivo debe tener la extensión .dat o .city", exception.getMessage());
     }
 
     @Test
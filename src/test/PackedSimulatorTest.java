@@ -0,0 +1,123 @@
+package test;
+
+import domain.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Clase de pruebas unitarias para la clase PackedSimulator.
+ * Verifica que la representación compacta simule exactamente igual que la ciudad con objetos.
+ */
+public class PackedSimulatorTest {
+
+    private static byte expectedType(Item item) {
+        if (item == null) return PackedSimulator.EMPTY;
+        if (item instanceof Walker) return PackedSimulator.WALKER;
+        if (item instanceof SchellingPerson) return PackedSimulator.SCHELLING;
+        if (item instanceof Cheerful) return PackedSimulator.CHEERFUL;
+        if (item instanceof Person) return PackedSimulator.PERSON;
+        if (item instanceof StreetLight) return PackedSimulator.STREET_LIGHT;
+        return PackedSimulator.TRAFFIC_LIGHT;
+    }
+
+    private static void assertSameContent(City city, PackedSimulator grid) {
+        for (int r = 0; r < city.getHeight(); r++) {
+            for (int c = 0; c < city.getWidth(); c++) {
+                Item expected = city.getItem(r, c);
+                Item actual = grid.getItem(r, c);
+                assertEquals(expectedType(expected), grid.getType(r, c), "Tipo distinto en (" + r + ", " + c + ")");
+                if (expected == null) {
+                    assertNull(actual);
+                    continue;
+                }
+                assertEquals(expected.getColor(), actual.getColor(), "Color distinto en (" + r + ", " + c + ")");
+                assertEquals(expected.shape(), actual.shape());
+                assertEquals(expected.isAgent(), actual.isAgent());
+                if (expected.isAgent()) {
+                    Agent a = (Agent) expected, b = (Agent) actual;
+                    assertEquals(a.isHappy(), b.isHappy(), "Estado distinto en (" + r + ", " + c + ")");
+                    assertEquals(a.isIndifferent(), b.isIndifferent());
+                    assertEquals(a.getSteps(), b.getSteps(), "Pasos distintos en (" + r + ", " + c + ")");
+                }
+            }
+        }
+    }
+
+    @Test
+    public void shouldPackDefaultCity() {
+        City city = new City();
+        PackedSimulator grid = PackedSimulator.of(city);
+        assertEquals(12, grid.countItems());
+        assertSameContent(city, grid);
+    }
+
+    @Test
+    public void shouldSimulateLikeDefaultCity() {
+        City city = new City();
+        PackedSimulator grid = PackedSimulator.of(city);
+        for (int i = 0; i < 40; i++) {
+            city.ticTac();
+            grid.ticTac();
+            assertSameContent(city, grid);
+        }
+    }
+
+    @Test
+    public void shouldSimulateLikeRandomCity() {
+        City city = City.random(30, 45, 0.4, 7);
+        PackedSimulator grid = PackedSimulator.of(city);
+        for (int i = 0; i < 25; i++) {
+            city.ticTac();
+            grid.ticTac();
+        }
+        assertSameContent(city, grid);
+    }
+
+    @Test
+    public void shouldRebuildCity() {
+        City city = City.random(20, 20, 0.5, 11);
+        for (int i = 0; i < 5; i++) {
+            city.ticTac();
+        }
+        City rebuilt = PackedSimulator.of(city).toCity();
+        assertSameContent(rebuilt, PackedSimulator.of(city));
+        city.ticTac();
+        rebuilt.ticTac();
+        assertSameContent(city, PackedSimulator.of(rebuilt));
+    }
+
+    @Test
+    public void shouldWriteStateThroughView() {
+        City city = new City(3, 3);
+        new Person(city, 1, 1);
+        PackedSimulator grid = PackedSimulator.of(city);
+        ((Agent) grid.getItem(1, 1)).setState(Agent.INDIFFERENT);
+        assertTrue(((Agent) grid.getItem(1, 1)).isIndifferent());
+    }
+
+    @Test
+    public void shouldKeepHeldViewsCurrent() {
+        City city = new City(3, 3);
+        new Person(city, 0, 0);
+        new Walker(city, 2, 2);
+        PackedSimulator grid = PackedSimulator.of(city);
+        Agent person = (Agent) grid.getItem(0, 0);
+        Agent walker = (Agent) grid.getItem(2, 2);
+        assertSame(person, grid.getItem(0, 0));
+        grid.ticTac();
+        city.ticTac();
+        assertEquals(1, person.getSteps());
+        assertEquals(((Agent) city.getItem(0, 0)).isHappy(), person.isHappy());
+        assertEquals(((Agent) city.getItem(0, 0)).isIndifferent(), person.isIndifferent());
+        assertNull(grid.getItem(2, 2), "El caminante avanzó hacia el norte");
+        assertSame(walker, grid.getItem(1, 2));
+        assertEquals(1, walker.getSteps());
+    }
+
+    @Test
+    public void shouldRejectInvalidDimensions() {
+        assertThrows(IllegalArgumentException.class, () -> new PackedSimulator(0, 5));
+        assertThrows(IllegalArgumentException.class, () -> new PackedSimulator(70000, 70000)); // Más celdas que un int
+    }
+}
@@ -0,0 +1,82 @@
+package test;
+
+import domain.*;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Clase de pruebas unitarias para el modo de avance PARALLEL de la ciudad.
+ * Verifica que repartir las filas entre varios hilos produzca el mismo resultado que el modo SYNCHRONOUS.
+ */
+public class ParallelTickTest {
+    private ForkJoinPool pool;
+
+    @BeforeEach
+    public void setUp() {
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    // Compara celda a celda el tipo, el estado, los pasos y el color de dos ciudades
+    static void assertSameCity(City expected, City actual) {
+        for (int r = 0; r < expected.getHeight(); r++) {
+            for (int c = 0; c < expected.getWidth(); c++) {
+                Item a = expected.getItem(r, c), b = actual.getItem(r, c);
+                if (a == null || b == null) {
+                    assertSame(a, b, "Ocupación distinta en (" + r + ", " + c + ")");
+                    continue;
+                }
+                assertEquals(a.getClass(), b.getClass(), "Tipo distinto en (" + r + ", " + c + ")");
+                assertEquals(a.getColor(), b.getColor(), "Color distinto en (" + r + ", " + c + ")");
+                if (a.isAgent()) {
+                    assertEquals(((Agent) a).isHappy(), ((Agent) b).isHappy(), "Estado distinto en (" + r + ", " + c + ")");
+                    assertEquals(((Agent) a).isDissatisfied(), ((Agent) b).isDissatisfied());
+                    assertEquals(((Agent) a).getSteps(), ((Agent) b).getSteps());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void shouldMatchSynchronousMode() {
+        // Con 16384 celdas por banda y 128 columnas, cada banda tiene 128 filas: 7 bandas, la última incompleta
+        City synchronous = City.random(800, 128, 0.35, 3);
+        City parallel = City.random(800, 128, 0.35, 3);
+        synchronous.setTickMode(City.SYNCHRONOUS);
+        parallel.setTickMode(City.PARALLEL);
+        parallel.setPool(pool);
+        for (int i = 0; i < 15; i++) {
+            synchronous.ticTac();
+            parallel.ticTac();
+        }
+        assertSameCity(synchronous, parallel);
+    }
+
+    @Test
+    public void shouldMoveAgentsAcrossBands() {
+        // Con 16384 celdas por banda y 4096 columnas, cada banda tiene 4 filas
+        City city = new City(12, 4096);
+        city.setTickMode(City.PARALLEL);
+        city.setPool(pool);
+        Walker walker = new Walker(city, 4, 100);
+        city.ticTac();
+        assertSame(walker, city.getItem(3, 100));
+        assertNull(city.getItem(4, 100));
+    }
+
+    @Test
+    public void shouldUseCommonPoolByDefault() {
+        City city = new City();
+        city.setTickMode(City.PARALLEL);
+        assertDoesNotThrow(() -> city.ticTac());
+    }
+}
@@ -0,0 +1,106 @@
+package test;
+
+import domain.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Clase de pruebas unitarias para la exportación por bloques y el formato por tramos "xN".
+ */
+public class PlacementExportTest {
+    private final File file = new File("placementExport.txt");
+    private final File compressed = new File("placementExport.txt.gz");
+
+    @AfterEach
+    public void tearDown() {
+        file.delete(); // Limpieza después de cada prueba
+        compressed.delete();
+    }
+
+    // Comprueba que las dos ciudades tienen ítems de la misma clase en las mismas celdas
+    private static void assertSamePlacements(City expected, City actual) {
+        assertEquals(expected.countItems(), actual.countItems());
+        int width = expected.getWidth();
+        for (int cell = expected.nextOccupied(0); cell >= 0; cell = expected.nextOccupied(cell + 1)) {
+            Item item = actual.getItem(cell / width, cell % width);
+            assertNotNull(item);
+            assertEquals(expected.getItem(cell / width, cell % width).getClass(), item.getClass());
+        }
+    }
+
+    @Test
+    public void shouldWriteRunsAndImportThem() throws IOException, CityException {
+        City city = new City(4, 50);
+        for (int c = 0; c < 40; c++) {
+            new Person(city, 1, c);
+        }
+        new Walker(city, 1, 40);
+        new Walker(city, 2, 49);
+        for (int c = 0; c < 3; c++) {
+            new StreetLight(city, 3, c);
+        }
+        city.exportData(file, true);
+        assertEquals("Person 1 0 x40\nWalker 1 40\nWalker 2 49\nStreetLight 3 0 x3\n", Files.readString(file.toPath()));
+
+        City imported = new City(4, 50);
+        imported.importData(file);
+        assertSamePlacements(city, imported);
+    }
+
+    @Test
+    public void shouldRoundTripLikePlainExport() throws CityException {
+        City city = City.random(60, 80, 0.7, 29);
+        city.exportData(compressed, true);
+        City imported = new City(60, 80);
+        imported.importData(compressed); // Se reconoce el gzip al importar
+        assertSamePlacements(city, imported);
+
+        city.exportData(file);
+        City plain = new City(60, 80);
+        plain.importParallel(file);
+        assertSamePlacements(city, plain);
+    }
+
+    @Test
+    public void shouldExportToStream() throws IOException, CityException {
+        City city = new City();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        city.exportData(out, false);
+        city.exportData(file);
+        assertEquals(Files.readString(file.toPath()), out.toString(StandardCharsets.UTF_8));
+        assertThrows(CityException.class, () -> city.exportData((ByteArrayOutputStream) null, false));
+    }
+
+    @Test
+    public void shouldRejectInvalidRuns() throws IOException {
+        City city = new City(5, 5);
+        try (Writer writer = new FileWriter(file)) {
+            writer.write("Person 0 0 x5\nPerson 1 2 x4\n");
+        }
+        Exception exception = assertThrows(CityException.class, () -> city.importData(file));
+        assertEquals("Error en la línea 2: Coordenadas fuera de los límites (r=1, c=5).", exception.getMessage());
+        assertEquals(5, city.countItems());
+
+        try (Writer writer = new FileWriter(file)) {
+            writer.write("Person 0 0 x0\n");
+        }
+        exception = assertThrows(CityException.class, () -> city.importData(file));
+        assertEquals("Error en la línea 1: Longitud de tramo inválida 'x0'.", exception.getMessage());
+
+        try (Writer writer = new FileWriter(file)) {
+            writer.write("Person 0 0 5\n");
+        }
+        exception = assertThrows(CityException.class, () -> city.importData(file));
+        assertTrue(exception.getMessage().contains("Se esperaban 3 elementos, pero se encontraron 4"));
+    }
+}
@@ -0,0 +1,141 @@
+package test;
+
+import domain.*;
+
+import java.io.File;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Clase de pruebas unitarias para los vecindarios de radio mayor que 1 (City.setNeighborhoodRadius()).
+ */
+public class RadiusTest {
+    private final File file = new File("radiusCity.city");
+    private final File dat = new File("radiusCity.dat");
+
+    @AfterEach
+    public void tearDown() {
+        file.delete(); // Limpieza después de cada prueba
+        dat.delete();
+    }
+
+    // Verifica neighbors() y neighborsEquals() en todas las celdas contando directamente las celdas del radio
+    private static void assertRadiusCounts(City city, int radius) {
+        int h = city.getHeight(), w = city.getWidth();
+        boolean wraps = (city.getTopology() == City.TORUS);
+        for (int r = 0; r < h; r++) {
+            for (int c = 0; c < w; c++) {
+                Item item = city.getItem(r, c);
+                int total = 0, same = 0;
+                for (int dr = -radius; dr <= radius; dr++) {
+                    for (int dc = -radius; dc <= radius; dc++) {
+                        int nr = wraps ? Math.floorMod(r + dr, h) : r + dr;
+                        int nc = wraps ? Math.floorMod(c + dc, w) : c + dc;
+                        if ((dr == 0 && dc == 0) || nr < 0 || nr >= h || nc < 0 || nc >= w) {
+                            continue;
+                        }
+                        Item neighbor = city.getItem(nr, nc);
+                        total += (neighbor != null) ? 1 : 0;
+                        same += (neighbor != null && item != null && neighbor.getClass() == item.getClass()) ? 1 : 0;
+                    }
+                }
+                assertEquals(total, city.neighbors(r, c), "Vecinos en (" + r + ", " + c + ")");
+                assertEquals(same, city.neighborsEquals(r, c), "Vecinos iguales en (" + r + ", " + c + ")");
+            }
+        }
+    }
+
+    @Test
+    public void shouldCountNeighborsInRadius() {
+        for (int topology : new int[] {City.MOORE, City.TORUS}) {
+            for (int radius = 2; radius <= 4; radius++) {
+                City city = City.random(30, 40, 0.4, 7 + radius);
+                city.setTopology(topology);
+                city.setNeighborhoodRadius(radius);
+                assertEquals(radius, city.getNeighborhoodRadius());
+                assertRadiusCounts(city, radius);
+
+                // Los árboles se actualizan con cada cambio, sean pocos o muchos
+                city.setItem(0, 0, null);
+                new Walker(city, 15, 20);
+                new StreetLight(city, 29, 39);
+                assertRadiusCounts(city, radius);
+                for (int c = 0; c < 40; c++) {
+                    city.setItem(10, c, null);
+                    new TrafficLight(city, 20, c);
+                }
+                assertRadiusCounts(city, radius);
+            }
+        }
+    }
+
+    @Test
+    public void shouldTickWithExactCountsInEveryMode() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            City[] cities = new City[3];
+            for (int mode = City.SEQUENTIAL; mode <= City.PARALLEL; mode++) {
+                City city = City.random(40, 60, 0.45, 29);
+                City dirty = City.random(40, 60, 0.45, 29);
+                for (City each : new City[] {city, dirty}) {
+                    each.setTopology(City.TORUS);
+                    each.setNeighborhoodRadius(3);
+                    each.setTickMode(mode);
+                    each.setPool(pool);
+                }
+                dirty.setDirtyScheduling(true);
+                for (int i = 0; i < 10; i++) {
+                    city.ticTac();
+                    dirty.ticTac();
+                    assertRadiusCounts(city, 3);
+                }
+                ParallelTickTest.assertSameCity(city, dirty);
+                cities[mode] = city;
+            }
+            ParallelTickTest.assertSameCity(cities[City.SYNCHRONOUS], cities[City.PARALLEL]);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldKeepRadiusWhenSaved() throws CityException {
+        City city = City.random(20, 30, 0.3, 5);
+        city.setNeighborhoodRadius(2);
+        city.save(file);
+        City opened = City.open(file);
+        assertEquals(2, opened.getNeighborhoodRadius());
+        assertRadiusCounts(opened, 2);
+        City mapped = City.openMapped(file);
+        assertEquals(2, mapped.getNeighborhoodRadius());
+        assertRadiusCounts(mapped, 2);
+
+        city.setTopology(City.TORUS);
+        city.setNeighborhoodRadius(3);
+        city.save(dat);
+        opened = City.open(dat);
+        assertEquals(City.TORUS, opened.getTopology());
+        assertEquals(3, opened.getNeighborhoodRadius());
+        assertRadiusCounts(opened, 3);
+    }
+
+    @Test
+    public void shouldRejectInvalidRadius() {
+        City city = new City(5, 9);
+        assertThrows(IllegalArgumentException.class, () -> city.setNeighborhoodRadius(0));
+        city.setTopology(City.HEX);
+        assertThrows(IllegalArgumentException.class, () -> city.setNeighborhoodRadius(2));
+        city.setTopology(City.TORUS);
+        assertThrows(IllegalArgumentException.class, () -> city.setNeighborhoodRadius(3)); // 7 filas no caben en 5
+        city.setNeighborhoodRadius(2);
+        assertThrows(IllegalArgumentException.class, () -> city.setTopology(City.VON_NEUMANN));
+        assertEquals(City.TORUS, city.getTopology());
+        assertThrows(IllegalArgumentException.class, () -> PackedSimulator.of(city));
+        city.setNeighborhoodRadius(1);
+        city.setTopology(City.VON_NEUMANN);
+        assertEquals(1, city.getNeighborhoodRadius());
+    }
+}
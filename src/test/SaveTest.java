@@ -32,7 +32,7 @@ public class SaveTest {
             city.save(file);
         });
 
-        assertEquals("El archivo debe tener la extensión .dat", exception.getMessage());
+        assertEquals("El archivo debe tener la extensión .dat o .city", exception.getMessage());
     }
 
     @Test
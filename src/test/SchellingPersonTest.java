@@ -3,6 +3,7 @@ package test;
 import domain.SchellingPerson;
 import domain.Person;
 import domain.City;
+import domain.TrafficLight;
 import org.junit.jupiter.api.Test;
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -30,4 +31,76 @@ public class SchellingPersonTest {
         person1.decide();
         assertTrue(person1.isHappy(), "Debe estar HAPPY con suficientes vecinos similares");
     }
-}
\ No newline at end of file
+
+    @Test
+    public void shouldRelocateAnywhere() {
+        City city = new City(20, 20);
+        city.setSeed(3);
+        SchellingPerson person = new SchellingPerson(city, 10, 10);
+        for (int dr = -1; dr <= 1; dr++) {
+            for (int dc = -1; dc <= 1; dc++) {
+                if (dr != 0 || dc != 0) {
+                    new TrafficLight(city, 10 + dr, 10 + dc); // Rodeada sin celdas adyacentes vacías
+                }
+            }
+        }
+        person.setRelocation(SchellingPerson.ANYWHERE);
+        assertTrue(city.isVacancyIndexing());
+        city.ticTac();
+        assertTrue(city.isEmpty(10, 10), "Debe mudarse aunque no tenga celdas adyacentes vacías");
+        assertSame(person, city.getItem(person.getRow(), person.getColumn()));
+        assertEquals(9, city.countItems());
+    }
+
+    @Test
+    public void shouldRelocateDeterministically() {
+        City[] cities = {new City(30, 30), new City(30, 30), new City(30, 30), new City(30, 30)};
+        cities[2].setTickMode(City.SYNCHRONOUS);
+        cities[3].setTickMode(City.PARALLEL);
+        for (City city : cities) {
+            city.setSeed(11);
+            for (int r = 0; r < 30; r += 2) {
+                for (int c = 0; c < 30; c += 3) {
+                    SchellingPerson person = new SchellingPerson(city, r, c);
+                    new Person(city, r + 1, c);
+                    person.setRelocation(SchellingPerson.ANYWHERE);
+                }
+            }
+        }
+        for (int i = 0; i < 10; i++) {
+            for (City city : cities) {
+                city.ticTac();
+            }
+        }
+        for (int r = 0; r < 30; r++) {
+            for (int c = 0; c < 30; c++) {
+                assertEquals(cities[0].isEmpty(r, c), cities[1].isEmpty(r, c));
+                assertEquals(cities[2].isEmpty(r, c), cities[3].isEmpty(r, c), "PARALLEL debe coincidir con SYNCHRONOUS");
+            }
+        }
+        assertEquals(10, cities[0].getTicks());
+    }
+
+    @Test
+    public void shouldPickOnlyEmptyCells() {
+        City city = new City(4, 4);
+        city.setVacancyIndexing(true);
+        for (int i = 0; i < 15; i++) {
+            new Person(city, i / 4, i % 4);
+        }
+        assertEquals(15, city.randomEmptyCell(0, 0), "Solo queda libre la última celda");
+        city.setItem(1, 1, null);
+        new Person(city, 3, 3);
+        assertEquals(5, city.randomEmptyCell(2, 2));
+        new Person(city, 1, 1);
+        assertEquals(-1, city.randomEmptyCell(2, 2));
+    }
+
+    @Test
+    public void shouldRejectUnknownRelocation() {
+        City city = new City(3, 3);
+        SchellingPerson person = new SchellingPerson(city, 1, 1);
+        assertThrows(IllegalArgumentException.class, () -> person.setRelocation(7));
+        assertThrows(IllegalStateException.class, () -> city.randomEmptyCell(1, 1));
+    }
+}
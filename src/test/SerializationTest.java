@@ -0,0 +1,66 @@
+package test;
+
+import domain.*;
+
+import java.awt.Color;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Clase de pruebas unitarias para la serialización de City en archivos .dat.
+ */
+public class SerializationTest {
+    private final File file = new File("serializedCity.dat");
+
+    @AfterEach
+    public void tearDown() {
+        file.delete(); // Limpieza después de cada prueba
+    }
+
+    @Test
+    public void shouldKeepItemsStatesAndOptions() throws CityException {
+        City city = City.random(50, 60, 0.4, 79);
+        city.setTickMode(City.SYNCHRONOUS);
+        city.setSeed(5);
+        city.setNeighborCounting(true);
+        city.run(4);
+        city.save(file);
+        City loaded = City.open(file);
+        assertEquals(City.SYNCHRONOUS, loaded.getTickMode());
+        assertEquals(4, loaded.getTicks());
+        assertTrue(loaded.isNeighborCounting());
+        ParallelTickTest.assertSameCity(city, loaded);
+        city.run(6);
+        loaded.run(6);
+        ParallelTickTest.assertSameCity(city, loaded);
+    }
+
+    @Test
+    public void shouldOpenFilesOfTheOriginalFormat() throws CityException {
+        // Guardado con las clases originales, sin dimensiones propias ni registros compactos
+        City city = City.open(new File("legacyCity.dat"));
+        assertEquals(25, city.getHeight());
+        assertEquals(25, city.getWidth());
+        assertEquals(12, city.countItems());
+        assertTrue(city.getItem(0, 5) instanceof Walker);
+        assertTrue(city.getItem(2, 2) instanceof StreetLight);
+        assertTrue(city.getItem(6, 6) instanceof Cheerful);
+        assertEquals(Color.MAGENTA, city.getItem(2, 3).getColor());
+        assertDoesNotThrow(() -> city.run(3));
+    }
+
+    @Test
+    public void shouldRejectForeignClasses() throws IOException {
+        try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(file))) {
+            out.writeObject(new ArrayList<String>());
+        }
+        assertThrows(CityException.class, () -> City.open(file));
+    }
+}
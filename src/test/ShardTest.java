@@ -0,0 +1,115 @@
+package test;
+
+import domain.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Clase de pruebas unitarias para la importación en paralelo y la exportación e importación por bandas.
+ */
+public class ShardTest {
+    private final File file = new File("parallelImport.txt");
+    private final File manifest = new File("shardedCity.manifest");
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+
+    @AfterEach
+    public void tearDown() {
+        file.delete(); // Limpieza después de cada prueba
+        for (int k = 0; k < 8; k++) {
+            new File("shardedCity-" + k + ".txt").delete();
+        }
+        manifest.delete();
+        pool.shutdown();
+    }
+
+    // Escribe un archivo de ubicaciones con separadores mezclados, líneas en blanco y celdas repetidas
+    private void writePlacements(String lastLine) throws IOException {
+        String[] types = {"Person", "Walker", "SchellingPerson", "Cheerful", "TrafficLight", "StreetLight"};
+        try (Writer writer = new FileWriter(file)) {
+            for (int i = 0; i < 20000; i++) {
+                int r = (i * 7) % 150, c = (i * 13) % 140;
+                String separator = (i % 3 == 0) ? "\r\n" : (i % 3 == 1) ? "\n" : "\r";
+                writer.write(types[i % types.length] + " " + r + "\t" + c + separator);
+                if (i % 1000 == 0) {
+                    writer.write("   \n");
+                }
+            }
+            writer.write(lastLine);
+        }
+    }
+
+    @Test
+    public void shouldImportLikeSequentialImport() throws IOException, CityException {
+        writePlacements("Person 149 139");
+        City sequential = new City(150, 140);
+        sequential.importData(file);
+        City parallel = new City(150, 140);
+        parallel.setPool(pool);
+        parallel.importParallel(file);
+        ParallelTickTest.assertSameCity(sequential, parallel);
+    }
+
+    @Test
+    public void shouldReportTheSameLineAsSequentialImport() throws IOException {
+        writePlacements("Person 149 140\n");
+        City sequential = new City(150, 140);
+        Exception expected = assertThrows(CityException.class, () -> sequential.importData(file));
+        City parallel = new City(150, 140);
+        parallel.setPool(pool);
+        Exception actual = assertThrows(CityException.class, () -> parallel.importParallel(file));
+        assertEquals(expected.getMessage(), actual.getMessage());
+        assertTrue(actual.getMessage().contains("Coordenadas fuera de los límites"));
+        ParallelTickTest.assertSameCity(sequential, parallel);
+    }
+
+    @Test
+    public void shouldExportAndImportShards() throws CityException {
+        City city = City.random(90, 70, 0.4, 83);
+        city.setPool(pool);
+        city.exportShards(manifest, 5);
+        assertTrue(new File("shardedCity-4.txt").exists());
+        assertFalse(new File("shardedCity-5.txt").exists());
+
+        City imported = new City(90, 70);
+        imported.setPool(pool);
+        imported.importShards(manifest);
+        assertEquals(city.countItems(), imported.countItems());
+        int width = city.getWidth();
+        for (int cell = city.nextOccupied(0); cell >= 0; cell = city.nextOccupied(cell + 1)) {
+            Item item = imported.getItem(cell / width, cell % width);
+            assertNotNull(item);
+            assertEquals(city.getItem(cell / width, cell % width).getClass(), item.getClass());
+        }
+
+        // Cada banda es un archivo de ubicaciones normal
+        City band = new City(90, 70);
+        band.importData(new File("shardedCity-0.txt"));
+        assertTrue(band.countItems() > 0);
+    }
+
+    @Test
+    public void shouldRejectInvalidManifest() throws IOException, CityException {
+        try (Writer writer = new FileWriter(manifest)) {
+            writer.write("City 10 10\nshardedCity-0.txt 5 20\n");
+        }
+        City city = new City(10, 10);
+        Exception exception = assertThrows(CityException.class, () -> city.importShards(manifest));
+        assertTrue(exception.getMessage().startsWith("Manifiesto inválido"));
+        assertThrows(IllegalArgumentException.class, () -> city.exportShards(manifest, 0));
+
+        // Las bandas de una ciudad de otras dimensiones no se importan
+        city.exportShards(manifest, 2);
+        City other = new City(10, 12);
+        exception = assertThrows(CityException.class, () -> other.importShards(manifest));
+        assertTrue(exception.getMessage().startsWith("Manifiesto inválido"));
+        assertEquals(0, other.countItems());
+    }
+}
@@ -0,0 +1,184 @@
+package test;
+
+import domain.*;
+
+import java.awt.Color;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Clase de pruebas unitarias para el formato binario .city de City.save() y City.open().
+ */
+public class SnapshotTest {
+    private final File file = new File("snapshotCity.city");
+    private final File dat = new File("snapshotCity.dat");
+
+    @AfterEach
+    public void tearDown() {
+        file.delete(); // Limpieza después de cada prueba
+        dat.delete();
+    }
+
+    @Test
+    public void shouldKeepItemsAndStates() throws CityException {
+        City city = City.random(70, 90, 0.4, 31);
+        city.setTickMode(City.SYNCHRONOUS);
+        city.setSeed(9);
+        city.run(7);
+        city.save(file);
+        City loaded = City.open(file);
+        assertEquals(70, loaded.getHeight());
+        assertEquals(90, loaded.getWidth());
+        assertEquals(city.countItems(), loaded.countItems());
+        assertEquals(City.SYNCHRONOUS, loaded.getTickMode());
+        assertEquals(9, loaded.getSeed());
+        assertEquals(7, loaded.getTicks());
+        ParallelTickTest.assertSameCity(city, loaded);
+
+        // El estado oculto (fila deseada, contador de turnos, colores) también debe conservarse
+        city.run(10);
+        loaded.run(10);
+        ParallelTickTest.assertSameCity(city, loaded);
+    }
+
+    @Test
+    public void shouldKeepOptionsAndRelocation() throws CityException {
+        City city = new City(10, 300);
+        city.setNeighborCounting(true);
+        city.setDirtyScheduling(true);
+        SchellingPerson person = new SchellingPerson(city, 9, 299);
+        person.setRelocation(SchellingPerson.ANYWHERE);
+        new Walker(city, 0, 0);
+        city.save(file);
+        City loaded = City.open(file);
+        assertTrue(loaded.isNeighborCounting());
+        assertTrue(loaded.isDirtyScheduling());
+        assertTrue(loaded.isVacancyIndexing());
+        assertEquals(SchellingPerson.ANYWHERE, ((SchellingPerson) loaded.getItem(9, 299)).getRelocation());
+        assertEquals(Color.MAGENTA, loaded.getItem(9, 299).getColor());
+    }
+
+    @Test
+    public void shouldNotBeLargerThanSerialization() throws CityException {
+        // Los .dat también guardan registros compactos, pero sin índice de ocupación ni bloques
+        City city = City.random(200, 200, 0.5, 37);
+        city.save(file);
+        city.save(dat);
+        assertTrue(file.length() <= dat.length(), file.length() + " bytes frente a " + dat.length());
+    }
+
+    @Test
+    public void shouldSaveEmptyCity() throws CityException {
+        new City(3, 4).save(file);
+        City loaded = City.open(file);
+        assertEquals(0, loaded.countItems());
+        assertEquals(4, loaded.getWidth());
+    }
+
+    @Test
+    public void shouldNotOpenCorruptedFile() throws IOException, CityException {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write("no es una ciudad".getBytes());
+        }
+        assertThrows(CityException.class, () -> City.open(file));
+
+        City city = City.random(20, 20, 0.5, 41);
+        city.save(file);
+        byte[] content = Files.readAllBytes(file.toPath());
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(content, 0, content.length - 3); // Archivo truncado
+        }
+        assertThrows(CityException.class, () -> City.open(file));
+    }
+
+    @Test
+    public void shouldNotSaveUnknownItems() {
+        City city = new City(3, 3);
+        city.setItem(1, 1, () -> { });
+        assertThrows(CityException.class, () -> city.save(file));
+    }
+
+    @Test
+    public void shouldOpenMappedLazily() throws CityException {
+        City city = City.random(300, 200, 0.4, 43);
+        city.run(3);
+        city.save(file);
+        City mapped = City.openMapped(file);
+        assertFalse(mapped.isMaterialized());
+        assertEquals(city.countItems(), mapped.countItems());
+        assertEquals(city.nextOccupied(0), mapped.nextOccupied(0));
+        assertEquals(city.neighbors(150, 100), mapped.neighbors(150, 100));
+        assertEquals(city.getItem(299, 199) == null, mapped.getItem(299, 199) == null);
+        assertFalse(mapped.isMaterialized(), "Solo se leyó el bloque de la esquina");
+
+        city.run(5);
+        mapped.run(5);
+        assertTrue(mapped.isMaterialized(), "Un turno recorre todos los bloques");
+        ParallelTickTest.assertSameCity(city, mapped);
+    }
+
+    @Test
+    public void shouldKeepChangesToUnreadChunks() throws CityException {
+        City city = City.random(130, 130, 0.5, 47);
+        city.save(file);
+        City mapped = City.openMapped(file);
+        Person person = new Person(mapped, 100, 100);
+        mapped.setItem(5, 70, null);
+        assertSame(person, mapped.getItem(100, 100));
+        assertNull(mapped.getItem(5, 70));
+        city.setItem(100, 100, person);
+        city.setItem(5, 70, null);
+        mapped.materialize();
+        assertTrue(mapped.isMaterialized());
+        ParallelTickTest.assertSameCity(city, mapped);
+    }
+
+    @Test
+    public void shouldMaterializeBeforeParallelTick() throws CityException {
+        City city = City.random(100, 100, 0.4, 53);
+        city.setTickMode(City.PARALLEL);
+        city.save(file);
+        City mapped = City.openMapped(file);
+        assertEquals(City.PARALLEL, mapped.getTickMode());
+        city.run(4);
+        mapped.run(4);
+        ParallelTickTest.assertSameCity(city, mapped);
+    }
+
+    @Test
+    public void shouldSaveMappedCityToSameFile() throws CityException {
+        City city = City.random(150, 140, 0.4, 59);
+        city.save(file);
+        City mapped = City.openMapped(file);
+        assertFalse(mapped.isMaterialized());
+        mapped.save(file);
+        assertTrue(mapped.isMaterialized());
+        ParallelTickTest.assertSameCity(city, City.open(file));
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+    }
+
+    @Test
+    public void shouldStartJournalOnMappedSnapshot() throws CityException {
+        File journal = new File("snapshotCity.journal");
+        try {
+            City city = City.random(150, 140, 0.4, 61);
+            city.save(file);
+            City mapped = City.openMapped(file);
+            CityJournal.start(mapped, file, journal, 1).close();
+            ParallelTickTest.assertSameCity(city, CityJournal.recover(file, journal));
+        } finally {
+            journal.delete();
+        }
+    }
+
+    @Test
+    public void shouldNotOpenMappedSerializedCity() {
+        assertThrows(CityException.class, () -> City.openMapped(dat));
+    }
+}
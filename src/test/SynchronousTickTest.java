@@ -0,0 +1,112 @@
+package test;
+
+import domain.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Clase de pruebas unitarias para el modo de avance SYNCHRONOUS de la ciudad.
+ * Verifica que todos los ítems decidan sobre la misma ciudad y que los movimientos se apliquen al final.
+ */
+public class SynchronousTickTest {
+
+    @Test
+    public void shouldKeepSequentialModeByDefault() {
+        assertEquals(City.SEQUENTIAL, new City().getTickMode());
+    }
+
+    @Test
+    public void shouldRejectUnknownMode() {
+        assertThrows(IllegalArgumentException.class, () -> new City().setTickMode(42));
+    }
+
+    @Test
+    public void shouldMoveSchellingPersonOnlyOncePerTick() {
+        City sequential = new City(5, 5);
+        SchellingPerson first = new SchellingPerson(sequential, 0, 0);
+        new Person(sequential, 0, 1);
+        sequential.ticTac();
+        // En modo secuencial baja a (1, 0), se vuelve a procesar y regresa a (0, 0)
+        assertSame(first, sequential.getItem(0, 0));
+
+        City synchronous = new City(5, 5);
+        synchronous.setTickMode(City.SYNCHRONOUS);
+        SchellingPerson second = new SchellingPerson(synchronous, 0, 0);
+        new Person(synchronous, 0, 1);
+        synchronous.ticTac();
+        assertSame(second, synchronous.getItem(1, 0), "Debe moverse una sola vez");
+        assertNull(synchronous.getItem(0, 0));
+    }
+
+    @Test
+    public void shouldNotReuseCellsVacatedInTheSameTick() {
+        City sequential = cityWithVacatedCell(City.SEQUENTIAL);
+        sequential.ticTac();
+        assertTrue(sequential.getItem(1, 0) instanceof SchellingPerson, "En modo secuencial ocupa la celda recién liberada");
+
+        City synchronous = cityWithVacatedCell(City.SYNCHRONOUS);
+        SchellingPerson waiting = (SchellingPerson) synchronous.getItem(2, 0);
+        synchronous.ticTac();
+        assertTrue(synchronous.getItem(0, 0) instanceof Walker);
+        assertNull(synchronous.getItem(1, 0), "No había celdas vacías a su alrededor al inicio del turno");
+        assertSame(waiting, synchronous.getItem(2, 0));
+    }
+
+    // Un caminante que sube a (0, 0) y una persona Schelling insatisfecha debajo de él
+    private static City cityWithVacatedCell(int mode) {
+        City city = new City(3, 2);
+        city.setTickMode(mode);
+        new Walker(city, 1, 0);
+        new SchellingPerson(city, 2, 0);
+        new Person(city, 0, 1);
+        new Person(city, 1, 1);
+        new Person(city, 2, 1);
+        return city;
+    }
+
+    @Test
+    public void shouldGiveContestedCellToFirstItem() {
+        City city = new City(3, 3);
+        city.setTickMode(City.SYNCHRONOUS);
+        SchellingPerson left = new SchellingPerson(city, 0, 0);
+        new Person(city, 0, 1);
+        SchellingPerson right = new SchellingPerson(city, 0, 2);
+        new Person(city, 1, 0);
+        new Person(city, 1, 2);
+        new Person(city, 2, 0);
+        new Person(city, 2, 2);
+        new Person(city, 2, 1);
+        // Ambas personas Schelling quieren la única celda vacía (1, 1)
+        city.ticTac();
+        assertSame(left, city.getItem(1, 1), "Gana la celda la primera en orden de filas");
+        assertSame(right, city.getItem(0, 2));
+        assertNull(city.getItem(0, 0));
+    }
+
+    @Test
+    public void shouldApplyCheerfulInfluenceAfterDecisions() {
+        City city = new City(4, 4);
+        city.setTickMode(City.SYNCHRONOUS);
+        Person before = new Person(city, 0, 0);
+        new Cheerful(city, 1, 1);
+        Person after = new Person(city, 2, 2);
+        city.ticTac();
+        assertTrue(before.isHappy());
+        assertTrue(after.isHappy());
+        city.ticTac();
+        assertTrue(before.isHappy(), "La influencia se conserva al decidir en el turno siguiente");
+        assertTrue(after.isHappy());
+    }
+
+    @Test
+    public void shouldMoveWalkerInSynchronousMode() {
+        City city = new City(10, 10);
+        city.setTickMode(City.SYNCHRONOUS);
+        Walker walker = new Walker(city, 5, 5);
+        city.ticTac();
+        assertSame(walker, city.getItem(4, 5));
+        assertEquals(4, walker.getRow());
+        assertEquals(1, walker.getSteps());
+    }
+}
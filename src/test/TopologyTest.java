@@ -0,0 +1,141 @@
+package test;
+
+import domain.*;
+
+import java.io.File;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Clase de pruebas unitarias para las topologías de la cuadrícula (City.setTopology()).
+ */
+public class TopologyTest {
+    private static final int[] TOPOLOGIES = {City.MOORE, City.VON_NEUMANN, City.TORUS, City.HEX};
+
+    private final File file = new File("topologyCity.city");
+    private final File dat = new File("topologyCity.dat");
+
+    @AfterEach
+    public void tearDown() {
+        file.delete(); // Limpieza después de cada prueba
+        dat.delete();
+    }
+
+    // Vecinas de (r, c) calculadas directamente a partir de la definición de cada topología
+    private static boolean isNeighbor(City city, int topology, int r, int c, int nr, int nc) {
+        int h = city.getHeight(), w = city.getWidth();
+        int dr = nr - r, dc = nc - c;
+        switch (topology) {
+            case City.VON_NEUMANN:
+                return Math.abs(dr) + Math.abs(dc) == 1;
+            case City.TORUS:
+                dr = Math.min(Math.floorMod(dr, h), Math.floorMod(-dr, h));
+                dc = Math.min(Math.floorMod(dc, w), Math.floorMod(-dc, w));
+                return Math.max(dr, dc) == 1;
+            case City.HEX:
+                if (dr == 0) {
+                    return Math.abs(dc) == 1;
+                }
+                int shift = (r % 2 == 0) ? -1 : 0; // Las filas impares están desplazadas a la derecha
+                return Math.abs(dr) == 1 && (dc == shift || dc == shift + 1);
+            default:
+                return Math.max(Math.abs(dr), Math.abs(dc)) == 1;
+        }
+    }
+
+    @Test
+    public void shouldEnumerateNeighborsOfEachTopology() {
+        City city = new City(6, 7);
+        for (int topology : TOPOLOGIES) {
+            city.setTopology(topology);
+            assertEquals(topology, city.getTopology());
+            for (int r = 0; r < 6; r++) {
+                for (int c = 0; c < 7; c++) {
+                    boolean[] seen = new boolean[6 * 7];
+                    int found = 0;
+                    for (int k = 0; k < city.getNeighborhoodSize(); k++) {
+                        int cell = city.neighbor(r, c, k);
+                        if (cell >= 0) {
+                            assertFalse(seen[cell], "Vecina repetida de (" + r + ", " + c + ")");
+                            seen[cell] = true;
+                            found++;
+                        }
+                    }
+                    int expected = 0;
+                    for (int cell = 0; cell < 6 * 7; cell++) {
+                        boolean neighbor = isNeighbor(city, topology, r, c, cell / 7, cell % 7);
+                        assertEquals(neighbor, seen[cell], "Topología " + topology + " en (" + r + ", " + c + ")");
+                        expected += neighbor ? 1 : 0;
+                    }
+                    assertEquals(expected, found);
+                }
+            }
+        }
+        city.setTopology(City.TORUS);
+        assertEquals(8, city.getNeighborhoodSize());
+        assertEquals(5 * 7 + 6, city.neighbor(0, 0, 0)); // La vecina al noroeste de la esquina es la esquina opuesta
+        assertThrows(IllegalArgumentException.class, () -> city.setTopology(7));
+        assertThrows(IllegalArgumentException.class, () -> new City(2, 5).setTopology(City.TORUS));
+    }
+
+    @Test
+    public void shouldCountNeighborsWithAnyIndex() {
+        for (int topology : TOPOLOGIES) {
+            City scanned = City.random(40, 50, 0.45, 61);
+            City counted = City.random(40, 50, 0.45, 61);
+            scanned.setTopology(topology);
+            counted.setNeighborCounting(true);
+            counted.setTopology(topology);
+            byte[] counts = scanned.neighborCounts();
+            for (int r = 0; r < 40; r++) {
+                for (int c = 0; c < 50; c++) {
+                    int total = 0;
+                    for (int k = 0; k < scanned.getNeighborhoodSize(); k++) {
+                        int cell = scanned.neighbor(r, c, k);
+                        total += (cell >= 0 && !scanned.isEmpty(cell / 50, cell % 50)) ? 1 : 0;
+                    }
+                    assertEquals(total, scanned.neighbors(r, c));
+                    assertEquals(total, counted.neighbors(r, c));
+                    assertEquals(total, counts[r * 50 + c]);
+                    assertEquals(total > 0, scanned.hasNeighbors(r, c));
+                    assertEquals(scanned.neighborsEquals(r, c), counted.neighborsEquals(r, c));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void shouldSimulateLikePackedSimulatorAndDirtyScheduling() {
+        for (int topology : TOPOLOGIES) {
+            City city = City.random(30, 40, 0.5, 19);
+            City dirty = City.random(30, 40, 0.5, 19);
+            city.setTopology(topology);
+            dirty.setTopology(topology);
+            dirty.setDirtyScheduling(true);
+            PackedSimulator grid = PackedSimulator.of(city);
+            for (int i = 0; i < 20; i++) {
+                city.ticTac();
+                dirty.ticTac();
+                grid.ticTac();
+            }
+            ParallelTickTest.assertSameCity(city, dirty);
+            ParallelTickTest.assertSameCity(city, grid.toCity());
+            assertEquals(topology, grid.toCity().getTopology());
+        }
+    }
+
+    @Test
+    public void shouldKeepTopologyWhenSaved() throws CityException {
+        City city = City.random(20, 30, 0.3, 5);
+        city.setTopology(City.HEX);
+        city.save(file);
+        City opened = City.open(file);
+        assertEquals(City.HEX, opened.getTopology());
+        assertEquals(City.HEX, City.openMapped(file).getTopology());
+        city.setTopology(City.TORUS);
+        city.save(dat);
+        assertEquals(City.TORUS, City.open(dat).getTopology());
+    }
+}